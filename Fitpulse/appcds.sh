@@ -0,0 +1,19 @@
+#!/bin/sh
+# Builds a class-data sharing archive (AppCDS) so the JVM maps pre-parsed classes instead of loading
+# them on every start. Run from the Fitpulse folder after building the project; rebuild the archive
+# whenever the code or the JDK changes (the JVM ignores a stale archive and starts normally).
+#
+#   ./appcds.sh            training run, writes fitpulse.jsa
+#   ./appcds.sh run        starts the app with the archive
+#
+# The training run opens the window, builds every screen, loads the food catalog and exits.
+set -e
+CP="out/production/Fitpulse:lib/*"
+ARCHIVE=fitpulse.jsa
+
+if [ "$1" = "run" ]; then
+    exec java -XX:SharedArchiveFile=$ARCHIVE -Dfitpulse.startup.log=startup.csv -cp "$CP" FitnessTrackerApp
+fi
+
+java -XX:ArchiveClassesAtExit=$ARCHIVE -Dfitpulse.cds.training=true -Dfitpulse.edt.watchdog=false -cp "$CP" FitnessTrackerApp
+echo "Wrote $ARCHIVE; start with ./appcds.sh run"
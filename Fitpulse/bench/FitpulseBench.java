@@ -0,0 +1,319 @@
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.table.TableRowSorter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Benchmarks for the data layer, the analytics helpers, food search and the history table.
+// Plain Java with no dependencies, run from the Fitpulse folder after building both modules:
+//
+//   java -cp out/production/Fitpulse:out/production/bench:lib/* FitpulseBench [filter] [-sizes 100,10000]
+//        [-backends memory,log,sqlite] [-csv results.csv] [-warmup ms] [-time ms] [-iterations n]
+//
+// Every case runs at each data size (default 100 .. 1M rows). It is warmed up, then timed over
+// several fixed-length iterations. The result is the mean ns/op with the spread between iterations.
+// Save the CSV of two runs and diff them to spot regressions, or plot ns/op against size to see the
+// scaling curve.
+public class FitpulseBench {
+    static long WARMUP_MS = 1000;
+    static long ITERATION_MS = 1000;
+    static int ITERATIONS = 5;
+    static final int[] DEFAULT_SIZES = {100, 1_000, 10_000, 100_000, 1_000_000};
+    static final int WORKOUTS_PER_DAY = 2, MEALS_PER_DAY = 4;
+
+    // [CO6] Functional Interface: one benchmarked operation; i counts calls so cases can vary their input
+    interface Op {
+        long run(int i) throws Exception;
+    }
+
+    record Result(String name, String backend, int size, double nsPerOp, double error, long ops) {}
+
+    // Results are folded into this so the JIT cannot drop the work as dead code
+    static volatile long sink;
+
+    private final String filter;
+    private final List<Result> results = new ArrayList<>();
+
+    FitpulseBench(String filter) { this.filter = filter; }
+
+    public static void main(String[] args) throws Exception {
+        String filter = "";
+        int[] sizes = DEFAULT_SIZES;
+        List<String> backends = List.of("memory", "log", "sqlite");
+        Path csv = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-sizes" -> sizes = Arrays.stream(args[++i].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                case "-backends" -> backends = List.of(args[++i].split(","));
+                case "-csv" -> csv = Path.of(args[++i]);
+                case "-warmup" -> WARMUP_MS = Long.parseLong(args[++i]);
+                case "-time" -> ITERATION_MS = Long.parseLong(args[++i]);
+                case "-iterations" -> ITERATIONS = Integer.parseInt(args[++i]);
+                default -> filter = args[i];
+            }
+        }
+        FitpulseBench bench = new FitpulseBench(filter);
+        System.out.printf("%-30s %-7s %9s %14s %12s%n", "Benchmark", "Store", "Size", "ns/op", "± error");
+        for (int size : sizes) {
+            bench.analytics(size);
+            bench.foodSearch(size);
+            for (String backend : backends) bench.store(backend, size);
+        }
+        if (csv != null) bench.writeCsv(csv);
+    }
+
+    // ---- harness ----
+
+    boolean enabled(String name) { return filter.isEmpty() || name.contains(filter); }
+
+    // Calls op in batches sized during warm-up so that reading the clock stays out of the numbers
+    void measure(String name, String backend, int size, Op op) throws Exception {
+        if (!enabled(name)) return;
+        long acc = 0, i = 0;
+        int batch = 1;
+        long warmupEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_MS);
+        while (System.nanoTime() < warmupEnd) {
+            long t = System.nanoTime();
+            for (int b = 0; b < batch; b++) acc += op.run((int) i++);
+            if (System.nanoTime() - t < 100_000 && batch < (1 << 20)) batch *= 2;
+        }
+        double[] nsPerOp = new double[ITERATIONS];
+        long totalOps = 0;
+        for (int it = 0; it < ITERATIONS; it++) {
+            long ops = 0, start = System.nanoTime(), stop = start + TimeUnit.MILLISECONDS.toNanos(ITERATION_MS), now;
+            do {
+                for (int b = 0; b < batch; b++) acc += op.run((int) i++);
+                ops += batch;
+            } while ((now = System.nanoTime()) < stop);
+            nsPerOp[it] = (double) (now - start) / ops;
+            totalOps += ops;
+        }
+        sink += acc;
+
+        double mean = Arrays.stream(nsPerOp).average().orElse(0);
+        double var = Arrays.stream(nsPerOp).map(x -> (x - mean) * (x - mean)).sum() / Math.max(1, nsPerOp.length - 1);
+        // ~99.9% interval of the mean, as JMH reports it, using a normal approximation
+        double error = 3.29 * Math.sqrt(var / nsPerOp.length);
+        Result r = new Result(name, backend, size, mean, error, totalOps);
+        results.add(r);
+        System.out.printf(Locale.ROOT, "%-30s %-7s %9d %14.1f %12.1f%n", r.name, r.backend, r.size, r.nsPerOp, r.error);
+    }
+
+    void writeCsv(Path path) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path))) {
+            out.println("benchmark,store,size,ns_per_op,error,ops");
+            for (Result r : results) {
+                out.printf(Locale.ROOT, "%s,%s,%d,%.1f,%.1f,%d%n", r.name, r.backend, r.size, r.nsPerOp, r.error, r.ops);
+            }
+        }
+        System.out.println("Wrote " + path);
+    }
+
+    // ---- analytics ----
+
+    void analytics(int size) throws Exception {
+        Random rnd = new Random(42);
+        int[] durations = new int[size];
+        for (int i = 0; i < size; i++) durations[i] = 60 + rnd.nextInt(3600);
+        measure("longestWorkoutDuration", "-", size, i -> FitnessTrackerApp.DataUtils.getLongestWorkoutDuration(durations));
+
+        // The calendar bitmap replaced the recursive streak score; size = days in the current streak
+        FitnessTrackerApp.ActivityCalendar cal = new FitnessTrackerApp.ActivityCalendar();
+        long today = LocalDate.now().toEpochDay();
+        for (long d = today - size + 1; d <= today; d++) cal.markActive(d);
+        measure("streak.current", "-", size, i -> cal.currentStreak(today));
+        measure("streak.last30Days", "-", size, i -> cal.activeDaysInLast(30, today));
+
+        FitnessTrackerApp.ScoreEngine engine = FitnessTrackerApp.ScoreEngine.standard();
+        FitnessTrackerApp.ScoreInputs in = new FitnessTrackerApp.ScoreInputs();
+        in.streak.current = size; in.workouts.totalSeconds = 1800L * size; in.todayProtein = 120; in.proteinGoal = 144;
+        measure("scoreEngine.score", "-", size, i -> engine.score(in));
+    }
+
+    // ---- food search ----
+
+    static final String[] FOOD_WORDS = {"Chicken", "Breast", "Grilled", "Brown", "Rice", "Egg", "White", "Greek", "Yogurt",
+            "Oats", "Salmon", "Fillet", "Tuna", "Beef", "Lean", "Mince", "Sweet", "Potato", "Broccoli", "Spinach", "Almond",
+            "Butter", "Peanut", "Whey", "Protein", "Shake", "Banana", "Apple", "Paneer", "Lentil", "Dal", "Tofu", "Quinoa",
+            "Avocado", "Cottage", "Cheese", "Milk", "Skimmed", "Bread", "Wholegrain", "Pasta", "Turkey", "Chickpeas"};
+
+    static String[] foodNames(int size) {
+        Random rnd = new Random(7);
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            int words = 2 + rnd.nextInt(3);
+            StringBuilder sb = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                if (w > 0) sb.append(' ');
+                sb.append(FOOD_WORDS[rnd.nextInt(FOOD_WORDS.length)]);
+            }
+            names[i] = sb.append(' ').append(i).toString();
+        }
+        return names;
+    }
+
+    void foodSearch(int size) throws Exception {
+        String[] names = foodNames(size);
+        measure("foodIndex.build", "-", size, i -> new FitnessTrackerApp.FoodSearchIndex(names).search("a", 1).length);
+        FitnessTrackerApp.FoodSearchIndex index = new FitnessTrackerApp.FoodSearchIndex(names);
+        String[] prefixes = {"ch", "gre", "sal", "pea", "wh"};
+        measure("foodSearch.prefix", "-", size, i -> index.search(prefixes[i % prefixes.length], 500).length);
+        String[] inner = {"ogur", "ilet", "ottag", "icke"};
+        measure("foodSearch.substring", "-", size, i -> index.search(inner[i % inner.length], 500).length);
+        String[] typos = {"chikcen", "yoghurt", "brocolli", "salmn"};
+        measure("foodSearch.fuzzy", "-", size, i -> index.search(typos[i % typos.length], 500).length);
+    }
+
+    // ---- storage backends and the history table ----
+
+    FitnessTrackerApp.TrackerStore open(String backend, Path dir) {
+        return switch (backend) {
+            case "memory" -> new FitnessTrackerApp.InMemoryStore();
+            case "log" -> new FitnessTrackerApp.LogStore(dir.resolve("log"));
+            case "sqlite" -> new FitnessTrackerApp.DatabaseHelper("jdbc:sqlite:" + dir.resolve("bench.db"));
+            default -> throw new IllegalArgumentException("Unknown backend " + backend);
+        };
+    }
+
+    void store(String backend, int size) throws Exception {
+        if (backend.equals("sqlite")) {
+            try {
+                Class.forName("org.sqlite.JDBC");
+            } catch (ClassNotFoundException e) {
+                if (size == DEFAULT_SIZES[0]) System.out.println("(skipping sqlite: sqlite-jdbc is not on the classpath)");
+                return;
+            }
+        }
+        Path dir = Files.createTempDirectory("fitpulse-bench");
+        FitnessTrackerApp.TrackerStore store = open(backend, dir);
+        try {
+            store.initTables();
+            store.register("bench", "pw", "Bench User", 30, 180, 80, 75);
+            int uid = store.login("bench", "pw").id;
+            long t = System.nanoTime();
+            load(store, uid, size);
+            System.out.printf(Locale.ROOT, "%-30s %-7s %9d %14.1f ms to load%n", "(setup)", backend, size, (System.nanoTime() - t) / 1e6);
+
+            String[] exercises = exercises();
+            int mid = size / 2;
+            LocalDate today = LocalDate.now();
+            measure("store.login", backend, size, i -> store.login("bench", "pw").id);
+            measure("store.getWorkoutStats", backend, size, i -> store.getWorkoutStats(uid).sessions);
+            measure("store.getWorkoutStatsByType", backend, size, i -> store.getWorkoutStatsByType(uid).size());
+            measure("store.getStreakSummary", backend, size, i -> store.getStreakSummary(uid).current);
+            measure("store.getTodayRollup", backend, size, i -> store.getTodayRollup(uid).sessions);
+            measure("store.getDailyRollups.30d", backend, size, i -> store.getDailyRollups(uid, today.minusDays(29), today).size());
+            measure("store.getScore", backend, size, i -> store.getScore(uid));
+            measure("store.getTodayMeals", backend, size, i -> store.getTodayMeals(uid).size());
+            // What FoodPanel does with today's meals: fill the table, sort by protein. The loaded history only
+            // has a few meals today, so the table gets size synthetic rows to show how it scales.
+            List<FitnessTrackerApp.MealRow> meals = mealRows(size);
+            measure("mealTable.fillAndSort", backend, size, i -> sortMeals(meals));
+            measure("store.getWorkoutHistory", backend, size, i -> store.getWorkoutHistory(uid).size());
+            measure("store.getWorkoutDurations", backend, size, i -> store.getWorkoutDurations(uid).length);
+            // Whole-history aggregate in constant memory: one streamed pass, nothing collected
+            measure("store.forEachWorkout.max", backend, size, i -> {
+                int[] max = {0};
+                store.forEachWorkout(uid, w -> { max[0] = Math.max(max[0], w.seconds()); return true; });
+                return max[0];
+            });
+            measure("store.getWorkoutIdAt.middle", backend, size, i -> store.getWorkoutIdAt(uid, mid));
+
+            // What StatisticsPanel does per visible page: fetch it, then format every cell
+            int pageSize = FitnessTrackerApp.WorkoutHistoryModel.PAGE_SIZE;
+            measure("historyTable.firstPage", backend, size, i -> renderPage(store.getWorkoutPage(uid, Long.MAX_VALUE, pageSize)));
+            long deepBefore = store.getWorkoutIdAt(uid, mid);
+            measure("historyTable.deepPage", backend, size, i -> renderPage(store.getWorkoutPage(uid, deepBefore, pageSize)));
+
+            // SQLite only queues these for the flusher thread, so each op also waits for its commit to
+            // time the whole write, as the log store does
+            Runnable committed = store instanceof FitnessTrackerApp.DatabaseHelper db ? () -> db.awaitWrites(uid) : () -> {};
+            measure("store.logWorkout", backend, size, i -> { store.logWorkout(uid, exercises[i % exercises.length], 600, "bench"); committed.run(); return i; });
+            measure("store.logMeal", backend, size, i -> { store.logMeal(uid, "Bench Meal", 20, 30, 10, 300); committed.run(); return i; });
+        } finally {
+            store.close();
+            deleteTree(dir);
+        }
+    }
+
+    static long renderPage(FitnessTrackerApp.WorkoutPage page) {
+        long h = 0;
+        for (int r = 0; r < page.size; r++) {
+            for (int c = 0; c < 4; c++) {
+                Object v = FitnessTrackerApp.WorkoutHistoryModel.cell(page, r, c);
+                if (v instanceof Integer seconds) v = FitnessTrackerApp.WorkoutHistoryModel.duration(seconds);
+                if (v != null) h += v.hashCode();
+            }
+        }
+        return h;
+    }
+
+    static long sortMeals(List<FitnessTrackerApp.MealRow> meals) {
+        FitnessTrackerApp.MealTableModel model = new FitnessTrackerApp.MealTableModel();
+        model.replace(meals);
+        TableRowSorter<FitnessTrackerApp.MealTableModel> sorter = new TableRowSorter<>(model);
+        sorter.setSortKeys(List.of(new RowSorter.SortKey(FitnessTrackerApp.MealTableModel.PROTEIN, SortOrder.DESCENDING)));
+        return model.getRowCount() == 0 ? 0 : model.idAt(sorter.convertRowIndexToModel(0));
+    }
+
+    static String[] exercises() {
+        List<String> all = new ArrayList<>();
+        for (Map.Entry<String, String[]> e : FitnessTrackerApp.DataUtils.getExerciseMap().entrySet()) all.addAll(Arrays.asList(e.getValue()));
+        all.sort(Comparator.naturalOrder());
+        return all.toArray(new String[0]);
+    }
+
+    // size workouts and size meals for one user as a back-dated history ending today, the way a file
+    // import fills the store: WORKOUTS_PER_DAY workouts and MEALS_PER_DAY meals a day, in importer-sized batches
+    static void load(FitnessTrackerApp.TrackerStore store, int uid, int size) {
+        String[] exercises = exercises();
+        String[] foods = foodNames(Math.min(size, 1000));
+        LocalDate today = LocalDate.now();
+        Random rnd = new Random(size);
+        List<FitnessTrackerApp.WorkoutEntry> workouts = new ArrayList<>(FitnessTrackerApp.WorkoutImporter.BATCH);
+        for (int i = 0; i < size; i++) {
+            LocalDateTime at = today.minusDays(i / WORKOUTS_PER_DAY).atTime(7 + 10 * (i % WORKOUTS_PER_DAY), rnd.nextInt(60));
+            workouts.add(new FitnessTrackerApp.WorkoutEntry(uid, at, exercises[i % exercises.length], 60 + rnd.nextInt(3600), "set " + i));
+            if (workouts.size() == FitnessTrackerApp.WorkoutImporter.BATCH || i == size - 1) {
+                store.importWorkouts(workouts);
+                workouts = new ArrayList<>(FitnessTrackerApp.WorkoutImporter.BATCH);
+            }
+        }
+        List<FitnessTrackerApp.MealEntry> meals = new ArrayList<>(FitnessTrackerApp.WorkoutImporter.BATCH);
+        for (int i = 0; i < size; i++) {
+            meals.add(new FitnessTrackerApp.MealEntry(uid, today.minusDays(i / MEALS_PER_DAY), foods[i % foods.length],
+                    rnd.nextInt(40), rnd.nextInt(80), rnd.nextInt(30), 100 + rnd.nextInt(600)));
+            if (meals.size() == FitnessTrackerApp.WorkoutImporter.BATCH || i == size - 1) {
+                store.importMeals(meals);
+                meals = new ArrayList<>(FitnessTrackerApp.WorkoutImporter.BATCH);
+            }
+        }
+    }
+
+    static List<FitnessTrackerApp.MealRow> mealRows(int size) {
+        String[] foods = foodNames(Math.min(size, 1000));
+        Random rnd = new Random(size);
+        List<FitnessTrackerApp.MealRow> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) rows.add(new FitnessTrackerApp.MealRow(i + 1, foods[i % foods.length], rnd.nextInt(40), 100 + rnd.nextInt(600)));
+        return rows;
+    }
+
+    static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Synthetic multi-user data and a headless load driver for the storage backends.
+//
+//   java -cp out/production/Fitpulse:out/production/bench:lib/* FitpulseLoad generate [-users 1000] [-years 2] [-seed 1]
+//   java -cp ... FitpulseLoad drive [-users 1000] [-clients 100] [-seconds 60] [-warmup 5] [-think 0]
+//        [-mix login=5,meal=20,workout=15,refresh=60]
+//   java -cp ... FitpulseLoad both ...   (generate, then drive in the same process)
+//
+// The backend is chosen the same way the app chooses it (-Dfitpulse.store, -Dfitpulse.data), so by
+// default this writes to fitness_tracker.db in the working directory. Use "both" with
+// -Dfitpulse.store=memory, which keeps nothing between runs. Generated users are load00001, load00002, ...
+// with the password "pw". The store comes with the app's read cache; -Dfitpulse.cache=false drives the
+// backend alone.
+public class FitpulseLoad {
+    static final int BATCH = 5000;
+    static final String PASSWORD = "pw";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: FitpulseLoad generate|drive|both [options]");
+            System.exit(2);
+        }
+        Map<String, String> opts = new LinkedHashMap<>();
+        for (int i = 1; i + 1 < args.length; i += 2) opts.put(args[i].replaceFirst("^-", ""), args[i + 1]);
+        int users = Integer.parseInt(opts.getOrDefault("users", "1000"));
+
+        FitnessTrackerApp.TrackerStore store = FitnessTrackerApp.openStore();
+        store.initTables();
+        try {
+            if (args[0].equals("generate") || args[0].equals("both")) {
+                new Generator(store, new Random(Long.parseLong(opts.getOrDefault("seed", "1"))))
+                        .run(users, Integer.parseInt(opts.getOrDefault("years", "2")));
+            }
+            if (args[0].equals("drive") || args[0].equals("both")) {
+                new Driver(store, users, opts.getOrDefault("mix", "login=5,meal=20,workout=15,refresh=60"))
+                        .run(Integer.parseInt(opts.getOrDefault("clients", "100")), Integer.parseInt(opts.getOrDefault("warmup", "5")),
+                                Integer.parseInt(opts.getOrDefault("seconds", "60")), Long.parseLong(opts.getOrDefault("think", "0")));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    static String username(int n) { return String.format("load%05d", n); }
+
+    // ---- generator ----
+
+    // Each user gets a profile (how often they train, which muscle groups, how many meals a day) and
+    // then one entry per simulated day, oldest first, sent to the store in batches of BATCH rows
+    static class Generator {
+        final FitnessTrackerApp.TrackerStore store;
+        final Random rnd;
+        final String[] categories;
+        final Map<String, String[]> exercises = FitnessTrackerApp.DataUtils.getExerciseMap();
+        final FitnessTrackerApp.FoodCatalog foods;
+        final List<FitnessTrackerApp.WorkoutEntry> workouts = new ArrayList<>(BATCH);
+        final List<FitnessTrackerApp.MealEntry> meals = new ArrayList<>(BATCH);
+        long workoutRows, mealRows;
+
+        Generator(FitnessTrackerApp.TrackerStore store, Random rnd) throws Exception {
+            this.store = store;
+            this.rnd = rnd;
+            this.categories = exercises.keySet().stream().sorted().toArray(String[]::new);
+            Path csv = Path.of(System.getProperty("fitpulse.foods", "foods.csv"));
+            Path bin = csv.resolveSibling(csv.getFileName().toString().replaceFirst("\\.csv$", "") + ".bin");
+            this.foods = FitnessTrackerApp.FoodCatalog.open(csv, bin);
+            if (foods.size() == 0) throw new IllegalStateException("No foods in " + csv + "; run from the Fitpulse folder or set -Dfitpulse.foods");
+        }
+
+        void run(int users, int years) {
+            long start = System.nanoTime();
+            LocalDate today = LocalDate.now(), first = today.minusYears(years);
+            for (int n = 1; n <= users; n++) {
+                String name = username(n);
+                int age = 18 + rnd.nextInt(45);
+                double height = 150 + rnd.nextInt(45), weight = 50 + rnd.nextInt(60);
+                if (!store.register(name, PASSWORD, "Load User " + n, age, height, weight, weight - 5 + rnd.nextInt(10))) continue; // from an earlier run
+                FitnessTrackerApp.User user = store.login(name, PASSWORD);
+                if (user == null) continue;
+                user(user.id, first, today);
+                if (n % 100 == 0 || n == users) {
+                    double secs = (System.nanoTime() - start) / 1e9;
+                    System.out.printf(Locale.ROOT, "%d/%d users, %d workouts, %d meals, %.0f rows/s%n",
+                            n, users, workoutRows, mealRows, (workoutRows + mealRows) / secs);
+                }
+            }
+            flush();
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "Generated %d workouts and %d meals in %.1f s (%.0f rows/s)%n",
+                    workoutRows, mealRows, secs, (workoutRows + mealRows) / secs);
+        }
+
+        void user(int uid, LocalDate first, LocalDate last) {
+            double trainRate = 0.2 + rnd.nextDouble() * 0.6;
+            double mealsPerDay = 2 + rnd.nextDouble() * 3;
+            // Everyone trains every category now and then, but favours two or three of them
+            double[] weights = new double[categories.length];
+            for (int i = 0; i < weights.length; i++) weights[i] = 0.2 + (rnd.nextDouble() < 0.4 ? 2 : 0);
+            for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+                if (rnd.nextDouble() < trainRate) {
+                    int sessions = rnd.nextDouble() < 0.15 ? 2 : 1;
+                    for (int s = 0; s < sessions; s++) workout(uid, day, pick(weights));
+                }
+                int count = (int) mealsPerDay + (rnd.nextDouble() < mealsPerDay % 1 ? 1 : 0);
+                for (int m = 0; m < count; m++) meal(uid, day);
+            }
+        }
+
+        void workout(int uid, LocalDate day, String category) {
+            String[] list = exercises.get(category);
+            String exercise = list[rnd.nextInt(list.length)];
+            LocalDateTime at = day.atTime(6 + rnd.nextInt(16), rnd.nextInt(60), rnd.nextInt(60));
+            int seconds;
+            String details;
+            if (category.equals("Cardio")) {
+                seconds = 900 + rnd.nextInt(2700);
+                details = String.format(Locale.ROOT, "%.1f km", seconds / 360.0 * (0.7 + rnd.nextDouble() * 0.6));
+            } else {
+                int sets = 3 + rnd.nextInt(3);
+                seconds = sets * (120 + rnd.nextInt(180));
+                details = sets + " sets x " + (6 + rnd.nextInt(10)) + " reps @ " + (10 + 5 * rnd.nextInt(30)) + " kg";
+            }
+            workouts.add(new FitnessTrackerApp.WorkoutEntry(uid, at, exercise, seconds, details));
+            workoutRows++;
+            if (workouts.size() >= BATCH) flush();
+        }
+
+        void meal(int uid, LocalDate day) {
+            int id = rnd.nextInt(foods.size());
+            double servings = 0.5 + rnd.nextInt(4) * 0.5;
+            meals.add(new FitnessTrackerApp.MealEntry(uid, day, foods.name(id), foods.protein(id) * servings,
+                    foods.carbs(id) * servings, foods.fat(id) * servings, foods.calories(id) * servings));
+            mealRows++;
+            if (meals.size() >= BATCH) flush();
+        }
+
+        String pick(double[] weights) {
+            double total = 0;
+            for (double w : weights) total += w;
+            double r = rnd.nextDouble() * total;
+            for (int i = 0; i < weights.length; i++) {
+                r -= weights[i];
+                if (r < 0) return categories[i];
+            }
+            return categories[categories.length - 1];
+        }
+
+        void flush() {
+            if (!workouts.isEmpty()) { store.importWorkouts(new ArrayList<>(workouts)); workouts.clear(); }
+            if (!meals.isEmpty()) { store.importMeals(new ArrayList<>(meals)); meals.clear(); }
+        }
+    }
+
+    // ---- driver ----
+
+    // Each client is a virtual thread acting as one user at a time: it picks an operation by the mix
+    // weights, times it and records the latency. Refresh is one of the panel refreshes the UI runs.
+    static class Driver {
+        static final String[] OPS = {"login", "meal", "workout", "refresh.food", "refresh.stats", "refresh.mydata"};
+
+        final FitnessTrackerApp.TrackerStore store;
+        final int[] uids;
+        final String[] names;
+        final double[] mix = new double[4]; // login, meal, workout, refresh
+        final FitnessTrackerApp.LatencyHistogram[] latency = new FitnessTrackerApp.LatencyHistogram[OPS.length];
+        final LongAdder errors = new LongAdder();
+        final String[] exercises;
+
+        Driver(FitnessTrackerApp.TrackerStore store, int users, String mixSpec) {
+            this.store = store;
+            List<Integer> ids = new ArrayList<>();
+            List<String> found = new ArrayList<>();
+            for (int n = 1; n <= users; n++) {
+                FitnessTrackerApp.User u = store.login(username(n), PASSWORD);
+                if (u != null) { ids.add(u.id); found.add(u.username); }
+            }
+            if (ids.isEmpty()) throw new IllegalStateException("No load users found; run FitpulseLoad generate first");
+            uids = ids.stream().mapToInt(Integer::intValue).toArray();
+            names = found.toArray(new String[0]);
+            for (String part : mixSpec.split(",")) {
+                String[] kv = part.split("=");
+                int slot = List.of("login", "meal", "workout", "refresh").indexOf(kv[0].trim());
+                if (slot < 0) throw new IllegalArgumentException("Unknown operation in -mix: " + kv[0]);
+                mix[slot] = Double.parseDouble(kv[1]);
+            }
+            for (int i = 0; i < OPS.length; i++) latency[i] = new FitnessTrackerApp.LatencyHistogram();
+            exercises = FitnessTrackerApp.DataUtils.getExerciseMap().values().stream().flatMap(Arrays::stream).sorted().toArray(String[]::new);
+        }
+
+        void run(int clients, int warmupSeconds, int seconds, long thinkMs) throws InterruptedException {
+            System.out.printf("Driving %d clients over %d users: %ds warm-up, %ds measured%n", clients, uids.length, warmupSeconds, seconds);
+            long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long end = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+            try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int c = 0; c < clients; c++) pool.submit(() -> client(end, thinkMs));
+                long wait = warmupEnd - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                for (FitnessTrackerApp.LatencyHistogram h : latency) h.reset();
+                errors.reset();
+            }
+            report(seconds);
+        }
+
+        void client(long end, long thinkMs) {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            double total = mix[0] + mix[1] + mix[2] + mix[3];
+            while (System.nanoTime() < end) {
+                int u = rnd.nextInt(uids.length), uid = uids[u];
+                double r = rnd.nextDouble() * total;
+                int op = r < mix[0] ? 0 : r < mix[0] + mix[1] ? 1 : r < mix[0] + mix[1] + mix[2] ? 2 : 3 + rnd.nextInt(3);
+                long t = System.nanoTime();
+                try {
+                    switch (op) {
+                        case 0 -> store.login(names[u], PASSWORD);
+                        case 1 -> store.logMeal(uid, "Load Test Meal", rnd.nextInt(40), rnd.nextInt(80), rnd.nextInt(30), 100 + rnd.nextInt(600));
+                        case 2 -> store.logWorkout(uid, exercises[rnd.nextInt(exercises.length)], 300 + rnd.nextInt(3000), "load test");
+                        case 3 -> { store.getTodayRollup(uid); store.getTodayMeals(uid); }
+                        case 4 -> {
+                            store.getStreakSummary(uid); store.getScore(uid); store.getTodayProtein(uid); store.getWorkoutStats(uid);
+                            store.getWorkoutPage(uid, Long.MAX_VALUE, FitnessTrackerApp.WorkoutHistoryModel.PAGE_SIZE);
+                        }
+                        default -> store.getStreakSummary(uid);
+                    }
+                    latency[op].record(System.nanoTime() - t);
+                } catch (RuntimeException e) {
+                    errors.increment();
+                }
+                if (thinkMs > 0) {
+                    try { Thread.sleep(thinkMs); } catch (InterruptedException e) { return; }
+                }
+            }
+        }
+
+        void report(int seconds) {
+            System.out.printf("%-15s %9s %9s %9s %9s %9s %9s %9s %9s%n", "Operation", "Count", "ops/s", "mean ms", "p50", "p90", "p99", "p99.9", "max");
+            long all = 0;
+            for (int i = 0; i < OPS.length; i++) {
+                FitnessTrackerApp.LatencyHistogram h = latency[i];
+                long n = h.count();
+                all += n;
+                if (n == 0) continue;
+                System.out.printf(Locale.ROOT, "%-15s %9d %9.0f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", OPS[i], n, (double) n / seconds,
+                        h.meanNanos() / 1e6, h.percentile(0.50) / 1e6, h.percentile(0.90) / 1e6, h.percentile(0.99) / 1e6,
+                        h.percentile(0.999) / 1e6, h.maxNanos() / 1e6);
+            }
+            System.out.printf(Locale.ROOT, "Total %d operations, %.0f ops/s, %d errors%n", all, (double) all / seconds, errors.sum());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Round trips through the log store's compaction and restart that must not lose or repeat a meal:
+// deleting the newest meal must not let its id be handed out again, and a meal a restore re-issued
+// must come back once. Segments are shrunk so a few records span several of them, and every segment
+// size from 128 to 1024 bytes is tried so each record lands on a segment boundary at least once.
+//
+//   java -cp out/production/Fitpulse:out/production/bench LogStoreCheck [dir]
+//
+// Exits with 1 and says which case failed.
+public class LogStoreCheck {
+    static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path root = Files.createTempDirectory(args.length > 0 ? Path.of(args[0]) : Path.of(System.getProperty("java.io.tmpdir")), "logcheck");
+        try {
+            for (int segment = 128; segment <= 1024; segment += 16) {
+                System.setProperty("fitpulse.log.segment", Integer.toString(segment));
+                deletedNewestMeal(root.resolve("deleted-" + segment));
+                reissuedMeal(root.resolve("reissued-" + segment));
+            }
+        } finally {
+            deleteTree(root);
+        }
+        System.out.println(failures == 0 ? "All log store checks passed" : failures + " log store checks failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    // Log meals, delete the newest, compact twice (the meal's record, then its tombstone), restart, log another
+    static void deletedNewestMeal(Path dir) throws IOException {
+        FitnessTrackerApp.LogStore store = open(dir);
+        store.register("ann", "pw", "Ann", 30, 170, 60, 55);
+        for (int i = 1; i <= 5; i++) store.logMeal(1, "meal " + i, i, 100);
+        int newest = newestMealId(store);
+        store.deleteMeal(1, newest);
+        for (int i = 0; i < 8; i++) store.logWorkout(1, "Running", 60); // seals the tombstone's segment
+        store.compactAll();
+        store.compactAll();
+        store.close();
+
+        store = open(dir);
+        store.logMeal(1, "after restart", 7, 100);
+        int id = newestMealId(store);
+        check(id > newest, dir, "a new meal got id " + id + ", not above the deleted meal " + newest);
+        check(store.getTodayMeals(1).size() == 5, dir, store.getTodayMeals(1).size() + " meals today, expected 5");
+        store.close();
+    }
+
+    // A backup holding meal 1 twice (changed in SQLite between backups) restores as the second copy;
+    // after compaction and a restart it must still be there once
+    static void reissuedMeal(Path dir) throws IOException {
+        Path backups = Files.createDirectories(dir.resolveSibling(dir.getFileName() + "-backups"));
+        Path file = backups.resolve("backup-00000001-full.fpb");
+        FitnessTrackerApp.Backups.Mark mark = new FitnessTrackerApp.Backups.Mark(1, 0, 2, 0, 0);
+        String today = LocalDate.now().toString();
+        try (FitnessTrackerApp.Backups.Writer out = new FitnessTrackerApp.Backups.Writer(file, 1, -1)) {
+            out.begin(mark);
+            out.user(1, "ann", "pw", "Ann", 30, 170, 60, 55);
+            out.meal(1, 1, today, "before", 10, 0, 0, 100);
+            out.meal(2, 1, today, "other", 1, 0, 0, 10);
+            out.meal(1, 1, today, "after", 20, 0, 0, 200);
+            out.finish();
+        }
+        FitnessTrackerApp.LogStore.restore(dir, List.of(new FitnessTrackerApp.Backups.Info(file, 1, -1, 0, mark)));
+
+        FitnessTrackerApp.LogStore store = open(dir);
+        for (int i = 0; i < 8; i++) store.logWorkout(1, "Running", 60);
+        store.compactAll();
+        store.compactAll();
+        store.close();
+
+        store = open(dir);
+        double protein = store.getTodayRollup(1).protein;
+        check(store.getTodayMeals(1).size() == 2, dir, store.getTodayMeals(1).size() + " meals today, expected 2");
+        check(protein == 21, dir, "today's protein is " + protein + ", expected 21");
+        store.logMeal(1, "after restart", 7, 100);
+        check(newestMealId(store) == 3, dir, "a new meal got id " + newestMealId(store) + ", expected 3");
+        store.close();
+    }
+
+    static FitnessTrackerApp.LogStore open(Path dir) {
+        FitnessTrackerApp.LogStore store = new FitnessTrackerApp.LogStore(dir);
+        store.initTables();
+        return store;
+    }
+
+    static int newestMealId(FitnessTrackerApp.TrackerStore store) {
+        return store.getTodayMeals(1).stream().mapToInt(FitnessTrackerApp.MealRow::id).max().orElse(0);
+    }
+
+    static void check(boolean ok, Path dir, String what) {
+        if (ok) return;
+        failures++;
+        System.err.println(dir.getFileName() + ": " + what);
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+}
@@ -1,18 +1,120 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.plaf.basic.BasicProgressBarUI;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
+import javax.swing.table.TableModel;
+import javax.swing.table.TableRowSorter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.BufferedOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.sql.*;
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
 
 // [CO5] Inheritance: Extending JFrame to create the main application window
 public class FitnessTrackerApp extends JFrame {
@@ -39,7 +141,15 @@ public class FitnessTrackerApp extends JFrame {
     private JPanel mainPanel;
     private JPanel menuPanel;
     private User currentUser;
-    private DatabaseHelper dbHelper;
+    // Set by storeReady's task; only read after login, which waits for it
+    private volatile TrackerStore dbHelper;
+    private CompletableFuture<TrackerStore> storeReady;
+    // Background backups of the local store (null when off or when there is nothing on disk)
+    private volatile Backups backups;
+    private CompletableFuture<Foods> foodsReady;
+    private boolean warmedUp, firstFramePainted;
+    private final AsyncData asyncData = new AsyncData();
+    private BasePanel activePanel;
 
     // Panel Identifiers
     private static final String LOGIN_PANEL = "LOGIN";
@@ -52,6 +162,9 @@ public class FitnessTrackerApp extends JFrame {
     private static final String SETTINGS_PANEL = "SETTINGS";
     private static final String STATISTICS_PANEL = "STATISTICS";
 
+    // Null when running headless or with -Dfitpulse.edt.watchdog=false
+    private static EdtWatchdog watchdog;
+
     // Instances
     private LoginPanel loginPanel;
     private HomePanel homePanel;
@@ -64,13 +177,26 @@ public class FitnessTrackerApp extends JFrame {
     private StatisticsPanel statisticsPanel;
 
     // [CO1] Application of fundamental programming constructs (Main Method entry point)
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            TrackerServer.run(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--import")) {
+            WorkoutImporter.run(args);
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--backup") || args[0].equals("--restore"))) {
+            Backups.run(args);
+            return;
+        }
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
             UIManager.put("Button.arc", 12);
             UIManager.put("Component.arc", 12);
             UIManager.put("TextComponent.arc", 12);
         } catch (Exception ignored) {}
+        watchdog = EdtWatchdog.install();
         // [CO6] Functional Programming construct (Lambda Expression) for thread safety
         SwingUtilities.invokeLater(() -> new FitnessTrackerApp().setVisible(true));
     }
@@ -83,8 +209,20 @@ public class FitnessTrackerApp extends JFrame {
         setLocationRelativeTo(null);
         getContentPane().setBackground(MAIN_BG);
 
-        dbHelper = new DatabaseHelper();
-        dbHelper.initTables();
+        // Opening the store (and its DDL) runs while the window comes up; login and register wait for it
+        storeReady = asyncData.supply(() -> {
+            TrackerStore store = openStore();
+            store.initTables();
+            backups = Backups.schedule(store);
+            dbHelper = store;
+            onEvent(WriteFailed.class, this::writeFailed);
+            return store;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            asyncData.shutdown();
+            if (backups != null) backups.stop();
+            if (!storeReady.isCompletedExceptionally()) storeReady.join().close();
+        }, "db-close"));
 
         setLayout(new BorderLayout());
 
@@ -108,27 +246,7 @@ public class FitnessTrackerApp extends JFrame {
         mainPanel = new JPanel(cardLayout);
         mainPanel.setBackground(MAIN_BG);
 
-        // Init Panels
-        loginPanel = new LoginPanel();
-        homePanel = new HomePanel();
-        myDataPanel = new MyDataPanel();
-        exerciseCategoryPanel = new ExerciseCategoryPanel();
-        workoutSessionPanel = new WorkoutSessionPanel();
-        manualEntryPanel = new ManualEntryPanel();
-        foodPanel = new FoodPanel();
-        settingsPanel = new SettingsPanel();
-        statisticsPanel = new StatisticsPanel();
-
-        mainPanel.add(loginPanel, LOGIN_PANEL);
-        mainPanel.add(homePanel, HOME_PANEL);
-        mainPanel.add(myDataPanel, MY_DATA_PANEL);
-        mainPanel.add(exerciseCategoryPanel, EXERCISE_CAT_PANEL);
-        mainPanel.add(workoutSessionPanel, WORKOUT_PANEL);
-        mainPanel.add(manualEntryPanel, MANUAL_ENTRY_PANEL);
-        mainPanel.add(foodPanel, FOOD_PANEL);
-        mainPanel.add(settingsPanel, SETTINGS_PANEL);
-        mainPanel.add(statisticsPanel, STATISTICS_PANEL);
-
+        // Panels are built by ensurePanel() the first time they are shown
         // Add Menu Items
         addMenuButton("Dashboard", HOME_PANEL);
         addMenuButton("My Statistics", MY_DATA_PANEL);
@@ -148,6 +266,38 @@ public class FitnessTrackerApp extends JFrame {
         navigateTo(LOGIN_PANEL);
     }
 
+    // -Dfitpulse.store=sqlite|log|memory|http://host:port picks the backend. By default SQLite is used when sqlite-jdbc is
+    // on the classpath, and the JDK-only log store (directory -Dfitpulse.data) otherwise. Every call that
+    // reaches the backend is timed unless -Dfitpulse.metrics=false; -Dfitpulse.metrics.file appends the
+    // numbers to a CSV every -Dfitpulse.metrics.interval seconds. Reads are cached per user in front of
+    // that (-Dfitpulse.cache=false turns it off, -Dfitpulse.cache.users bounds it), except for a remote
+    // store, whose data other clients may change.
+    static TrackerStore openStore() {
+        TrackerStore backend = openBackend(), store = backend;
+        if (Boolean.parseBoolean(System.getProperty("fitpulse.metrics", "true"))) {
+            String file = System.getProperty("fitpulse.metrics.file");
+            store = new InstrumentedStore(store, file == null ? null : Path.of(file), Long.getLong("fitpulse.metrics.interval", 60) * 1000);
+        }
+        if (backend instanceof RemoteStore || !Boolean.parseBoolean(System.getProperty("fitpulse.cache", "true"))) return store;
+        return new CachingStore(store, Integer.getInteger("fitpulse.cache.users", 256));
+    }
+
+    private static TrackerStore openBackend() {
+        String kind = System.getProperty("fitpulse.store", "auto");
+        if (kind.startsWith("http://") || kind.startsWith("https://")) return new RemoteStore(URI.create(kind));
+        if (kind.equals("memory")) return new InMemoryStore();
+        boolean sqlite = kind.equals("sqlite");
+        if (kind.equals("auto")) {
+            try {
+                Class.forName("org.sqlite.JDBC");
+                sqlite = true;
+            } catch (ClassNotFoundException e) {
+                System.err.println("sqlite-jdbc not found, using the built-in log store");
+            }
+        }
+        return sqlite ? new DatabaseHelper() : new LogStore(Path.of(System.getProperty("fitpulse.data", "fitness_tracker_log")));
+    }
+
     private void addMenuButton(String text, String panelName) {
         ModernButton btn = new ModernButton(text, SIDEBAR_BG, new Color(52, 73, 94));
         btn.setForeground(Color.WHITE);
@@ -167,17 +317,145 @@ public class FitnessTrackerApp extends JFrame {
     }
 
 
+    // Builds a panel and adds it to the card layout the first time it is needed
+    private void ensurePanel(String panelName) {
+        JPanel panel = switch (panelName) {
+            case LOGIN_PANEL -> loginPanel == null ? loginPanel = new LoginPanel() : null;
+            case HOME_PANEL -> homePanel == null ? homePanel = new HomePanel() : null;
+            case MY_DATA_PANEL -> myDataPanel == null ? myDataPanel = new MyDataPanel() : null;
+            case EXERCISE_CAT_PANEL -> exerciseCategoryPanel == null ? exerciseCategoryPanel = new ExerciseCategoryPanel() : null;
+            case WORKOUT_PANEL -> workoutSessionPanel == null ? workoutSessionPanel = new WorkoutSessionPanel() : null;
+            case MANUAL_ENTRY_PANEL -> manualEntryPanel == null ? manualEntryPanel = new ManualEntryPanel() : null;
+            case FOOD_PANEL -> foodPanel == null ? foodPanel = new FoodPanel() : null;
+            case SETTINGS_PANEL -> settingsPanel == null ? settingsPanel = new SettingsPanel() : null;
+            case STATISTICS_PANEL -> statisticsPanel == null ? statisticsPanel = new StatisticsPanel() : null;
+            default -> throw new IllegalArgumentException(panelName);
+        };
+        if (panel != null) mainPanel.add(panel, panelName);
+    }
+
     private void navigateTo(String panelName) {
+        if (watchdog != null) watchdog.setPanel(panelName);
+        ensurePanel(panelName);
         cardLayout.show(mainPanel, panelName);
+        // Results of a refresh still in flight for the panel we are leaving are no longer wanted
+        if (activePanel != null) activePanel.cancelRefresh();
+        activePanel = null;
         switch (panelName) {
             case HOME_PANEL -> homePanel.updateWelcome();
             // [CO5] Polymorphism: Calling refreshData() which behaves differently per panel
-            case MY_DATA_PANEL -> myDataPanel.refreshData();
-            case FOOD_PANEL -> foodPanel.refreshData();
-            case SETTINGS_PANEL -> settingsPanel.refreshData();
-            case STATISTICS_PANEL -> statisticsPanel.refreshData();
+            case MY_DATA_PANEL -> activePanel = myDataPanel;
+            case FOOD_PANEL -> activePanel = foodPanel;
+            case SETTINGS_PANEL -> activePanel = settingsPanel;
+            case STATISTICS_PANEL -> activePanel = statisticsPanel;
             case MANUAL_ENTRY_PANEL -> manualEntryPanel.resetView();
         }
+        // Panels kept current by domain events only reload when the user or the day changed
+        if (activePanel != null && !activePanel.isCurrent(currentUser)) activePanel.refreshData();
+    }
+
+    // Delivers the current user's events of this type on the EDT. Panels subscribe once, when built,
+    // which is always after the store is ready.
+    private <E extends DomainEvent> void onEvent(Class<E> type, Consumer<? super E> handler) {
+        dbHelper.events().subscribe(type, e -> SwingUtilities.invokeLater(() -> {
+            if (currentUser != null && currentUser.id == e.userId()) handler.accept(e);
+        }));
+    }
+
+    // The write was confirmed when it was queued, so say plainly that it is gone
+    private void writeFailed(WriteFailed e) {
+        String what = switch (e.operation()) {
+            case "logWorkout" -> "workout";
+            case "logMeal" -> "meal";
+            case "deleteMeal" -> "meal deletion";
+            default -> "last change";
+        };
+        JOptionPane.showMessageDialog(this, "Your " + what + " could not be saved and was lost:\n" + e.reason(),
+                "Not saved", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private record Foods(FoodCatalog catalog, FoodSearchIndex index) {}
+
+    // Maps (compiling first if the CSV changed) and indexes the food catalog off the EDT, once
+    private CompletableFuture<Foods> foods() {
+        if (foodsReady == null) {
+            Path csv = Path.of(System.getProperty("fitpulse.foods", "foods.csv"));
+            Path bin = csv.resolveSibling(csv.getFileName().toString().replaceFirst("\\.csv$", "") + ".bin");
+            foodsReady = asyncData.supply(() -> {
+                FoodCatalog catalog = FoodCatalog.empty();
+                try {
+                    catalog = FoodCatalog.open(csv, bin);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                FoodCatalog loaded = catalog;
+                return new Foods(loaded, new FoodSearchIndex(loaded.size(), loaded::name));
+            });
+        }
+        return foodsReady;
+    }
+
+    // After the first login: load the food catalog, read the user's summary once so pooled connections
+    // and caches are warm, and load the classes of the screens not opened yet, all off the EDT
+    private void warmUp() {
+        if (warmedUp) return;
+        warmedUp = true;
+        int uid = currentUser.id;
+        foods();
+        asyncData.supply(() -> { dbHelper.getTodayRollup(uid); dbHelper.getStreakSummary(uid); return null; });
+        asyncData.supply(() -> { preloadClasses(); return null; });
+    }
+
+    private static void preloadClasses() {
+        ClassLoader loader = FitnessTrackerApp.class.getClassLoader();
+        List<String> names = new ArrayList<>(List.of("javax.swing.JTable", "javax.swing.JSplitPane", "javax.swing.JComboBox",
+                "javax.swing.JScrollPane", "javax.swing.JSpinner", "javax.swing.table.TableRowSorter"));
+        for (Class<?> panel : List.of(HomePanel.class, MyDataPanel.class, ExerciseCategoryPanel.class, WorkoutSessionPanel.class,
+                ManualEntryPanel.class, FoodPanel.class, SettingsPanel.class, StatisticsPanel.class)) names.add(panel.getName());
+        for (String name : names) {
+            try {
+                Class.forName(name, true, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Time from JVM start to the first painted frame, appended to -Dfitpulse.startup.log as CSV so it can be
+    // tracked across builds and CDS settings; printed only then or with -Dfitpulse.startup.print=true
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (firstFramePainted) return;
+        firstFramePainted = true;
+        long ms = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        boolean cds = ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .anyMatch(arg -> arg.startsWith("-XX:SharedArchiveFile") || arg.startsWith("-XX:AOTCache"));
+        String log = System.getProperty("fitpulse.startup.log");
+        if (log != null || Boolean.getBoolean("fitpulse.startup.print")) {
+            System.out.println("First frame after " + ms + " ms" + (cds ? " (class-data sharing archive)" : ""));
+        }
+        if (log != null) {
+            try {
+                Path file = Path.of(log);
+                String header = Files.exists(file) ? "" : "time,first_frame_ms,cds\n";
+                Files.writeString(file, header + LocalDateTime.now().withNano(0) + "," + ms + "," + cds + "\n",
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (Boolean.getBoolean("fitpulse.cds.training")) SwingUtilities.invokeLater(this::trainAndExit);
+    }
+
+    // Training run for appcds.sh: builds every screen so their classes land in the archive, then exits
+    private void trainAndExit() {
+        storeReady.join(); // the statistics screen reads from the store it is built with
+        preloadClasses();
+        for (String panel : List.of(HOME_PANEL, MY_DATA_PANEL, EXERCISE_CAT_PANEL, WORKOUT_PANEL, MANUAL_ENTRY_PANEL, FOOD_PANEL,
+                SETTINGS_PANEL, STATISTICS_PANEL)) ensurePanel(panel);
+        foods().join();
+        System.exit(0);
     }
 
     // ================= CUSTOM POPUP LOGIC =================
@@ -247,270 +525,6107 @@ public class FitnessTrackerApp extends JFrame {
         dialog.setVisible(true);
     }
 
-    // ================= HELPER CLASSES (Demonstrating OOP) =================
+    // ================= HELPER CLASSES (Demonstrating OOP) =================
+
+    // [CO5] Inheritance: Creating a custom button component
+    static class ModernButton extends JButton {
+        private Color normalColor;
+        private Color hoverColor;
+
+        // [CO5] Method Overloading: Constructor 1 (Standard)
+        public ModernButton(String text, Color normal, Color hover) {
+            super(text);
+            this.normalColor = normal;
+            this.hoverColor = hover;
+            initButton();
+        }
+
+        // [CO5] Method Overloading: Constructor 2 (Simplified, uses default blue)
+        public ModernButton(String text) {
+            super(text);
+            this.normalColor = new Color(52, 152, 219); // Default Blue
+            this.hoverColor = new Color(41, 128, 185);
+            initButton();
+        }
+
+        private void initButton() {
+            setBackground(normalColor);
+            setForeground(Color.WHITE);
+            setFont(new Font("Segoe UI", Font.BOLD, 14));
+            setFocusPainted(false);
+            setBorderPainted(false);
+            setCursor(new Cursor(Cursor.HAND_CURSOR));
+            setContentAreaFilled(false);
+            setOpaque(true);
+
+            addMouseListener(new MouseAdapter() {
+                public void mouseEntered(MouseEvent e) { setBackground(hoverColor); }
+                public void mouseExited(MouseEvent e) { setBackground(normalColor); }
+            });
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(getBackground());
+            g2.fillRoundRect(0, 0, getWidth(), getHeight(), 15, 15);
+            super.paintComponent(g2);
+            g2.dispose();
+        }
+    }
+
+    static class ModernCard extends JPanel {
+        public ModernCard() {
+            setBackground(CARD_BG);
+            setBorder(new CompoundBorder(new LineBorder(new Color(220, 224, 228), 1), new EmptyBorder(25, 25, 25, 25)));
+        }
+    }
+
+    static class SmoothProgressBar extends JProgressBar {
+        public SmoothProgressBar(int min, int max) {
+            super(min, max);
+            setUI(new BasicProgressBarUI() {
+                protected void paintDeterminate(Graphics g, JComponent c) {
+                    Graphics2D g2 = (Graphics2D) g;
+                    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    int w = c.getWidth(); int h = c.getHeight();
+                    int fillW = (int) (w * getPercentComplete());
+                    g2.setColor(new Color(230, 230, 230));
+                    g2.fillRoundRect(0, 0, w, h, 10, 10);
+                    g2.setColor(ACCENT_COLOR);
+                    g2.fillRoundRect(0, 0, fillW, h, 10, 10);
+                }
+            });
+            setBorderPainted(false);
+            setBackground(Color.WHITE);
+        }
+        public void setTargetValue(int target) {
+            setValue(target);
+        }
+    }
+
+    // [CO5] Abstract Class: Enforcing 'refreshData' implementation in all subclasses
+    abstract static class BasePanel extends JPanel {
+        // Writes made elsewhere (another client of a shared server) only show up on a reload
+        private static final long MAX_VIEW_AGE_MS = 5 * 60_000;
+
+        private CompletableFuture<?> pendingRefresh;
+        // Whose data for which day is on screen, kept current by events rather than reloads
+        private String loadedFor;
+        private long loadedAt;
+
+        abstract void refreshData();
+
+        protected void markLoaded(User user) {
+            loadedFor = user.id + "@" + LocalDate.now();
+            loadedAt = System.currentTimeMillis();
+        }
+
+        // Whether the view holds this user's data for today (it may be mid-reload)
+        protected boolean shows(User user) {
+            return user != null && (user.id + "@" + LocalDate.now()).equals(loadedFor);
+        }
+
+        // True when a full reload would show nothing new
+        boolean isCurrent(User user) {
+            return pendingRefresh == null && shows(user) && System.currentTimeMillis() - loadedAt < MAX_VIEW_AGE_MS;
+        }
+
+        // Whether an event may be applied as a delta. With a reload in flight the change may or may
+        // not be in its result, so that reload is restarted instead; a view never loaded is left alone.
+        protected boolean canApplyDelta(User user) {
+            if (pendingRefresh != null) {
+                refreshData();
+                return false;
+            }
+            return shows(user);
+        }
+
+        // Runs the query off the EDT and applies the result on the EDT, unless a newer
+        // refresh or a navigation away has superseded it in the meantime.
+        protected <T> void refreshAsync(AsyncData async, Supplier<T> query, Consumer<T> apply) {
+            cancelRefresh();
+            CompletableFuture<T> future = async.supply(query);
+            pendingRefresh = future;
+            future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                if (pendingRefresh != future) return;
+                pendingRefresh = null;
+                if (error != null) error.printStackTrace();
+                else apply.accept(result);
+            }));
+        }
+
+        void cancelRefresh() {
+            if (pendingRefresh != null) {
+                pendingRefresh.cancel(false);
+                pendingRefresh = null;
+                loadedFor = null; // what is on screen may be older than the reload that was dropped
+            }
+        }
+
+        // Too much changed to patch; the next time the panel is shown it reloads
+        protected void markStale() {
+            cancelRefresh();
+            loadedFor = null;
+        }
+    }
+
+    // [CO6] Concurrency: keeps every DatabaseHelper call off the Swing event dispatch thread.
+    // Each task gets its own virtual thread; callbacks are delivered back on the EDT.
+    static class AsyncData {
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        <T> CompletableFuture<T> supply(Supplier<T> query) {
+            return CompletableFuture.supplyAsync(query, executor);
+        }
+
+        <T> void submit(Supplier<T> task, Consumer<T> onEdt) {
+            supply(task).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                if (error != null) error.printStackTrace();
+                else onEdt.accept(result);
+            }));
+        }
+
+        void submit(Runnable task, Runnable onEdt) {
+            submit(() -> { task.run(); return null; }, ignored -> onEdt.run());
+        }
+
+        void shutdown() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Log-linear latency histogram in nanoseconds: 32 sub-buckets per power of two, so any percentile
+    // is within ~3% of the true value. Many threads can record at once without locking.
+    static class LatencyHistogram {
+        private static final int SUB_BITS = 5, SUB = 1 << SUB_BITS;
+        private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS) * SUB);
+        private final LongAdder count = new LongAdder(), sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        static int bucket(long nanos) {
+            if (nanos < SUB) return (int) Math.max(0, nanos);
+            int exp = 63 - Long.numberOfLeadingZeros(nanos);
+            return (exp - SUB_BITS + 1) * SUB + (int) ((nanos >>> (exp - SUB_BITS)) & (SUB - 1));
+        }
+
+        // Smallest value that falls in bucket b, and how many values it spans
+        private static long lowest(int b) { return b < SUB ? b : (long) (SUB + b % SUB) << (b / SUB - 1); }
+        private static long width(int b) { return b < SUB ? 1 : 1L << (b / SUB - 1); }
+
+        void record(long nanos) {
+            counts.incrementAndGet(bucket(nanos));
+            count.increment();
+            sum.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        long count() { return count.sum(); }
+        long maxNanos() { return max.get(); }
+        double meanNanos() { long n = count(); return n == 0 ? 0 : (double) sum.sum() / n; }
+
+        // q in [0, 1], e.g. 0.99 for p99; the middle of the bucket holding that rank
+        long percentile(double q) {
+            long n = count();
+            if (n == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * n)), seen = 0;
+            for (int b = 0; b < counts.length(); b++) {
+                seen += counts.get(b);
+                if (seen >= rank) return Math.min(maxNanos(), lowest(b) + width(b) / 2);
+            }
+            return maxNanos();
+        }
+
+        void reset() {
+            for (int b = 0; b < counts.length(); b++) counts.set(b, 0);
+            count.reset(); sum.reset(); max.reset();
+        }
+    }
+
+    // Watches the event dispatch thread. Every event's own busy time (minus nested events and the idle
+    // wait inside modal dialogs) goes into a histogram for the panel on screen. While one event runs past
+    // the threshold, a monitor thread samples the EDT stack so the report names the code that held it.
+    static class EdtWatchdog extends EventQueue {
+        private static final int MAX_DEPTH = 64;
+        private static final long PROBE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+        private static final long[] STALL_BOUNDS_MS = {250, 500, 1000, 2000, 5000};
+
+        static class PanelStats {
+            final LatencyHistogram dispatch = new LatencyHistogram();
+            // [threshold, 250ms), [250ms, 500ms) ... [5s, inf)
+            final AtomicLongArray stalls = new AtomicLongArray(STALL_BOUNDS_MS.length + 1);
+        }
+
+        static class StallSite {
+            final LongAdder samples = new LongAdder();
+            final String stack;
+            StallSite(String stack) { this.stack = stack; }
+        }
+
+        private final long thresholdNanos;
+        private final long sampleMs;
+        private final Map<String, PanelStats> panels = new ConcurrentHashMap<>();
+        private final Map<String, StallSite> sites = new ConcurrentHashMap<>();
+        private final LatencyHistogram queueLatency = new LatencyHistogram();
+        private final LongAdder stallCount = new LongAdder();
+
+        // Dispatch frames, touched only on the EDT; the monitor reads the volatile summary below
+        private final long[] starts = new long[MAX_DEPTH], excluded = new long[MAX_DEPTH];
+        private final AWTEvent[] events = new AWTEvent[MAX_DEPTH];
+        private volatile int depth;
+        private volatile boolean idle;
+        private volatile long busySince;
+        private volatile AWTEvent current;
+        private volatile Thread edt;
+        private volatile String panel = LOGIN_PANEL;
+        private volatile long probePostedAt;
+
+        private EdtWatchdog(long thresholdMs) {
+            this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+            this.sampleMs = Math.max(10, Math.min(100, thresholdMs / 4));
+        }
+
+        // -Dfitpulse.edt.watchdog=false turns it off; -Dfitpulse.edt.threshold (ms, default 200) sets what
+        // counts as a stall; -Dfitpulse.edt.report writes the summary there on exit instead of stderr
+        static EdtWatchdog install() {
+            if (GraphicsEnvironment.isHeadless() || !Boolean.parseBoolean(System.getProperty("fitpulse.edt.watchdog", "true"))) return null;
+            EdtWatchdog dog = new EdtWatchdog(Long.getLong("fitpulse.edt.threshold", 200));
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(dog);
+            Thread monitor = new Thread(dog::monitorLoop, "edt-watchdog");
+            monitor.setDaemon(true);
+            monitor.start();
+            String file = System.getProperty("fitpulse.edt.report");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (file != null) {
+                    try {
+                        Files.writeString(Path.of(file), dog.report());
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                } else if (dog.stallCount.sum() > 0) {
+                    System.err.print(dog.report());
+                }
+            }, "edt-report"));
+            return dog;
+        }
+
+        // The navigateTo target that later events are charged to
+        void setPanel(String name) { panel = name; }
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            int d = depth;
+            if (d == MAX_DEPTH) { super.dispatchEvent(event); return; }
+            edt = Thread.currentThread();
+            long start = System.nanoTime();
+            starts[d] = start; excluded[d] = 0; events[d] = event;
+            current = event;
+            depth = d + 1;
+            busySince = start;
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                long end = System.nanoTime(), total = end - starts[d];
+                long self = total - excluded[d];
+                events[d] = null;
+                if (d > 0) excluded[d - 1] += total;
+                current = d > 0 ? events[d - 1] : null;
+                depth = d;
+                busySince = end;
+                record(event, self);
+            }
+        }
+
+        // Called by the main loop and by modal dialogs' nested loops; waiting here is not a stall
+        @Override
+        public AWTEvent getNextEvent() throws InterruptedException {
+            idle = true;
+            long start = System.nanoTime();
+            try {
+                return super.getNextEvent();
+            } finally {
+                long end = System.nanoTime();
+                int d = depth;
+                if (d > 0) excluded[d - 1] += end - start;
+                idle = false;
+                busySince = end;
+            }
+        }
+
+        private void record(AWTEvent event, long selfNanos) {
+            String name = panel;
+            PanelStats stats = panels.computeIfAbsent(name, k -> new PanelStats());
+            stats.dispatch.record(selfNanos);
+            if (selfNanos < thresholdNanos) return;
+            long ms = TimeUnit.NANOSECONDS.toMillis(selfNanos);
+            int bucket = 0;
+            while (bucket < STALL_BOUNDS_MS.length && ms >= STALL_BOUNDS_MS[bucket]) bucket++;
+            stats.stalls.incrementAndGet(bucket);
+            stallCount.increment();
+            System.err.println("EDT stalled " + ms + " ms on " + name + " (" + describe(event) + ")");
+        }
+
+        private void monitorLoop() {
+            long nextProbe = 0;
+            while (true) {
+                try {
+                    Thread.sleep(sampleMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long now = System.nanoTime();
+                Thread thread = edt;
+                if (thread != null && depth > 0 && !idle && now - busySince >= thresholdNanos) sample(thread);
+                // How long a new event waits before the EDT gets to it; one probe in flight at a time
+                if (probePostedAt == 0 && now >= nextProbe) {
+                    nextProbe = now + PROBE_NANOS;
+                    probePostedAt = now;
+                    invokeLater(() -> { queueLatency.record(System.nanoTime() - now); probePostedAt = 0; });
+                }
+            }
+        }
+
+        // Charges one stack sample to (panel, event, innermost app frame)
+        private void sample(Thread thread) {
+            StackTraceElement[] stack = thread.getStackTrace();
+            AWTEvent event = current;
+            String site = stack.length == 0 ? "at ?" : "at " + stack[0]; // no trace, e.g. while the thread exits
+            for (StackTraceElement frame : stack) {
+                String cls = frame.getClassName();
+                if (cls.startsWith(FitnessTrackerApp.class.getName()) && !cls.equals(EdtWatchdog.class.getName())) { site = "at " + frame; break; }
+            }
+            String key = panel + " | " + (event == null ? "?" : describe(event)) + " | " + site;
+            sites.computeIfAbsent(key, k -> {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < Math.min(12, stack.length); i++) sb.append("        at ").append(stack[i]).append('\n');
+                return new StallSite(sb.toString());
+            }).samples.increment();
+        }
+
+        static String describe(AWTEvent event) {
+            String kind = event instanceof InvocationEvent ? "invokeLater" : event instanceof MouseEvent ? "mouse"
+                    : event instanceof KeyEvent ? "key" : event instanceof PaintEvent ? "paint"
+                    : event instanceof WindowEvent ? "window" : event.getClass().getSimpleName();
+            Object source = event.getSource();
+            if (source instanceof AbstractButton b && b.getText() != null && !b.getText().isBlank()) return kind + " '" + b.getText() + "'";
+            if (source instanceof Component c) return kind + " " + c.getClass().getName().replaceFirst("^.*[.$]", "");
+            return kind;
+        }
+
+        String report() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "EDT watchdog: %d stalls of %d ms or more; queue latency p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    stallCount.sum(), TimeUnit.NANOSECONDS.toMillis(thresholdNanos), queueLatency.percentile(0.5) / 1e6,
+                    queueLatency.percentile(0.99) / 1e6, queueLatency.maxNanos() / 1e6));
+            sb.append(String.format("%-14s %8s %8s %8s %9s  stalls: %6s %6s %6s %6s %6s %6s%n", "Panel", "Events", "p50 ms", "p99 ms", "max ms",
+                    "<250ms", "<500ms", "<1s", "<2s", "<5s", "5s+"));
+            for (Map.Entry<String, PanelStats> e : new TreeMap<>(panels).entrySet()) {
+                LatencyHistogram h = e.getValue().dispatch;
+                sb.append(String.format(Locale.ROOT, "%-14s %8d %8.2f %8.2f %9.1f         ", e.getKey(), h.count(),
+                        h.percentile(0.5) / 1e6, h.percentile(0.99) / 1e6, h.maxNanos() / 1e6));
+                for (int b = 0; b < e.getValue().stalls.length(); b++) sb.append(String.format(" %6d", e.getValue().stalls.get(b)));
+                sb.append('\n');
+            }
+            List<Map.Entry<String, StallSite>> top = new ArrayList<>(sites.entrySet());
+            top.sort(Comparator.comparingLong((Map.Entry<String, StallSite> e) -> e.getValue().samples.sum()).reversed());
+            if (!top.isEmpty()) sb.append(String.format("Stall sites (one sample every %d ms):%n", sampleMs));
+            for (Map.Entry<String, StallSite> e : top.subList(0, Math.min(10, top.size()))) {
+                sb.append(String.format("%6d  %s%n", e.getValue().samples.sum(), e.getKey())).append(e.getValue().stack);
+            }
+            return sb.toString();
+        }
+    }
+    // [CO4] Encapsulation: User entity with fields and methods
+    static class User {
+        int id; String username; String name; int age; double height; double weight; double goalWeight;
+        public int getProteinGoal() { return proteinGoalFor(weight); }
+        // Events carry a snapshot so later edits to the session's user don't leak into them
+        User copy() {
+            User c = new User(); c.id = id; c.username = username; c.name = name; c.age = age;
+            c.height = height; c.weight = weight; c.goalWeight = goalWeight;
+            return c;
+        }
+        static int proteinGoalFor(double weight) { return (int) Math.round(weight * 1.8); }
+    }
+
+    // [CO4] Class and Object: Representing a food item
+    static class FoodItem {
+        double protein; double carbs; double fat; double calories;
+        public FoodItem(double p, double c, double f, double cal) {
+            this.protein = p; this.carbs = c; this.fat = f; this.calories = cal;
+        }
+    }
+
+    static class DataUtils {
+        // [CO2] Algorithm: Linear scan for the maximum (a full sort is not needed for one value)
+        public static int getLongestWorkoutDuration(int[] durations) {
+            int max = 0;
+            for (int i = 0; i < durations.length; i++) {
+                max = Math.max(max, durations[i]);
+            }
+            return max;
+        }
+
+        // [CO6] Generics and Collections (Map)
+        public static Map<String, String[]> getExerciseMap() {
+            Map<String, String[]> map = new HashMap<>();
+            map.put("Legs", new String[]{"Barbell Squats", "Leg Press", "Lunges", "Calf Raises", "Leg Extensions", "Romanian Deadlift"});
+            map.put("Chest", new String[]{"Bench Press", "Incline Dumbbell Press", "Cable Flys", "Push-ups", "Dips", "Chest Press"});
+            map.put("Back", new String[]{"Deadlift", "Pull-Ups", "Lat Pulldown", "Barbell Rows", "Face Pulls", "Seated Cable Row"});
+            map.put("Arms", new String[]{"Bicep Curls", "Tricep Extensions", "Hammer Curls", "Skull Crushers", "Preacher Curls"});
+            map.put("Abs", new String[]{"Crunches", "Plank", "Leg Raises", "Russian Twists", "Bicycle Crunches"});
+            map.put("Shoulders", new String[]{"Overhead Press", "Lateral Raises", "Front Raises", "Shrugs", "Rear Delt Fly"});
+            map.put("Cardio", new String[]{"Treadmill Run", "Outdoor Run", "Cycling", "Elliptical", "Jump Rope", "Rowing", "Swimming", "Stair Climber"});
+            return map;
+        }
+    }
+
+    // Food catalog compiled from foods.csv into a columnar file that is memory-mapped read-only:
+    //   int magic, int version, int count
+    //   float[count] protein, carbs, fat, calories (per 100 g)
+    //   int[count + 1] offsets into the UTF-8 name block, then the name block
+    // Entries are sorted by name and nothing is decoded until a row is asked for.
+    static class FoodCatalog {
+        private static final int MAGIC = 0x46504643; // "FPFC"
+        private static final int VERSION = 1;
+        private static final int HEADER_BYTES = 12;
+
+        private final ByteBuffer data;
+        private final int count;
+        private final int offsetsAt;
+        private final int namesAt;
+
+        private FoodCatalog(ByteBuffer data) throws IOException {
+            if (data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw new IOException("Not a food catalog (or an older format); delete it to rebuild from the CSV");
+            }
+            this.data = data;
+            this.count = data.getInt(8);
+            this.offsetsAt = HEADER_BYTES + 4 * 4 * count;
+            this.namesAt = offsetsAt + 4 * (count + 1);
+        }
+
+        static FoodCatalog empty() {
+            try {
+                return new FoodCatalog(ByteBuffer.allocate(HEADER_BYTES + 4).putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0).flip());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        // Recompiles the binary file when the CSV is newer, then maps it
+        static FoodCatalog open(Path csv, Path bin) throws IOException {
+            if (Files.exists(csv) && (!Files.exists(bin) || Files.getLastModifiedTime(bin).compareTo(Files.getLastModifiedTime(csv)) < 0)) {
+                compile(csv, bin);
+            }
+            if (!Files.exists(bin)) throw new NoSuchFileException(csv.toString());
+            try (FileChannel ch = FileChannel.open(bin, StandardOpenOption.READ)) {
+                return new FoodCatalog(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+            }
+        }
+
+        // CSV rows are "name,protein,carbs,fat,calories"; the name may itself contain commas.
+        // Blank lines, '#' comments and the header row are skipped; a repeated name keeps the last row.
+        static void compile(Path csv, Path bin) throws IOException {
+            TreeMap<String, float[]> rows = new TreeMap<>();
+            try (BufferedReader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+                String line;
+                int lineNo = 0;
+                while ((line = in.readLine()) != null) {
+                    lineNo++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#") || line.startsWith("name,")) continue;
+                    float[] macros = new float[4];
+                    int end = line.length();
+                    try {
+                        for (int k = 3; k >= 0; k--) {
+                            int comma = line.lastIndexOf(',', end - 1);
+                            macros[k] = Float.parseFloat(line.substring(comma + 1, end).trim());
+                            end = comma;
+                        }
+                    } catch (RuntimeException e) {
+                        throw new IOException(csv + ":" + lineNo + ": expected name,protein,carbs,fat,calories", e);
+                    }
+                    rows.put(line.substring(0, end).trim(), macros);
+                }
+            }
+
+            Path tmp = bin.resolveSibling(bin.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC); out.writeInt(VERSION); out.writeInt(rows.size());
+                for (int k = 0; k < 4; k++) {
+                    for (float[] macros : rows.values()) out.writeFloat(macros[k]);
+                }
+                int offset = 0;
+                out.writeInt(0);
+                for (String name : rows.keySet()) {
+                    offset += name.getBytes(StandardCharsets.UTF_8).length;
+                    out.writeInt(offset);
+                }
+                for (String name : rows.keySet()) out.write(name.getBytes(StandardCharsets.UTF_8));
+            }
+            Files.move(tmp, bin, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        int size() { return count; }
+
+        String name(int id) {
+            int from = data.getInt(offsetsAt + 4 * id), to = data.getInt(offsetsAt + 4 * (id + 1));
+            byte[] bytes = new byte[to - from];
+            data.get(namesAt + from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        float protein(int id) { return data.getFloat(HEADER_BYTES + 4 * id); }
+        float carbs(int id) { return data.getFloat(HEADER_BYTES + 4 * (count + id)); }
+        float fat(int id) { return data.getFloat(HEADER_BYTES + 4 * (2 * count + id)); }
+        float calories(int id) { return data.getFloat(HEADER_BYTES + 4 * (3 * count + id)); }
+
+        FoodItem item(int id) { return new FoodItem(protein(id), carbs(id), fat(id), calories(id)); }
+    }
+
+    // Open-addressing long -> dense int id map; ids are handed out 0, 1, 2... in insertion order
+    static class LongIntMap {
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private boolean[] used = new boolean[1024];
+        private int size;
+
+        int size() { return size; }
+
+        int get(long key) {
+            for (int i = slot(key, keys.length); used[i]; i = (i + 1) & (keys.length - 1)) {
+                if (keys[i] == key) return values[i];
+            }
+            return -1;
+        }
+
+        int getOrAdd(long key) {
+            int i = slot(key, keys.length);
+            for (; used[i]; i = (i + 1) & (keys.length - 1)) {
+                if (keys[i] == key) return values[i];
+            }
+            if (size * 2 >= keys.length) { grow(); return getOrAdd(key); }
+            used[i] = true; keys[i] = key; values[i] = size;
+            return size++;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys; int[] oldValues = values; boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2]; values = new int[keys.length]; used = new boolean[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (!oldUsed[i]) continue;
+                int j = slot(oldKeys[i], keys.length);
+                while (used[j]) j = (j + 1) & (keys.length - 1);
+                used[j] = true; keys[j] = oldKeys[i]; values[j] = oldValues[i];
+            }
+        }
+
+        private static int slot(long key, int capacity) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 40) & (capacity - 1);
+        }
+    }
+
+    // Ranked, typo-tolerant search over a fixed list of names. Results are ids (indices into that list).
+    // A sorted word-start index answers exact / prefix / word-prefix matches by binary search, and
+    // trigram postings find substring and misspelled matches without scanning every name.
+    static class FoodSearchIndex {
+        static final int MAX_RESULTS = 500;
+        static final int EXACT = 1000, PREFIX = 900, WORD_PREFIX = 800, SUBSTRING = 600, FUZZY = 400;
+
+        private final String[] names;     // normalized, by id
+        private final long[] wordStarts;  // (id << 16 | offset) sorted by the text from offset on
+        private final int[] alphabetical; // ids in name order, for the empty query
+        // Trigram postings in one flat array: ids for gram g are postings[postingStart[g] .. postingStart[g + 1])
+        private final LongIntMap gramIds = new LongIntMap();
+        private final int[] postingStart;
+        private final int[] postings;
+        private final int[] overlap;      // scratch, per id; search() is synchronized
+        private final int[] score;
+
+        FoodSearchIndex(String[] displayNames) {
+            this(displayNames.length, i -> displayNames[i]);
+        }
+
+        // nameOf is called once per id while building; only the normalized names are kept
+        FoodSearchIndex(int n, IntFunction<String> nameOf) {
+            names = new String[n];
+            long[] starts = new long[Math.max(16, n * 2)];
+            int startCount = 0;
+            int[] occurrences = new int[Math.max(16, n * 8)]; // distinct gram ids per name, back to back
+            int[] occurrenceEnd = new int[n];
+            int occurrenceCount = 0;
+            int[] gramSize = new int[1024];
+            for (int id = 0; id < n; id++) {
+                String s = normalize(nameOf.apply(id));
+                names[id] = s;
+                for (int i = 0; i < s.length() && i <= 0xFFFF; i++) {
+                    if (i == 0 || (s.charAt(i - 1) == ' ' && s.charAt(i) != ' ')) {
+                        if (startCount == starts.length) starts = Arrays.copyOf(starts, startCount * 2);
+                        starts[startCount++] = ((long) id << 16) | i;
+                    }
+                }
+                int first = occurrenceCount;
+                for (int i = 0; i + 3 <= s.length(); i++) {
+                    int g = gramIds.getOrAdd(gram(s, i));
+                    boolean seen = false;
+                    for (int j = first; j < occurrenceCount && !seen; j++) seen = occurrences[j] == g;
+                    if (seen) continue;
+                    if (occurrenceCount == occurrences.length) occurrences = Arrays.copyOf(occurrences, occurrenceCount * 2);
+                    occurrences[occurrenceCount++] = g;
+                    if (g >= gramSize.length) gramSize = Arrays.copyOf(gramSize, Math.max(g + 1, gramSize.length * 2));
+                    gramSize[g]++;
+                }
+                occurrenceEnd[id] = occurrenceCount;
+            }
+            int grams = gramIds.size();
+            postingStart = new int[grams + 1];
+            for (int g = 0; g < grams; g++) postingStart[g + 1] = postingStart[g] + gramSize[g];
+            postings = new int[occurrenceCount];
+            int[] fill = Arrays.copyOf(postingStart, grams);
+            for (int id = 0, o = 0; id < n; id++) {
+                for (; o < occurrenceEnd[id]; o++) postings[fill[occurrences[o]]++] = id;
+            }
+
+            wordStarts = sortByText(Arrays.copyOf(starts, startCount));
+            int[] alpha = new int[n];
+            int a = 0;
+            for (long start : wordStarts) {
+                if ((start & 0xFFFF) == 0) alpha[a++] = (int) (start >>> 16);
+            }
+            alphabetical = Arrays.copyOf(alpha, a);
+            overlap = new int[n];
+            score = new int[n];
+        }
+
+        // Bottom-up merge sort of word starts by the text that follows them (no boxing)
+        private long[] sortByText(long[] src) {
+            long[] dst = new long[src.length];
+            for (int width = 1; width < src.length; width *= 2) {
+                for (int lo = 0; lo < src.length; lo += 2 * width) {
+                    int mid = Math.min(lo + width, src.length), hi = Math.min(lo + 2 * width, src.length);
+                    int i = lo, j = mid, k = lo;
+                    while (i < mid && j < hi) dst[k++] = compareFrom(src[i], src[j]) <= 0 ? src[i++] : src[j++];
+                    while (i < mid) dst[k++] = src[i++];
+                    while (j < hi) dst[k++] = src[j++];
+                }
+                long[] t = src; src = dst; dst = t;
+            }
+            return src;
+        }
+
+        static String normalize(String s) {
+            return s.toLowerCase().trim().replaceAll("\\s+", " ");
+        }
+
+        // Best matches first: exact, whole-name prefix, word prefix, substring, then misspellings.
+        // Ties go to shorter names, then lower ids, so pass the names in alphabetical order.
+        synchronized int[] search(String query, int limit) {
+            String q = normalize(query);
+            if (q.isEmpty()) return Arrays.copyOf(alphabetical, Math.min(limit, alphabetical.length));
+
+            int[] hits = new int[64];
+            int hitCount = 0;
+            for (int i = lowerBound(q); i < wordStarts.length; i++) {
+                int id = (int) (wordStarts[i] >>> 16), off = (int) (wordStarts[i] & 0xFFFF);
+                if (!names[id].startsWith(q, off)) break;
+                int s = off > 0 ? WORD_PREFIX : names[id].length() == q.length() ? EXACT : PREFIX;
+                if (score[id] == 0) {
+                    if (hitCount == hits.length) hits = Arrays.copyOf(hits, hitCount * 2);
+                    hits[hitCount++] = id;
+                }
+                score[id] = Math.max(score[id], s);
+            }
+
+            // Substring and fuzzy matches rank below every prefix match, so only look for them
+            // when the prefix matches do not fill the page
+            if (q.length() >= 3 && hitCount < limit) {
+                int maxEdits = q.length() <= 4 ? 1 : 2;
+                long[] grams = new long[q.length() - 2];
+                int gramCount = 0;
+                for (int i = 0; i + 3 <= q.length(); i++) {
+                    long g = gram(q, i);
+                    boolean seen = false;
+                    for (int j = 0; j < gramCount; j++) seen |= grams[j] == g;
+                    if (!seen) grams[gramCount++] = g;
+                }
+                int[] candidates = new int[64];
+                int candidateCount = 0;
+                for (int k = 0; k < gramCount; k++) {
+                    int g = gramIds.get(grams[k]);
+                    if (g < 0) continue;
+                    for (int p = postingStart[g]; p < postingStart[g + 1]; p++) {
+                        int id = postings[p];
+                        if (overlap[id]++ == 0) {
+                            if (candidateCount == candidates.length) candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                            candidates[candidateCount++] = id;
+                        }
+                    }
+                }
+                // Each edit destroys at most three of the query's trigrams. Verify the candidates
+                // sharing the most trigrams first and stop once a page is full.
+                int needed = Math.max(1, gramCount - 3 * maxEdits);
+                for (int shared = gramCount; shared >= needed && hitCount < limit; shared--) {
+                    for (int c = 0; c < candidateCount; c++) {
+                        int id = candidates[c];
+                        if (overlap[id] != shared || score[id] != 0) continue;
+                        int s = 0;
+                        if (names[id].contains(q)) {
+                            s = SUBSTRING;
+                        } else {
+                            int d = substringEditDistance(q, names[id]);
+                            if (d <= maxEdits) s = FUZZY - 100 * d;
+                        }
+                        if (s > 0) {
+                            if (hitCount == hits.length) hits = Arrays.copyOf(hits, hitCount * 2);
+                            hits[hitCount++] = id;
+                            score[id] = s;
+                        }
+                    }
+                }
+                for (int c = 0; c < candidateCount; c++) overlap[candidates[c]] = 0;
+            }
+
+            // Rank with one primitive sort: (score desc, length asc) in the high bits, id in the low bits
+            long[] keys = new long[hitCount];
+            for (int i = 0; i < hitCount; i++) {
+                int id = hits[i];
+                long rank = ((long) (EXACT - score[id]) << 16) | Math.min(names[id].length(), 0xFFFF);
+                keys[i] = (rank << 32) | id;
+                score[id] = 0;
+            }
+            Arrays.sort(keys);
+            int[] result = new int[Math.min(limit, hitCount)];
+            for (int i = 0; i < result.length; i++) result[i] = (int) keys[i];
+            return result;
+        }
+
+        private int lowerBound(String q) {
+            int lo = 0, hi = wordStarts.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int id = (int) (wordStarts[mid] >>> 16), off = (int) (wordStarts[mid] & 0xFFFF);
+                if (names[id].substring(off).compareTo(q) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        private int compareFrom(long a, long b) {
+            String s = names[(int) (a >>> 16)], t = names[(int) (b >>> 16)];
+            int i = (int) (a & 0xFFFF), j = (int) (b & 0xFFFF);
+            while (i < s.length() && j < t.length()) {
+                int d = s.charAt(i++) - t.charAt(j++);
+                if (d != 0) return d;
+            }
+            return (s.length() - i) - (t.length() - j);
+        }
+
+        private static long gram(String s, int i) {
+            return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+        }
+
+        // Fewest edits turning q into some substring of text (Sellers' approximate matching)
+        static int substringEditDistance(String q, String text) {
+            int[] prev = new int[text.length() + 1];
+            int[] cur = new int[text.length() + 1];
+            for (int i = 1; i <= q.length(); i++) {
+                cur[0] = i;
+                for (int j = 1; j <= text.length(); j++) {
+                    int cost = q.charAt(i - 1) == text.charAt(j - 1) ? 0 : 1;
+                    cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                }
+                int[] t = prev; prev = cur; cur = t;
+            }
+            int best = Integer.MAX_VALUE;
+            for (int v : prev) best = Math.min(best, v);
+            return best;
+        }
+    }
+
+    // Combo model over an int[] of result ids. A new search replaces the whole array and fires
+    // a single change event, instead of one event per removeAllItems()/addItem() call.
+    static class FoodResultModel extends AbstractListModel<String> implements ComboBoxModel<String> {
+        private final IntFunction<String> nameOf;
+        private int[] ids = new int[0];
+        private int selected = -1;
+
+        // Names are resolved only for the rows the combo actually paints
+        FoodResultModel(IntFunction<String> nameOf) { this.nameOf = nameOf; }
+
+        void setResults(int[] newIds) {
+            ids = newIds;
+            selected = newIds.length > 0 ? 0 : -1;
+            fireContentsChanged(this, -1, -1);
+        }
+
+        int getSelectedId() { return selected >= 0 ? ids[selected] : -1; }
+
+        @Override public int getSize() { return ids.length; }
+        @Override public String getElementAt(int index) { return nameOf.apply(ids[index]); }
+        @Override public Object getSelectedItem() { return selected >= 0 ? nameOf.apply(ids[selected]) : null; }
+
+        @Override
+        public void setSelectedItem(Object item) {
+            int index = -1;
+            for (int i = 0; i < ids.length && item != null; i++) {
+                if (nameOf.apply(ids[i]).equals(item)) { index = i; break; }
+            }
+            if (index != selected) {
+                selected = index;
+                fireContentsChanged(this, -1, -1);
+            }
+        }
+    }
+
+    // Keeps a small set of SQLite connections open for the life of the app.
+    // Pragmas are applied once when a connection is opened and every connection
+    // caches its prepared statements, so a query only pays for bind + execute.
+    static class ConnectionPool {
+        private final String url;
+        private final int maxSize;
+        private final BlockingQueue<PooledConnection> idle;
+        private final List<PooledConnection> all = new ArrayList<>();
+        private boolean closed;
+
+        ConnectionPool(String url, int maxSize) {
+            this.url = url;
+            this.maxSize = maxSize;
+            this.idle = new ArrayBlockingQueue<>(maxSize);
+            try {
+                Class.forName("org.sqlite.JDBC");
+            } catch (ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
+
+        PooledConnection acquire() throws SQLException {
+            PooledConnection pc = idle.poll();
+            if (pc != null) return pc;
+            synchronized (this) {
+                if (closed) throw new SQLException("Connection pool is closed");
+                if (all.size() < maxSize) {
+                    pc = new PooledConnection(this, open());
+                    all.add(pc);
+                    return pc;
+                }
+            }
+            try {
+                return idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection", e);
+            }
+        }
+
+        private Connection open() throws SQLException {
+            Connection c = DriverManager.getConnection(url);
+            try (Statement s = c.createStatement()) {
+                s.execute("PRAGMA busy_timeout=5000");
+                // WAL: readers no longer block on the writer and a commit appends to the log
+                // instead of rewriting the rollback journal; NORMAL is crash-safe in WAL mode
+                s.execute("PRAGMA journal_mode=WAL");
+                s.execute("PRAGMA synchronous=NORMAL");
+                s.execute("PRAGMA temp_store=MEMORY");
+                s.execute("PRAGMA cache_size=-8000");
+            }
+            return c;
+        }
+
+        void release(PooledConnection pc) {
+            synchronized (this) {
+                if (closed) { pc.closeQuietly(); return; }
+            }
+            idle.offer(pc);
+        }
+
+        synchronized void close() {
+            closed = true;
+            for (PooledConnection pc : all) pc.closeQuietly();
+            all.clear();
+            idle.clear();
+        }
+    }
+
+    // A borrowed connection. close() hands it back to the pool instead of closing it,
+    // so callers keep the usual try-with-resources shape.
+    static class PooledConnection implements AutoCloseable {
+        private final ConnectionPool pool;
+        final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledConnection(ConnectionPool pool, Connection connection) {
+            this.pool = pool;
+            this.connection = connection;
+        }
+
+        // Cached statements must not be closed by callers; close their ResultSets instead.
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null) {
+                ps = connection.prepareStatement(sql);
+                statements.put(sql, ps);
+            }
+            return ps;
+        }
+
+        @Override
+        public void close() { pool.release(this); }
+
+        void closeQuietly() {
+            for (PreparedStatement ps : statements.values()) {
+                try { ps.close(); } catch (SQLException ignored) {}
+            }
+            statements.clear();
+            try { connection.close(); } catch (SQLException ignored) {}
+        }
+    }
+
+    // Versioned schema. The version lives in SQLite's PRAGMA user_version and every step
+    // runs in its own transaction, so an existing fitness_tracker.db is upgraded in place.
+    // Append new steps to the end of MIGRATIONS; never edit a step that has shipped.
+    static class SchemaMigrator {
+        private static final String[][] MIGRATIONS = {
+                // 1: base tables (IF NOT EXISTS adopts databases created before versioning)
+                {
+                        "CREATE TABLE IF NOT EXISTS users (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT UNIQUE, password TEXT, name TEXT, age INTEGER, height REAL, weight REAL, goal_weight REAL)",
+                        "CREATE TABLE IF NOT EXISTS workouts (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER, date TEXT, exercise_type TEXT, duration_seconds INTEGER, details TEXT)",
+                        "CREATE TABLE IF NOT EXISTS meals (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER, date TEXT, food_name TEXT, protein REAL, calories REAL)"
+                },
+                // 2: per-user indexes; the meal/duration ones cover their queries so the table is never touched
+                {
+                        "CREATE INDEX IF NOT EXISTS idx_meals_user_date ON meals(user_id, date, protein, calories)",
+                        "CREATE INDEX IF NOT EXISTS idx_workouts_user_date ON workouts(user_id, date, duration_seconds)",
+                        "CREATE INDEX IF NOT EXISTS idx_workouts_user_id ON workouts(user_id, id)",
+                        "ANALYZE"
+                },
+                // 3: per-user workout aggregates ('*' row = all exercise types), backfilled from history
+                {
+                        "CREATE TABLE IF NOT EXISTS workout_stats (user_id INTEGER NOT NULL, exercise_type TEXT NOT NULL, session_count INTEGER NOT NULL, total_seconds INTEGER NOT NULL, max_seconds INTEGER NOT NULL, PRIMARY KEY (user_id, exercise_type))",
+                        "DELETE FROM workout_stats",
+                        "INSERT INTO workout_stats SELECT user_id, COALESCE(exercise_type, ''), COUNT(*), SUM(duration_seconds), MAX(duration_seconds) FROM workouts GROUP BY user_id, COALESCE(exercise_type, '')",
+                        "INSERT INTO workout_stats SELECT user_id, '*', COUNT(*), SUM(duration_seconds), MAX(duration_seconds) FROM workouts GROUP BY user_id"
+                },
+                // 4: per-user activity-day bitmaps; rows are built lazily from workouts on first read
+                {
+                        "CREATE TABLE IF NOT EXISTS activity_days (user_id INTEGER PRIMARY KEY, first_day INTEGER NOT NULL, bitmap BLOB NOT NULL)"
+                },
+                // 5: keep carbs/fat on meals and materialize per-user daily totals, backfilled from history
+                {
+                        "ALTER TABLE meals ADD COLUMN carbs REAL NOT NULL DEFAULT 0",
+                        "ALTER TABLE meals ADD COLUMN fat REAL NOT NULL DEFAULT 0",
+                        "CREATE TABLE IF NOT EXISTS daily_rollups (user_id INTEGER NOT NULL, day TEXT NOT NULL, protein REAL NOT NULL DEFAULT 0, carbs REAL NOT NULL DEFAULT 0, fat REAL NOT NULL DEFAULT 0, calories REAL NOT NULL DEFAULT 0, workout_seconds INTEGER NOT NULL DEFAULT 0, sessions INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (user_id, day)) WITHOUT ROWID",
+                        "INSERT OR REPLACE INTO daily_rollups(user_id, day, protein, calories) SELECT user_id, date, COALESCE(SUM(protein), 0), COALESCE(SUM(calories), 0) FROM meals GROUP BY user_id, date",
+                        "INSERT OR IGNORE INTO daily_rollups(user_id, day) SELECT DISTINCT user_id, substr(date, 1, 10) FROM workouts",
+                        "UPDATE daily_rollups SET "
+                                + "workout_seconds = (SELECT COALESCE(SUM(duration_seconds), 0) FROM workouts w WHERE w.user_id = daily_rollups.user_id AND w.date >= daily_rollups.day AND w.date < daily_rollups.day || '~'), "
+                                + "sessions = (SELECT COUNT(*) FROM workouts w WHERE w.user_id = daily_rollups.user_id AND w.date >= daily_rollups.day AND w.date < daily_rollups.day || '~')"
+                },
+                // 6: incremental backups. New workouts and meals are found by id (AUTOINCREMENT never reuses
+                // one), so only user changes and workout/meal updates and deletes are logged, by trigger.
+                // The source id tells backups of this file apart from backups of another copy.
+                {
+                        "CREATE TABLE IF NOT EXISTS change_log (seq INTEGER PRIMARY KEY AUTOINCREMENT, tbl TEXT NOT NULL, row_id INTEGER NOT NULL)",
+                        "CREATE TABLE IF NOT EXISTS backup_meta (name TEXT PRIMARY KEY, value INTEGER NOT NULL)",
+                        "INSERT OR IGNORE INTO backup_meta(name, value) VALUES('source', abs(random()))",
+                        "CREATE TRIGGER IF NOT EXISTS users_changed_ins AFTER INSERT ON users BEGIN INSERT INTO change_log(tbl, row_id) VALUES('users', NEW.id); END",
+                        "CREATE TRIGGER IF NOT EXISTS users_changed_upd AFTER UPDATE ON users BEGIN INSERT INTO change_log(tbl, row_id) VALUES('users', NEW.id); END",
+                        "CREATE TRIGGER IF NOT EXISTS users_changed_del AFTER DELETE ON users BEGIN INSERT INTO change_log(tbl, row_id) VALUES('users', OLD.id); END",
+                        "CREATE TRIGGER IF NOT EXISTS workouts_changed_upd AFTER UPDATE ON workouts BEGIN INSERT INTO change_log(tbl, row_id) VALUES('workouts', NEW.id); END",
+                        "CREATE TRIGGER IF NOT EXISTS workouts_changed_del AFTER DELETE ON workouts BEGIN INSERT INTO change_log(tbl, row_id) VALUES('workouts', OLD.id); END",
+                        "CREATE TRIGGER IF NOT EXISTS meals_changed_upd AFTER UPDATE ON meals BEGIN INSERT INTO change_log(tbl, row_id) VALUES('meals', NEW.id); END",
+                        "CREATE TRIGGER IF NOT EXISTS meals_changed_del AFTER DELETE ON meals BEGIN INSERT INTO change_log(tbl, row_id) VALUES('meals', OLD.id); END"
+                }
+        };
+
+        static int latestVersion() { return MIGRATIONS.length; }
+
+        static int currentVersion(Connection c) throws SQLException {
+            try (Statement s = c.createStatement(); ResultSet rs = s.executeQuery("PRAGMA user_version")) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+
+        static void migrate(Connection c) throws SQLException {
+            int from = currentVersion(c);
+            if (from > MIGRATIONS.length) {
+                throw new SQLException("Database schema v" + from + " is newer than this build (v" + MIGRATIONS.length + ")");
+            }
+            boolean autoCommit = c.getAutoCommit();
+            try {
+                c.setAutoCommit(false);
+                for (int v = from; v < MIGRATIONS.length; v++) {
+                    try (Statement s = c.createStatement()) {
+                        for (String sql : MIGRATIONS[v]) s.execute(sql);
+                        // PRAGMA cannot take a bound parameter; v is our own int
+                        s.execute("PRAGMA user_version=" + (v + 1));
+                        c.commit();
+                    } catch (SQLException e) {
+                        c.rollback();
+                        throw new SQLException("Schema migration to v" + (v + 1) + " failed", e);
+                    }
+                }
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    // A unit of JDBC work run against a borrowed connection, e.g. inside a transaction
+    interface SqlWork<T> {
+        T run(PooledConnection c) throws SQLException;
+    }
+
+    // Told how each queued write ended: committed, or dropped (failure set) after the one-by-one replay.
+    // nanos runs from submit to the end; called on the flusher thread.
+    interface WriteObserver {
+        void done(String op, int uid, long nanos, Exception failure);
+    }
+
+    // Turns the current row into a value; must not move the cursor
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    // Group commit. Writes are queued and one background thread commits them in batches,
+    // one transaction (one fsync) per batch, as soon as maxBatch are waiting or the oldest
+    // has waited maxDelayMs. Reads call awaitCommitted(uid) first, which flushes straight
+    // away if that user still has writes in the queue, so nobody misses their own writes.
+    static class WriteBehindQueue {
+        private static class Pending {
+            final long seq;
+            final int uid;
+            final String op;
+            final SqlWork<?> work;
+            final Runnable onCommit, onRollback;
+            final long queuedAt = System.nanoTime();
+
+            Pending(long seq, int uid, String op, SqlWork<?> work, Runnable onCommit, Runnable onRollback) {
+                this.seq = seq; this.uid = uid; this.op = op; this.work = work; this.onCommit = onCommit; this.onRollback = onRollback;
+            }
+        }
+
+        private final ConnectionPool pool;
+        private final int maxBatch;
+        private final long maxDelayNanos;
+        private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        // uid -> seq of that user's newest queued write
+        private final Map<Integer, Long> lastSeqByUser = new HashMap<>();
+        private final List<WriteObserver> observers = new CopyOnWriteArrayList<>();
+        private final Thread flusher;
+        private long nextSeq = 1, doneSeq;
+        private boolean flushRequested, closed;
+
+        WriteBehindQueue(ConnectionPool pool, int maxBatch, long maxDelayMs) {
+            this.pool = pool;
+            this.maxBatch = maxBatch;
+            this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+            flusher = new Thread(this::run, "write-behind");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+
+        // onCommit runs after the batch holding work commits. onRollback runs whenever a
+        // transaction that ran work is rolled back, so callers can drop in-memory state it touched.
+        // op names the write for observers.
+        synchronized void submit(int uid, String op, SqlWork<?> work, Runnable onCommit, Runnable onRollback) {
+            if (closed) throw new IllegalStateException("Write queue is closed");
+            Pending p = new Pending(nextSeq++, uid, op, work, onCommit, onRollback);
+            queue.add(p);
+            lastSeqByUser.put(uid, p.seq);
+            notifyAll();
+        }
+
+        // Blocks until every write queued so far for uid is done
+        synchronized void awaitCommitted(int uid) {
+            long target = lastSeqByUser.getOrDefault(uid, 0L);
+            if (target <= doneSeq) return;
+            flushRequested = true;
+            notifyAll();
+            while (doneSeq < target && flusher.isAlive()) {
+                try {
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        synchronized int pending() { return queue.size(); }
+
+        void observe(WriteObserver observer) { observers.add(observer); }
+
+        // Drains the queue, then stops the flusher. Called from the shutdown hook.
+        void close() {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void run() {
+            while (true) {
+                List<Pending> batch = new ArrayList<>();
+                synchronized (this) {
+                    try {
+                        while (true) {
+                            if (queue.isEmpty()) {
+                                if (closed) return;
+                                wait();
+                                continue;
+                            }
+                            long waited = System.nanoTime() - queue.peek().queuedAt;
+                            if (queue.size() >= maxBatch || flushRequested || closed || waited >= maxDelayNanos) break;
+                            TimeUnit.NANOSECONDS.timedWait(this, maxDelayNanos - waited);
+                        }
+                    } catch (InterruptedException e) {
+                        closed = true; // nobody interrupts us but shutdown; drain what is left and stop
+                        if (queue.isEmpty()) return;
+                    }
+                    while (batch.size() < maxBatch && !queue.isEmpty()) batch.add(queue.poll());
+                    if (queue.isEmpty()) flushRequested = false;
+                }
+                List<Pending> committed = commit(batch);
+                synchronized (this) {
+                    doneSeq = batch.get(batch.size() - 1).seq;
+                    lastSeqByUser.values().removeIf(seq -> seq <= doneSeq);
+                    notifyAll();
+                }
+                for (Pending p : committed) {
+                    if (p.onCommit != null) p.onCommit.run();
+                    done(p, null);
+                }
+            }
+        }
+
+        // Whole batch in one transaction. If any write fails, the batch is rolled back and
+        // replayed one write per transaction so a single bad row cannot drop the others.
+        private List<Pending> commit(List<Pending> batch) {
+            List<Pending> committed = new ArrayList<>(batch.size());
+            try (PooledConnection c = pool.acquire()) {
+                c.connection.setAutoCommit(false);
+                try {
+                    try {
+                        for (Pending p : batch) p.work.run(c);
+                        c.connection.commit();
+                        committed.addAll(batch);
+                        return committed;
+                    } catch (SQLException | RuntimeException e) {
+                        c.connection.rollback();
+                        rolledBack(batch);
+                    }
+                    for (Pending p : batch) {
+                        try {
+                            p.work.run(c);
+                            c.connection.commit();
+                            committed.add(p);
+                        } catch (SQLException | RuntimeException e) {
+                            c.connection.rollback();
+                            rolledBack(List.of(p));
+                            dropped(p, e);
+                        }
+                    }
+                } finally {
+                    c.connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                for (Pending p : batch) {
+                    if (committed.contains(p)) continue;
+                    rolledBack(List.of(p));
+                    dropped(p, e);
+                }
+            }
+            return committed;
+        }
+
+        private static void rolledBack(List<Pending> ps) {
+            for (Pending p : ps) if (p.onRollback != null) p.onRollback.run();
+        }
+
+        // The write is lost; observers tell the user and count it
+        private void dropped(Pending p, Exception e) {
+            e.printStackTrace();
+            done(p, e);
+        }
+
+        private void done(Pending p, Exception failure) {
+            long nanos = System.nanoTime() - p.queuedAt;
+            for (WriteObserver o : observers) {
+                try { o.done(p.op, p.uid, nanos, failure); } catch (RuntimeException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    // [CO4] Encapsulation: running totals for one user (and optionally one exercise type)
+    static class WorkoutStats {
+        int sessions; long totalSeconds; int maxSeconds;
+        public double getMeanSeconds() { return sessions == 0 ? 0 : (double) totalSeconds / sessions; }
+    }
+
+    // One bit per calendar day since the user's first workout (bit 0 = firstDay, as an epoch day).
+    // Marking a day is O(1); streak queries walk words of the bitmap, never the workouts table.
+    static class ActivityCalendar {
+        private long firstDay = -1;
+        private BitSet days = new BitSet();
+        private int longest;
+
+        static ActivityCalendar fromBytes(long firstDay, byte[] bitmap) {
+            ActivityCalendar cal = new ActivityCalendar();
+            cal.firstDay = firstDay;
+            cal.days = BitSet.valueOf(bitmap);
+            for (int i = cal.days.nextSetBit(0); i >= 0; ) {
+                int end = cal.days.nextClearBit(i);
+                cal.longest = Math.max(cal.longest, end - i);
+                i = cal.days.nextSetBit(end);
+            }
+            return cal;
+        }
+
+        synchronized long getFirstDay() { return firstDay; }
+        synchronized byte[] toBytes() { return days.toByteArray(); }
+
+        // Returns false if the day was already active
+        synchronized boolean markActive(long epochDay) {
+            if (firstDay < 0) firstDay = epochDay;
+            if (epochDay < firstDay) {
+                // Back-dated entry before the first known day: re-base the bitmap once
+                BitSet shifted = new BitSet();
+                int offset = (int) (firstDay - epochDay);
+                for (int i = days.nextSetBit(0); i >= 0; i = days.nextSetBit(i + 1)) shifted.set(i + offset);
+                days = shifted;
+                firstDay = epochDay;
+            }
+            int bit = (int) (epochDay - firstDay);
+            if (days.get(bit)) return false;
+            days.set(bit);
+            int runStart = days.previousClearBit(bit) + 1;
+            int runEnd = days.nextClearBit(bit);
+            longest = Math.max(longest, runEnd - runStart);
+            return true;
+        }
+
+        // Consecutive active days ending today, or ending yesterday if today has no workout yet
+        synchronized int currentStreak(long today) {
+            if (firstDay < 0) return 0;
+            int bit = (int) (today - firstDay);
+            if (bit < 0) return 0;
+            if (!days.get(bit)) bit--;
+            if (bit < 0 || !days.get(bit)) return 0;
+            return bit - days.previousClearBit(bit);
+        }
+
+        synchronized int longestStreak() { return longest; }
+
+        synchronized int activeDaysInLast(int n, long today) {
+            if (firstDay < 0 || n <= 0) return 0;
+            int to = (int) (today - firstDay);
+            int from = Math.max(0, to - n + 1);
+            int count = 0;
+            for (int i = days.nextSetBit(from); i >= 0 && i <= to; i = days.nextSetBit(i + 1)) count++;
+            return count;
+        }
+
+        synchronized int totalActiveDays() { return days.cardinality(); }
+    }
+
+    // [CO4] Encapsulation: everything the UI shows about a user's consistency
+    static class StreakSummary {
+        int current; int longest; int last30Days; int totalActiveDays;
+    }
+
+    // Everything a score rule may look at. Each field comes from an aggregate, so building it is O(1).
+    static class ScoreInputs {
+        StreakSummary streak = new StreakSummary();
+        WorkoutStats workouts = new WorkoutStats();
+        double todayProtein; int proteinGoal;
+    }
+
+    // [CO6] Functional Interface: a rule takes the running score and returns the new one,
+    // so rules can add points (bonuses) or scale them (multipliers)
+    interface ScoreRule {
+        int apply(ScoreInputs in, int score);
+    }
+
+    // Folds the rules over the inputs in order; constant stack space whatever the history length.
+    static class ScoreEngine {
+        private final List<ScoreRule> rules;
+
+        ScoreEngine(List<ScoreRule> rules) { this.rules = List.copyOf(rules); }
+
+        // Base of 10 pts per streak day (the old recursive score), plus volume and nutrition bonuses,
+        // with +10% for every full week of streak on top
+        static ScoreEngine standard() {
+            return new ScoreEngine(List.of(streakPoints(10), volumeBonus(600, 500), nutritionAdherence(50), streakMultiplier(7, 0.10, 1.0)));
+        }
+
+        int score(ScoreInputs in) {
+            int score = 0;
+            for (ScoreRule rule : rules) score = rule.apply(in, score);
+            return score;
+        }
+
+        static ScoreRule streakPoints(int perDay) {
+            return (in, score) -> score + in.streak.current * perDay;
+        }
+
+        // One point per secondsPerPoint of logged training, capped
+        static ScoreRule volumeBonus(int secondsPerPoint, int cap) {
+            return (in, score) -> score + (int) Math.min(cap, in.workouts.totalSeconds / secondsPerPoint);
+        }
+
+        // Up to maxPoints as today's protein approaches the goal
+        static ScoreRule nutritionAdherence(int maxPoints) {
+            return (in, score) -> {
+                if (in.proteinGoal <= 0) return score;
+                double ratio = Math.min(1.0, in.todayProtein / in.proteinGoal);
+                return score + (int) Math.round(ratio * maxPoints);
+            };
+        }
+
+        static ScoreRule streakMultiplier(int everyDays, double bonusPerStep, double maxBonus) {
+            return (in, score) -> {
+                double bonus = Math.min(maxBonus, (in.streak.current / everyDays) * bonusPerStep);
+                return (int) Math.round(score * (1.0 + bonus));
+            };
+        }
+    }
+
+    // [CO4] Encapsulation: one row of daily_rollups (day is yyyy-MM-dd)
+    static class DailyRollup {
+        String day; double protein; double carbs; double fat; double calories; int workoutSeconds; int sessions;
+    }
+
+    // One keyset page of a user's workouts, newest first, held in primitive columns
+    static class WorkoutPage {
+        final int size;
+        final long[] ids; final String[] dates; final String[] types; final int[] seconds; final String[] details;
+
+        WorkoutPage(int capacity) {
+            ids = new long[capacity]; dates = new String[capacity]; types = new String[capacity];
+            seconds = new int[capacity]; details = new String[capacity];
+            size = 0;
+        }
+
+        private WorkoutPage(WorkoutPage full, int size) {
+            ids = full.ids; dates = full.dates; types = full.types; seconds = full.seconds; details = full.details;
+            this.size = size;
+        }
+
+        WorkoutPage truncate(int rows) { return new WorkoutPage(this, rows); }
+    }
+
+    // A table model whose cells keep their typed value (for sorting) and hand out display text separately,
+    // so the text can be formatted once per cell instead of on every paint
+    interface FormattedTableModel extends TableModel {
+        String text(int row, int col);
+    }
+
+    // Paints the model's cached text; the value JTable passes in is only used for other models
+    static class FormattedCellRenderer extends DefaultTableCellRenderer {
+        FormattedCellRenderer(int alignment) { setHorizontalAlignment(alignment); }
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean selected, boolean focus, int row, int col) {
+            Object shown = table.getModel() instanceof FormattedTableModel m
+                    ? m.text(table.convertRowIndexToModel(row), table.convertColumnIndexToModel(col)) : value;
+            return super.getTableCellRendererComponent(table, shown, selected, focus, row, col);
+        }
+
+        // Right-aligned numbers, left-aligned everything else
+        static void install(JTable table) {
+            FormattedCellRenderer numbers = new FormattedCellRenderer(SwingConstants.RIGHT);
+            table.setDefaultRenderer(Integer.class, numbers);
+            table.setDefaultRenderer(Double.class, numbers);
+            table.setDefaultRenderer(String.class, new FormattedCellRenderer(SwingConstants.LEFT));
+        }
+    }
+
+    // Today's meals in parallel primitive columns instead of a Vector of String rows per meal.
+    // Numbers stay numbers, so a TableRowSorter orders them numerically; their text is formatted
+    // the first time the cell paints and kept until the row changes.
+    static class MealTableModel extends AbstractTableModel implements FormattedTableModel {
+        static final int ID = 0, FOOD = 1, PROTEIN = 2, CALORIES = 3;
+        private static final String[] COLUMNS = {"ID", "Food", "Prot(g)", "Kcal"};
+        private static final Class<?>[] TYPES = {Integer.class, String.class, Double.class, Double.class};
+
+        private int[] ids = new int[16];
+        private String[] foods = new String[16];
+        private double[] protein = new double[16], calories = new double[16];
+        private String[] proteinText = new String[16], caloriesText = new String[16];
+        private int size;
+
+        // Replaces every row with one change event
+        void replace(List<MealRow> rows) {
+            clearRows();
+            for (MealRow row : rows) append(row.id(), row.food(), row.protein(), row.calories());
+            fireTableDataChanged();
+        }
+
+        void add(int id, String food, double p, double kcal) {
+            append(id, food, p, kcal);
+            fireTableRowsInserted(size - 1, size - 1);
+        }
+
+        // False if no row has this id
+        boolean remove(int id) {
+            int row = rowOf(id);
+            if (row < 0) return false;
+            int tail = --size - row;
+            System.arraycopy(ids, row + 1, ids, row, tail);
+            System.arraycopy(foods, row + 1, foods, row, tail);
+            System.arraycopy(protein, row + 1, protein, row, tail);
+            System.arraycopy(calories, row + 1, calories, row, tail);
+            System.arraycopy(proteinText, row + 1, proteinText, row, tail);
+            System.arraycopy(caloriesText, row + 1, caloriesText, row, tail);
+            foods[size] = proteinText[size] = caloriesText[size] = null;
+            fireTableRowsDeleted(row, row);
+            return true;
+        }
+
+        int idAt(int row) { return ids[row]; }
+
+        int rowOf(int id) {
+            for (int i = 0; i < size; i++) if (ids[i] == id) return i;
+            return -1;
+        }
+
+        private void clearRows() {
+            Arrays.fill(foods, 0, size, null);
+            Arrays.fill(proteinText, 0, size, null);
+            Arrays.fill(caloriesText, 0, size, null);
+            size = 0;
+        }
+
+        private void append(int id, String food, double p, double kcal) {
+            if (size == ids.length) {
+                int cap = size * 2;
+                ids = Arrays.copyOf(ids, cap); foods = Arrays.copyOf(foods, cap);
+                protein = Arrays.copyOf(protein, cap); calories = Arrays.copyOf(calories, cap);
+                proteinText = Arrays.copyOf(proteinText, cap); caloriesText = Arrays.copyOf(caloriesText, cap);
+            }
+            ids[size] = id; foods[size] = food; protein[size] = p; calories[size] = kcal;
+            size++;
+        }
+
+        @Override public int getRowCount() { return size; }
+        @Override public int getColumnCount() { return COLUMNS.length; }
+        @Override public String getColumnName(int col) { return COLUMNS[col]; }
+        @Override public Class<?> getColumnClass(int col) { return TYPES[col]; }
+
+        @Override
+        public Object getValueAt(int row, int col) {
+            return switch (col) {
+                case ID -> ids[row];
+                case FOOD -> foods[row];
+                case PROTEIN -> protein[row];
+                default -> calories[row];
+            };
+        }
+
+        @Override
+        public String text(int row, int col) {
+            return switch (col) {
+                case ID -> Integer.toString(ids[row]);
+                case FOOD -> foods[row];
+                case PROTEIN -> proteinText[row] != null ? proteinText[row] : (proteinText[row] = String.format("%.1f", protein[row]));
+                default -> caloriesText[row] != null ? caloriesText[row] : (caloriesText[row] = String.format("%.0f", calories[row]));
+            };
+        }
+    }
+
+    // What the history table needs from the data layer
+    interface WorkoutPageSource {
+        int countWorkouts(int uid);
+        // id of the workout at this position, newest first; -1 past the end
+        long getWorkoutIdAt(int uid, int offset);
+        // up to limit workouts with id < beforeId, newest first
+        WorkoutPage getWorkoutPage(int uid, long beforeId, int limit);
+    }
+
+    // Lazy history table: only the row count is known up front. Pages are fetched in the background
+    // with keyset pagination (id < last id of the previous page) as rows scroll into view, and only
+    // the most recently used pages are kept, so any history length fits in bounded memory.
+    // Workouts logged after the count are prepended from their events; the pages stay where they are.
+    // Time is an Integer column (seconds); its "Xm Ys" text is formatted once per cell and evicted with the page.
+    static class WorkoutHistoryModel extends AbstractTableModel implements FormattedTableModel {
+        static final int PAGE_SIZE = 200;
+        static final int MAX_CACHED_PAGES = 16;
+        private static final String[] COLUMNS = {"Date", "Exercise", "Time", "Details"};
+        private static final Class<?>[] TYPES = {String.class, String.class, Integer.class, String.class};
+        private static final int TIME = 2;
+        private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        private record Rows(WorkoutPage page, String[] times) {}
+
+        private final AsyncData async;
+        private final WorkoutPageSource source;
+        private final Map<Integer, Rows> pages = new LinkedHashMap<>(32, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Rows> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+        private final Set<Integer> loading = new HashSet<>();
+        private long[] lastIdOfPage = new long[0]; // 0 = not known yet
+        // Rows above the paged ones, newest first; paged rows all have smaller ids
+        private final List<WorkoutLogged> added = new ArrayList<>();
+        private int uid = -1;
+        private int rowCount;
+        private boolean counted;
+        private int generation;
+
+        WorkoutHistoryModel(AsyncData async, WorkoutPageSource source) {
+            this.async = async;
+            this.source = source;
+        }
+
+        // Drops everything and re-counts; pages load again as they are painted
+        void reset(int userId) {
+            uid = userId;
+            int gen = ++generation;
+            pages.clear();
+            loading.clear();
+            lastIdOfPage = new long[0];
+            added.clear();
+            rowCount = 0;
+            counted = false;
+            fireTableDataChanged();
+            async.submit(() -> source.countWorkouts(userId), count -> {
+                if (gen != generation) return;
+                rowCount = count;
+                counted = true;
+                lastIdOfPage = new long[(count + PAGE_SIZE - 1) / PAGE_SIZE];
+                fireTableDataChanged();
+            });
+        }
+
+        // One new row at the top. Before the count is in, it may or may not include the workout, so recount.
+        void prepend(WorkoutLogged w) {
+            if (w.userId() != uid) return;
+            if (!counted) { reset(uid); return; }
+            added.add(0, w);
+            rowCount++;
+            fireTableRowsInserted(0, 0);
+        }
+
+        @Override public int getRowCount() { return rowCount; }
+        @Override public int getColumnCount() { return COLUMNS.length; }
+        @Override public String getColumnName(int col) { return COLUMNS[col]; }
+        @Override public Class<?> getColumnClass(int col) { return TYPES[col]; }
+
+        @Override
+        public Object getValueAt(int row, int col) {
+            if (row < added.size()) {
+                WorkoutLogged w = added.get(row);
+                return switch (col) {
+                    case 0 -> w.at().format(STAMP);
+                    case 1 -> w.type();
+                    case TIME -> w.seconds();
+                    default -> w.details();
+                };
+            }
+            row -= added.size();
+            int pageNo = row / PAGE_SIZE;
+            Rows rows = pages.get(pageNo);
+            if (rows == null) {
+                load(pageNo);
+                return col == 0 ? "Loading..." : null;
+            }
+            return cell(rows.page, row % PAGE_SIZE, col);
+        }
+
+        @Override
+        public String text(int row, int col) {
+            int r = row - added.size();
+            Rows rows = col == TIME && r >= 0 ? pages.get(r / PAGE_SIZE) : null;
+            if (rows != null && r % PAGE_SIZE < rows.page.size) {
+                int i = r % PAGE_SIZE;
+                return rows.times[i] != null ? rows.times[i] : (rows.times[i] = duration(rows.page.seconds[i]));
+            }
+            Object value = getValueAt(row, col);
+            return value instanceof Integer seconds ? duration(seconds) : value == null ? "" : value.toString();
+        }
+
+        // Typed value of one cell: String, or Integer seconds for the time column; null past the end
+        static Object cell(WorkoutPage page, int i, int col) {
+            if (i >= page.size) return null;
+            return switch (col) {
+                case 0 -> page.dates[i];
+                case 1 -> page.types[i];
+                case TIME -> page.seconds[i];
+                default -> page.details[i];
+            };
+        }
+
+        static String duration(int seconds) { return (seconds / 60) + "m " + (seconds % 60) + "s"; }
+
+        private void load(int pageNo) {
+            if (!loading.add(pageNo)) return;
+            int gen = generation, userId = uid, skip = added.size();
+            long boundary = added.isEmpty() ? Long.MAX_VALUE : added.get(skip - 1).workoutId();
+            long knownBefore = pageNo == 0 ? boundary : lastIdOfPage[pageNo - 1];
+            async.submit(() -> {
+                long before = knownBefore;
+                if (before == 0) {
+                    // Jumped past pages we never loaded: one index-only lookup finds the boundary
+                    before = source.getWorkoutIdAt(userId, skip + pageNo * PAGE_SIZE - 1);
+                    if (before < 0) return new WorkoutPage(0);
+                }
+                return source.getWorkoutPage(userId, before, PAGE_SIZE);
+            }, page -> {
+                if (gen != generation) return;
+                loading.remove(pageNo);
+                pages.put(pageNo, new Rows(page, new String[page.size]));
+                if (page.size > 0 && pageNo < lastIdOfPage.length) lastIdOfPage[pageNo] = page.ids[page.size - 1];
+                int first = added.size() + pageNo * PAGE_SIZE;
+                int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+                if (last >= first) fireTableRowsUpdated(first, last);
+            });
+        }
+    }
+
+    // One historical workout for bulk loading; at is the local wall-clock time it started
+    static class WorkoutEntry {
+        final int userId; final LocalDateTime at; final String type; final int seconds; final String details;
+        WorkoutEntry(int userId, LocalDateTime at, String type, int seconds, String details) {
+            this.userId = userId; this.at = at; this.type = type; this.seconds = seconds; this.details = details;
+        }
+    }
+
+    static class MealEntry {
+        final int userId; final LocalDate day; final String food; final double protein, carbs, fat, calories;
+        MealEntry(int userId, LocalDate day, String food, double protein, double carbs, double fat, double calories) {
+            this.userId = userId; this.day = day; this.food = food;
+            this.protein = protein; this.carbs = carbs; this.fat = fat; this.calories = calories;
+        }
+    }
+
+    // One of today's meals as the nutrition table shows it
+    record MealRow(int id, String food, double protein, double calories) {}
+
+    // One stored workout; date is the local wall-clock "yyyy-MM-dd HH:mm:ss" it was logged at
+    record WorkoutRow(long id, String date, String type, int seconds, String details) {}
+
+    // Changes the data layer announces once they are durable, so views can patch themselves
+    // instead of re-reading everything. An id of -1 or a null day means "not known": reload.
+    interface DomainEvent { int userId(); }
+    record MealLogged(int userId, int mealId, LocalDate day, String food,
+                      double protein, double carbs, double fat, double calories) implements DomainEvent {}
+    record MealDeleted(int userId, int mealId, LocalDate day,
+                       double protein, double carbs, double fat, double calories) implements DomainEvent {}
+    record WorkoutLogged(int userId, long workoutId, LocalDateTime at, String type, int seconds, String details) implements DomainEvent {}
+    record ProfileUpdated(int userId, User user) implements DomainEvent {}
+    // A write the store had accepted (and the UI confirmed) turned out not to be stored after all
+    record WriteFailed(int userId, String operation, String reason) implements DomainEvent {}
+    // A bulk load is announced once per batch and user, not per row; views just reload
+    record WorkoutsImported(int userId, int count) implements DomainEvent {
+        static List<WorkoutsImported> of(List<WorkoutEntry> batch) {
+            Map<Integer, Integer> counts = new LinkedHashMap<>();
+            for (WorkoutEntry w : batch) counts.merge(w.userId, 1, Integer::sum);
+            List<WorkoutsImported> events = new ArrayList<>();
+            counts.forEach((uid, n) -> events.add(new WorkoutsImported(uid, n)));
+            return events;
+        }
+    }
+
+    // Synchronous fan-out on the publishing thread (often a writer thread, never assume the EDT).
+    // A failing subscriber is reported and skipped; it cannot undo or block the write.
+    static class EventBus {
+        private record Subscription(Class<?> type, Consumer<Object> handler) {}
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+        // Returns the unsubscribe action
+        @SuppressWarnings("unchecked")
+        <E extends DomainEvent> Runnable subscribe(Class<E> type, Consumer<? super E> handler) {
+            Subscription s = new Subscription(type, (Consumer<Object>) handler);
+            subscriptions.add(s);
+            return () -> subscriptions.remove(s);
+        }
+
+        void publish(DomainEvent event) {
+            for (Subscription s : subscriptions) {
+                if (!s.type.isInstance(event)) continue;
+                try { s.handler.accept(event); } catch (RuntimeException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    // Bulk import of workout history from device and app exports: CSV (Strava, Garmin Connect, or any file
+    // with a header row), GPX tracks and TCX activities, each optionally gzipped. Files are read front to
+    // back through StAX or a line reader, so only the current activity is ever held in memory. Activities
+    // are mapped onto the exercise names of DataUtils.getExerciseMap(); one already stored at the same
+    // second under the same exercise is a duplicate, so a file imported twice (or after a cancel) adds
+    // nothing new. Rows go to the store as importWorkouts batches, one committing while the next is parsed.
+    static class WorkoutImporter {
+        static final int BATCH = 5000;
+        private static final long PROGRESS_NANOS = 100_000_000;
+        // CSV start times that are not ISO-8601; Strava writes the last one
+        private static final DateTimeFormatter[] CSV_TIMES = {
+                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"),
+                DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss"), DateTimeFormatter.ofPattern("MMM d, yyyy, h:mm:ss a", Locale.ENGLISH)};
+        // Sport names used by devices and apps, normalised, for the exercise each one is logged as
+        private static final Map<String, String> SPORTS = Map.ofEntries(
+                Map.entry("run", "Outdoor Run"), Map.entry("running", "Outdoor Run"), Map.entry("trail run", "Outdoor Run"),
+                Map.entry("trail running", "Outdoor Run"), Map.entry("street running", "Outdoor Run"),
+                Map.entry("treadmill", "Treadmill Run"), Map.entry("treadmill running", "Treadmill Run"), Map.entry("indoor run", "Treadmill Run"),
+                Map.entry("virtual run", "Treadmill Run"),
+                Map.entry("ride", "Cycling"), Map.entry("biking", "Cycling"), Map.entry("bike", "Cycling"), Map.entry("road biking", "Cycling"),
+                Map.entry("mountain biking", "Cycling"), Map.entry("indoor cycling", "Cycling"), Map.entry("virtual ride", "Cycling"),
+                Map.entry("virtualride", "Cycling"), Map.entry("swim", "Swimming"), Map.entry("lap swimming", "Swimming"),
+                Map.entry("open water swimming", "Swimming"), Map.entry("pool swim", "Swimming"),
+                Map.entry("row", "Rowing"), Map.entry("indoor rowing", "Rowing"), Map.entry("elliptical", "Elliptical"),
+                Map.entry("jump rope", "Jump Rope"), Map.entry("jumprope", "Jump Rope"), Map.entry("stair climbing", "Stair Climber"),
+                Map.entry("stairstepper", "Stair Climber"), Map.entry("stairs", "Stair Climber"));
+
+        // Counts so far; bytes are of the file being read (compressed bytes for a .gz)
+        record Status(String file, long bytesRead, long totalBytes, int imported, int duplicates, int skipped,
+                      Map<String, Integer> unrecognised) {}
+
+        private final TrackerStore store;
+        private final int uid;
+        private final Map<String, String> exercises = new HashMap<>(SPORTS);
+        // Activity names as they appear in the file, resolved once each ("" for none)
+        private final Map<String, String> resolved = new HashMap<>();
+        // (start second, exercise) of every stored and imported workout, packed by key()
+        private final LongSet seen = new LongSet();
+        private final Map<String, Integer> typeIds = new HashMap<>();
+        private final Map<String, Integer> unrecognised = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final StringBuilder field = new StringBuilder();
+        private volatile boolean cancelled;
+        private boolean scanned;
+        private int imported, duplicates, skipped, timeFormat;
+
+        // Per file
+        private String file;
+        private long totalBytes, lastReport;
+        private CountingStream counter;
+        private Consumer<Status> progress;
+        private List<WorkoutEntry> batch;
+        private CompletableFuture<Integer> writing;
+        private ExecutorService writer;
+
+        WorkoutImporter(TrackerStore store, int uid) {
+            this.store = store;
+            this.uid = uid;
+            for (String[] names : DataUtils.getExerciseMap().values()) {
+                for (String name : names) exercises.put(normalise(name), name);
+            }
+        }
+
+        // May be called from any thread; the current file stops at the next row and the batch being
+        // parsed is dropped. Batches already handed to the store stay.
+        void cancel() { cancelled = true; }
+
+        Status status() {
+            return new Status(file, counter == null ? 0 : counter.count, totalBytes, imported, duplicates, skipped, new TreeMap<>(unrecognised));
+        }
+
+        // Reads one file to the end and returns the running totals. progress (may be null) is called on
+        // this thread about ten times a second. Throws CancellationException after cancel().
+        Status importFile(Path path, Consumer<Status> progress) throws IOException {
+            String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            boolean gzip = name.endsWith(".gz");
+            if (gzip) name = name.substring(0, name.length() - 3);
+            String format = name.substring(name.lastIndexOf('.') + 1);
+            if (!format.equals("csv") && !format.equals("gpx") && !format.equals("tcx")) {
+                throw new IOException("Not a CSV, GPX or TCX file: " + path.getFileName());
+            }
+            if (!scanned) {
+                // What is already stored, so re-imported activities are recognised
+                store.forEachWorkout(uid, w -> {
+                    LocalDateTime at = fixedTime(w.date());
+                    if (at != null) seen.add(key(at, w.type()));
+                    return true;
+                });
+                scanned = true;
+            }
+            this.file = path.getFileName().toString();
+            this.totalBytes = Files.size(path);
+            this.progress = progress;
+            this.batch = new ArrayList<>(BATCH);
+            this.writing = null;
+            try (CountingStream counter = new CountingStream(Files.newInputStream(path));
+                 InputStream in = gzip ? new GZIPInputStream(counter, 1 << 16) : new BufferedInputStream(counter, 1 << 16);
+                 ExecutorService writer = Executors.newSingleThreadExecutor(r -> new Thread(r, "workout-import"))) {
+                this.counter = counter;
+                this.writer = writer;
+                switch (format) {
+                    case "csv" -> readCsv(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16));
+                    case "gpx" -> readGpx(xml(in));
+                    default -> readTcx(xml(in));
+                }
+                if (cancelled) throw new CancellationException();
+                flush();
+                awaitWrite();
+            } catch (XMLStreamException | NumberFormatException e) {
+                throw new IOException(file + ": " + e.getMessage(), e);
+            } finally {
+                awaitQuietly(); // a batch still in flight after an error or a cancel has landed by now
+            }
+            report(true);
+            return status();
+        }
+
+        // ---- formats ----
+
+        // The header names the columns, matched without regard to case. Recognised: a start time (Date, Start
+        // Time, Activity Date, Timestamp), an activity (Type, Activity Type, Exercise, Sport), a duration in
+        // seconds or [h:]mm:ss (Duration, Elapsed Time, Moving Time, Time) or in minutes (Minutes), and
+        // optionally Distance (km), Steps, Sets, Reps and Notes. Where a name repeats the first column wins.
+        private void readCsv(BufferedReader in) throws IOException {
+            String line = in.readLine();
+            if (line == null) return;
+            List<String> header = new ArrayList<>(), row = new ArrayList<>();
+            fields(line.replace("\uFEFF", ""), in, header);
+            int start = column(header, "date", "start", "start time", "start date", "activity date", "timestamp");
+            int type = column(header, "type", "activity type", "activity", "exercise", "sport");
+            int seconds = column(header, "duration", "seconds", "elapsed time", "moving time", "time");
+            int minutes = column(header, "minutes", "duration (mins)", "duration (min)");
+            int km = column(header, "distance", "distance (km)"), meters = column(header, "distance (m)");
+            int steps = column(header, "steps"), sets = column(header, "sets"), reps = column(header, "reps");
+            int notes = column(header, "notes", "details", "description");
+            if (start < 0 || type < 0 || (seconds < 0 && minutes < 0)) {
+                throw new IOException(file + ": the header needs a date, an activity type and a duration column");
+            }
+            while (!cancelled && (line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                fields(line, in, row);
+                try {
+                    int secs = seconds >= 0 && !cell(row, seconds).isEmpty() ? duration(cell(row, seconds))
+                            : (int) Math.round(number(cell(row, minutes)) * 60);
+                    double dist = km >= 0 && !cell(row, km).isEmpty() ? number(cell(row, km))
+                            : meters >= 0 && !cell(row, meters).isEmpty() ? number(cell(row, meters)) / 1000 : 0;
+                    String details = cell(row, notes);
+                    if (details.isEmpty() && !cell(row, sets).isEmpty()) details = "Sets: " + cell(row, sets) + " Reps: " + cell(row, reps);
+                    else if (details.isEmpty() && !cell(row, steps).isEmpty()) details = "Steps: " + cell(row, steps);
+                    accept(startTime(cell(row, start)), cell(row, type), secs, dist, details.isEmpty() ? null : details);
+                } catch (RuntimeException e) {
+                    skipped++; // unreadable date or number
+                }
+                report(false);
+            }
+        }
+
+        // Each <trk> is one activity: it starts at its first point's time and lasts until the last one.
+        // Distance sums the legs between points, not across the gap between segments.
+        private void readGpx(XMLStreamReader x) throws XMLStreamException {
+            String type = null, last = null;
+            LocalDateTime first = null;
+            double km = 0, lat = Double.NaN, lon = Double.NaN;
+            boolean inTrack = false;
+            while (!cancelled && x.hasNext()) {
+                int event = x.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (x.getLocalName()) {
+                        case "trk" -> { inTrack = true; type = null; first = null; last = null; km = 0; lat = lon = Double.NaN; }
+                        case "type" -> { if (inTrack) type = x.getElementText(); }
+                        case "trkseg" -> lat = lon = Double.NaN;
+                        case "trkpt" -> {
+                            double la = coordinate(x, "lat"), lo = coordinate(x, "lon");
+                            if (!Double.isNaN(lat) && !Double.isNaN(la)) km += distanceKm(lat, lon, la, lo);
+                            lat = la; lon = lo;
+                            report(false);
+                        }
+                        case "time" -> {
+                            // Only the first and last are parsed
+                            if (!inTrack) break;
+                            last = x.getElementText();
+                            if (first == null) first = isoTime(last);
+                        }
+                        default -> {}
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && x.getLocalName().equals("trk")) {
+                    inTrack = false;
+                    LocalDateTime end = first == null ? null : isoTime(last);
+                    accept(first, type, end == null ? 0 : (int) Duration.between(first, end).getSeconds(), km, null);
+                }
+            }
+        }
+
+        // Each <Activity> is one workout; its laps' totals are summed. Trackpoints carry running
+        // distances of their own, which are skipped.
+        private void readTcx(XMLStreamReader x) throws XMLStreamException {
+            String sport = null;
+            LocalDateTime start = null;
+            double seconds = 0, meters = 0;
+            boolean inTrack = false;
+            while (!cancelled && x.hasNext()) {
+                int event = x.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (x.getLocalName()) {
+                        case "Activity" -> { sport = x.getAttributeValue(null, "Sport"); start = null; seconds = meters = 0; }
+                        case "Id" -> { if (sport != null && start == null) start = isoTime(x.getElementText()); }
+                        case "Lap" -> { if (start == null && x.getAttributeValue(null, "StartTime") != null) start = isoTime(x.getAttributeValue(null, "StartTime")); }
+                        case "Track" -> inTrack = true;
+                        case "Trackpoint" -> report(false);
+                        case "TotalTimeSeconds" -> seconds += Double.parseDouble(x.getElementText().trim());
+                        case "DistanceMeters" -> { if (!inTrack) meters += Double.parseDouble(x.getElementText().trim()); }
+                        default -> {}
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    switch (x.getLocalName()) {
+                        case "Track" -> inTrack = false;
+                        case "Activity" -> { accept(start, sport, (int) Math.round(seconds), meters / 1000, null); sport = null; }
+                        default -> {}
+                    }
+                }
+            }
+        }
+
+        // ---- rows ----
+
+        private void accept(LocalDateTime at, String activity, int seconds, double km, String details) {
+            String type = exercise(activity, seconds, km);
+            if (at == null || type == null || seconds < 0) {
+                skipped++;
+                return;
+            }
+            at = at.truncatedTo(ChronoUnit.SECONDS);
+            if (!seen.add(key(at, type))) {
+                duplicates++;
+                return;
+            }
+            if (details == null) details = km > 0 ? String.format(Locale.ROOT, "Distance: %.2f km", km) : "";
+            batch.add(new WorkoutEntry(uid, at, type, seconds, details));
+            if (batch.size() == BATCH) flush();
+        }
+
+        // An activity with no sport (or "Other") but a recorded distance is taken by its average speed as a
+        // ride or a run. Everything else that is not an exercise the app knows is counted and left out.
+        private String exercise(String activity, int seconds, double km) {
+            String key = activity == null ? "" : resolved.computeIfAbsent(activity, a -> normalise(a));
+            String type = exercises.get(key);
+            if (type != null) return type;
+            if ((key.isEmpty() || key.equals("other")) && km > 0 && seconds > 0) {
+                return km / (seconds / 3600.0) >= 16 ? "Cycling" : "Outdoor Run";
+            }
+            unrecognised.merge(key.isEmpty() ? "(none)" : activity.trim(), 1, Integer::sum);
+            return null;
+        }
+
+        // Start second in the high bits, a small id per exercise name in the low 16
+        private long key(LocalDateTime at, String type) {
+            int id = typeIds.computeIfAbsent(type == null ? "" : type, t -> typeIds.size() + 1);
+            return at.toEpochSecond(ZoneOffset.UTC) << 16 | (id & 0xFFFF);
+        }
+
+        // Hands the parsed batch to the writer once the previous one is in
+        private void flush() {
+            if (batch.isEmpty()) return;
+            List<WorkoutEntry> rows = batch;
+            batch = new ArrayList<>(BATCH);
+            awaitWrite();
+            writing = CompletableFuture.supplyAsync(() -> {
+                int written = store.importWorkouts(rows);
+                if (written < rows.size()) throw new IllegalStateException("The store kept " + written + " of a batch of " + rows.size() + " workouts");
+                return written;
+            }, writer);
+        }
+
+        private void awaitWrite() {
+            if (writing == null) return;
+            try {
+                imported += writing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException r ? r : e;
+            } finally {
+                writing = null;
+            }
+        }
+
+        private void awaitQuietly() {
+            try { awaitWrite(); } catch (RuntimeException ignored) {}
+        }
+
+        private void report(boolean force) {
+            if (progress == null) return;
+            long now = System.nanoTime();
+            if (!force && now - lastReport < PROGRESS_NANOS) return;
+            lastReport = now;
+            progress.accept(status());
+        }
+
+        // ---- parsing helpers ----
+
+        static String normalise(String name) {
+            return name.trim().toLowerCase(Locale.ROOT).replace('_', ' ').replace('-', ' ');
+        }
+
+        private static XMLStreamReader xml(InputStream in) throws XMLStreamException {
+            XMLInputFactory f = XMLInputFactory.newFactory();
+            f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            return f.createXMLStreamReader(in);
+        }
+
+        // Splits one CSV record into out. A quoted field may hold commas, doubled quotes and line breaks,
+        // in which case the record continues on the next line.
+        private void fields(String line, BufferedReader in, List<String> out) throws IOException {
+            out.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            for (int i = 0; ; i++) {
+                if (i == line.length()) {
+                    String next = quoted ? in.readLine() : null;
+                    if (next == null) break;
+                    field.append('\n');
+                    line = next;
+                    i = -1;
+                    continue;
+                }
+                char ch = line.charAt(i);
+                if (quoted) {
+                    if (ch != '"') field.append(ch);
+                    else if (i + 1 < line.length() && line.charAt(i + 1) == '"') { field.append('"'); i++; }
+                    else quoted = false;
+                } else if (ch == '"') quoted = true;
+                else if (ch == ',') out.add(take());
+                else field.append(ch);
+            }
+            out.add(take());
+        }
+
+        // The field so far, trimmed, leaving the builder empty
+        private String take() {
+            int from = 0, to = field.length();
+            while (from < to && field.charAt(from) <= ' ') from++;
+            while (to > from && field.charAt(to - 1) <= ' ') to--;
+            String s = field.substring(from, to);
+            field.setLength(0);
+            return s;
+        }
+
+        private static double coordinate(XMLStreamReader x, String name) {
+            String v = x.getAttributeValue(null, name);
+            return v == null ? Double.NaN : Double.parseDouble(v.trim());
+        }
+
+        private static int column(List<String> header, String... names) {
+            for (int i = 0; i < header.size(); i++) {
+                String h = header.get(i).toLowerCase(Locale.ROOT);
+                for (String name : names) if (h.equals(name)) return i;
+            }
+            return -1;
+        }
+
+        private static String cell(List<String> row, int col) {
+            return col >= 0 && col < row.size() ? row.get(col) : "";
+        }
+
+        // Exports print thousands separators ("1,234")
+        private static double number(String s) {
+            return Double.parseDouble(s.replace(",", ""));
+        }
+
+        // Plain seconds, or [h:]mm:ss with optional fractions
+        static int duration(String s) {
+            if (s.indexOf(':') < 0) return (int) Math.round(number(s));
+            String[] parts = s.split(":");
+            int total = 0;
+            for (int i = 0; i < parts.length - 1; i++) total = total * 60 + Integer.parseInt(parts[i].trim());
+            return (int) Math.round(total * 60 + Double.parseDouble(parts[parts.length - 1]));
+        }
+
+        // ISO-8601 with or without a zone, a bare date (midnight), or one of CSV_TIMES. The format that
+        // matched last is tried first, since a file sticks to one.
+        private LocalDateTime startTime(String s) {
+            LocalDateTime fixed = fixedTime(s);
+            if (fixed != null) return fixed;
+            if (s.length() == 10) return LocalDate.parse(s).atStartOfDay();
+            if (s.length() > 10 && s.charAt(10) == 'T') return isoTime(s);
+            for (int k = 0; k < CSV_TIMES.length; k++) {
+                int f = (timeFormat + k) % CSV_TIMES.length;
+                try {
+                    LocalDateTime t = LocalDateTime.parse(s, CSV_TIMES[f]);
+                    timeFormat = f;
+                    return t;
+                } catch (DateTimeParseException ignored) {}
+            }
+            throw new DateTimeParseException("Unrecognised date", s, 0);
+        }
+
+        // Fast path for the common "yyyy-MM-dd HH:mm:ss" (or with a 'T'), which is also how the stores
+        // print dates: digits are read in place instead of going through a DateTimeFormatter. Null otherwise.
+        static LocalDateTime fixedTime(String s) {
+            if (s.length() != 19 || s.charAt(4) != '-' || s.charAt(7) != '-' || (s.charAt(10) != ' ' && s.charAt(10) != 'T')
+                    || s.charAt(13) != ':' || s.charAt(16) != ':') return null;
+            int year = digits(s, 0, 4), month = digits(s, 5, 2), day = digits(s, 8, 2);
+            int hour = digits(s, 11, 2), minute = digits(s, 14, 2), second = digits(s, 17, 2);
+            if ((year | month | day | hour | minute | second) < 0) return null;
+            try {
+                return LocalDateTime.of(year, month, day, hour, minute, second);
+            } catch (DateTimeException e) {
+                return null;
+            }
+        }
+
+        private static int digits(String s, int from, int n) {
+            int v = 0;
+            for (int i = from; i < from + n; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') return -1;
+                v = v * 10 + (c - '0');
+            }
+            return v;
+        }
+
+        // Times with a zone become local wall-clock time, which is what the workouts table stores
+        static LocalDateTime isoTime(String s) {
+            try {
+                TemporalAccessor t = DateTimeFormatter.ISO_DATE_TIME.parseBest(s.trim(), OffsetDateTime::from, LocalDateTime::from);
+                return t instanceof OffsetDateTime o ? o.atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime() : (LocalDateTime) t;
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+
+        // Great-circle distance on a spherical Earth
+        static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+            double dLat = Math.toRadians(lat2 - lat1), dLon = Math.toRadians(lon2 - lon1);
+            double a = Math.pow(Math.sin(dLat / 2), 2) + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dLon / 2), 2);
+            return 2 * 6371.0088 * Math.asin(Math.sqrt(a));
+        }
+
+        // Open-addressing set of non-zero longs; a HashSet<Long> costs ~5x the memory on a long history
+        private static final class LongSet {
+            private long[] slots = new long[1 << 12];
+            private int size;
+
+            boolean add(long key) {
+                if (2 * (size + 1) > slots.length) grow();
+                int mask = slots.length - 1;
+                for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                    if (slots[i] == key) return false;
+                    if (slots[i] == 0) {
+                        slots[i] = key;
+                        size++;
+                        return true;
+                    }
+                }
+            }
+
+            private void grow() {
+                long[] old = slots;
+                slots = new long[old.length * 2];
+                size = 0;
+                for (long key : old) if (key != 0) add(key);
+            }
+
+            private static int mix(long key) {
+                long h = key * 0x9E3779B97F4A7C15L;
+                return (int) (h ^ (h >>> 32));
+            }
+        }
+
+        private static final class CountingStream extends FilterInputStream {
+            long count;
+
+            CountingStream(InputStream in) { super(in); }
+
+            @Override public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) count++;
+                return b;
+            }
+
+            @Override public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) count += n;
+                return n;
+            }
+        }
+
+        // Headless (java FitnessTrackerApp --import <username> <file>...): imports into the configured store
+        // as that user; the password is read from the console, or from standard input when there is none
+        static void run(String[] args) throws IOException {
+            if (args.length < 3) {
+                System.err.println("usage: FitnessTrackerApp --import <username> <file>...");
+                System.exit(2);
+            }
+            char[] typed = System.console() != null ? System.console().readPassword("Password for %s: ", args[1]) : null;
+            String password = typed != null ? new String(typed)
+                    : System.console() == null ? new BufferedReader(new InputStreamReader(System.in)).readLine() : null;
+            if (password == null) { // end of input (Ctrl-D, or an empty pipe) before a password
+                System.err.println("No password given\nusage: FitnessTrackerApp --import <username> <file>...");
+                System.exit(2);
+            }
+            TrackerStore store = openStore();
+            store.initTables();
+            int exit = 0;
+            try {
+                User user = store.login(args[1], password);
+                if (user == null) throw new IOException("Wrong username or password");
+                WorkoutImporter importer = new WorkoutImporter(store, user.id);
+                long started = System.nanoTime();
+                Status s = importer.status();
+                for (int i = 2; i < args.length; i++) {
+                    s = importer.importFile(Path.of(args[i]), p -> System.err.printf("\r%s: %d%%, %d imported", p.file(),
+                            p.totalBytes() == 0 ? 100 : p.bytesRead() * 100 / p.totalBytes(), p.imported()));
+                    System.err.println();
+                }
+                double secs = (System.nanoTime() - started) / 1e9;
+                System.out.printf("%d imported, %d already there, %d skipped in %.1f s (%.0f rows/s)%n",
+                        s.imported(), s.duplicates(), s.skipped(), secs, (s.imported() + s.duplicates() + s.skipped()) / secs);
+                if (!s.unrecognised().isEmpty()) System.out.println("Not recognised: " + s.unrecognised());
+            } catch (IOException | RuntimeException e) {
+                System.err.println(e.getMessage());
+                exit = 1;
+            } finally {
+                store.close();
+            }
+            if (exit != 0) System.exit(exit);
+        }
+    }
+
+    // Rows of a backup, in the order a store hands them out or a restore takes them in. Dates are the
+    // stores' text forms ("yyyy-MM-dd HH:mm:ss" for workouts, "yyyy-MM-dd" for meals).
+    interface BackupSink {
+        // Called once, before any row, with the point the rows bring a copy up to
+        void begin(Backups.Mark mark) throws IOException;
+        void user(int id, String username, String password, String name, int age, double height, double weight, double goalWeight) throws IOException;
+        void workout(long id, int userId, String date, String type, int seconds, String details) throws IOException;
+        void meal(long id, int userId, String date, String food, double protein, double carbs, double fat, double calories) throws IOException;
+        // table is one of Backups.USERS, WORKOUTS, MEALS
+        void deleted(byte table, long id) throws IOException;
+    }
+
+    // Stores whose data lives in local files and can be copied out while in use
+    interface BackupSource {
+        // Identifies this copy of the data. A restored copy gets a new one, so an incremental backup is
+        // never stacked on backups of a different copy.
+        long backupSourceId() throws IOException;
+
+        // Hands sink every row changed after since (all rows when since is null), read from one consistent
+        // snapshot without holding writers up, and returns the mark to pass next time
+        Backups.Mark backup(Backups.Mark since, BackupSink sink) throws IOException;
+    }
+
+    // Online, incremental, compressed backups of a BackupSource into one directory, on a background
+    // schedule. Each file is backup-<sequence>-full.fpb or -incr.fpb:
+    //   int magic "FPBK", int version, long sequence, long base (the backup this one follows, -1 if full),
+    //   long created (epoch ms), Mark (5 longs), the CRC32 of those 72 bytes, then one gzip stream of tagged
+    //   rows closed by END and the row count. gzip's own CRC32 and length trailer covers the rows.
+    // A file is written under a .tmp name and renamed once complete, so a crash leaves no half backup.
+    // Restoring replays the newest full backup and the incrementals after it into a fresh store, which
+    // replaces the live one only if every checksum matched.
+    static class Backups {
+        static final byte USERS = 1, WORKOUTS = 2, MEALS = 3;
+        private static final int MAGIC = 0x4650424B; // "FPBK"
+        private static final int VERSION = 1;
+        private static final int HEADER_BYTES = 76;
+        private static final byte USER = 1, WORKOUT = 2, MEAL = 3, DELETED = 4, END = 5;
+        // The first scheduled backup never runs sooner than this after startup
+        private static final long STARTUP_DELAY_MS = 60_000;
+
+        // Where a copy of the data stood when a backup was read: its source id, the highest workout and
+        // meal ids, and two store-defined versions of what else changed (SQLite: the change log position;
+        // log store: deleted meals and a digest of the user records)
+        record Mark(long source, long workoutId, long mealId, long changes, long users) {}
+
+        record Info(Path path, long sequence, long base, long created, Mark mark) {
+            boolean full() { return base < 0; }
+        }
+
+        private final BackupSource store;
+        private final Path dir;
+        private final int fullEvery, keepFull;
+        private ScheduledExecutorService timer;
+
+        Backups(BackupSource store, Path dir, int fullEvery, int keepFull) {
+            this.store = store;
+            this.dir = dir;
+            this.fullEvery = Math.max(1, fullEvery);
+            this.keepFull = Math.max(1, keepFull);
+        }
+
+        // Starts the schedule the system properties ask for (-Dfitpulse.backup=false turns it off);
+        // null when off or when the store has nothing on disk to back up
+        static Backups schedule(TrackerStore store) {
+            BackupSource source = store.backupSource();
+            if (source == null || !Boolean.parseBoolean(System.getProperty("fitpulse.backup", "true"))) return null;
+            Backups backups = fromProperties(source);
+            backups.start(Math.max(1, Long.getLong("fitpulse.backup.interval", 60)) * 60_000);
+            return backups;
+        }
+
+        private static Backups fromProperties(BackupSource source) {
+            return new Backups(source, Path.of(System.getProperty("fitpulse.backup.dir", "fitness_tracker_backups")),
+                    Integer.getInteger("fitpulse.backup.full", 24), Integer.getInteger("fitpulse.backup.keep", 3));
+        }
+
+        // The first run waits out what is left of the interval since the newest backup
+        void start(long intervalMs) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "backup");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+            long delay = 0;
+            try {
+                List<Info> all = list(dir);
+                if (!all.isEmpty()) delay = all.get(all.size() - 1).created() + intervalMs - System.currentTimeMillis();
+            } catch (IOException e) {
+                System.err.println("Backups in " + dir + ": " + e.getMessage());
+            }
+            timer.scheduleWithFixedDelay(this::runScheduled, Math.max(STARTUP_DELAY_MS, delay), intervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        // Lets a backup in progress finish (it is one file; an interrupted one is simply not renamed)
+        void stop() {
+            if (timer == null) return;
+            timer.shutdown();
+            try {
+                if (!timer.awaitTermination(10, TimeUnit.SECONDS)) timer.shutdownNow();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void runScheduled() {
+            try {
+                backup(false);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Backup failed: " + e);
+            }
+        }
+
+        // Takes one backup: incremental on top of the newest when that one is of this copy of the data and
+        // the chain is shorter than fullEvery, full otherwise. Returns null if nothing changed since.
+        synchronized Info backup(boolean full) throws IOException {
+            Files.createDirectories(dir);
+            List<Info> all = list(dir);
+            Info last = all.isEmpty() ? null : all.get(all.size() - 1);
+            int chain = 0;
+            for (int i = all.size() - 1; i >= 0 && !all.get(i).full(); i--) chain++;
+            boolean incremental = !full && last != null && last.mark().source() == store.backupSourceId() && chain + 1 < fullEvery;
+            long sequence = last == null ? 1 : last.sequence() + 1;
+            Path tmp = dir.resolve(name(sequence, !incremental) + ".tmp");
+            Files.deleteIfExists(tmp); // left by a crash
+            Writer out = new Writer(tmp, sequence, incremental ? last.sequence() : -1);
+            Mark mark;
+            try (out) {
+                mark = store.backup(incremental ? last.mark() : null, out);
+                out.finish();
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            if (incremental && mark.equals(last.mark())) {
+                Files.delete(tmp);
+                return null;
+            }
+            Path path = Files.move(tmp, dir.resolve(name(sequence, !incremental)), StandardCopyOption.ATOMIC_MOVE);
+            Info info = new Info(path, sequence, incremental ? last.sequence() : -1, out.created, mark);
+            prune();
+            return info;
+        }
+
+        // Keeps the newest keepFull full backups and everything after the oldest of them
+        private void prune() throws IOException {
+            List<Info> all = list(dir);
+            int fulls = 0;
+            for (int i = all.size() - 1; i >= 0; i--) {
+                if (fulls >= keepFull) Files.deleteIfExists(all.get(i).path());
+                else if (all.get(i).full()) fulls++;
+            }
+        }
+
+        private static String name(long sequence, boolean full) {
+            return String.format("backup-%08d-%s.fpb", sequence, full ? "full" : "incr");
+        }
+
+        // Every complete backup in dir, oldest first; files whose header cannot be read are skipped
+        static List<Info> list(Path dir) throws IOException {
+            List<Info> all = new ArrayList<>();
+            if (!Files.isDirectory(dir)) return all;
+            try (var files = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator) {
+                    if (!p.getFileName().toString().matches("backup-\\d+-(full|incr)\\.fpb")) continue;
+                    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p), HEADER_BYTES))) {
+                        all.add(readHeader(p, in));
+                    } catch (IOException e) {
+                        System.err.println("Skipping " + p + ": " + e.getMessage());
+                    }
+                }
+            }
+            all.sort(Comparator.comparingLong(Info::sequence));
+            return all;
+        }
+
+        // The newest full backup at or before upTo and the unbroken run of incrementals that follow it
+        static List<Info> chain(Path dir, long upTo) throws IOException {
+            List<Info> all = list(dir), chain = new ArrayList<>();
+            for (Info b : all) {
+                if (b.sequence() > upTo) break;
+                if (b.full()) chain.clear();
+                else if (chain.isEmpty() || chain.get(chain.size() - 1).sequence() != b.base()) continue; // orphan
+                chain.add(b);
+            }
+            if (chain.isEmpty()) throw new IOException("No full backup in " + dir + (upTo < Long.MAX_VALUE ? " up to " + upTo : ""));
+            return chain;
+        }
+
+        private static Info readHeader(Path path, DataInputStream in) throws IOException {
+            byte[] h = new byte[HEADER_BYTES];
+            in.readFully(h);
+            ByteBuffer b = ByteBuffer.wrap(h);
+            if (b.getInt() != MAGIC) throw new IOException("not a backup file");
+            if (b.getInt() != VERSION) throw new IOException("unsupported backup version");
+            CRC32 crc = new CRC32();
+            crc.update(h, 0, HEADER_BYTES - 4);
+            if (b.getInt(HEADER_BYTES - 4) != (int) crc.getValue()) throw new IOException("header checksum mismatch");
+            long sequence = b.getLong(), base = b.getLong(), created = b.getLong();
+            return new Info(path, sequence, base, created, new Mark(b.getLong(), b.getLong(), b.getLong(), b.getLong(), b.getLong()));
+        }
+
+        // Feeds every row of one backup to sink. The body's checksum is only checked at the end, so a restore
+        // must write into something it can throw away.
+        static void replay(Path file, BackupSink sink) throws IOException {
+            try (InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+                Info info = readHeader(file, new DataInputStream(raw));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(raw, 1 << 16), 1 << 16));
+                sink.begin(info.mark());
+                long rows = 0;
+                while (true) {
+                    byte tag = in.readByte();
+                    switch (tag) {
+                        case USER -> sink.user(in.readInt(), readString(in), readString(in), readString(in), in.readInt(),
+                                in.readDouble(), in.readDouble(), in.readDouble());
+                        case WORKOUT -> sink.workout(in.readLong(), in.readInt(), readString(in), readString(in), in.readInt(), readString(in));
+                        case MEAL -> sink.meal(in.readLong(), in.readInt(), readString(in), readString(in),
+                                in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                        case DELETED -> sink.deleted(in.readByte(), in.readLong());
+                        case END -> {
+                            long expect = in.readLong();
+                            if (expect != rows) throw new IOException(file.getFileName() + ": " + rows + " rows, the trailer says " + expect);
+                            // Reading to the end makes GZIPInputStream check its CRC32 and length trailer
+                            if (in.read() != -1) throw new IOException(file.getFileName() + ": data after the last row");
+                            return;
+                        }
+                        default -> throw new IOException(file.getFileName() + ": corrupt (unknown row tag " + tag + ")");
+                    }
+                    rows++;
+                }
+            } catch (EOFException e) {
+                throw new IOException(file.getFileName() + ": truncated", e);
+            } catch (ZipException e) {
+                throw new IOException(file.getFileName() + ": corrupt (" + e.getMessage() + ")", e);
+            }
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int len = in.readInt();
+            if (len < 0) return null;
+            byte[] b = new byte[len];
+            in.readFully(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        // Headless: --backup [full] takes one backup of the configured store now; --restore [sequence]
+        // rebuilds it from the newest chain (or the one ending at sequence) and must run with the app closed
+        static void run(String[] args) throws IOException {
+            boolean restore = args[0].equals("--restore");
+            TrackerStore store = openBackend(); // only opened (initTables) to take a backup
+            int exit = 0;
+            try {
+                if (restore) {
+                    List<Info> chain = chain(fromProperties(null).dir, args.length > 1 ? Long.parseLong(args[1]) : Long.MAX_VALUE);
+                    long started = System.nanoTime();
+                    if (store instanceof DatabaseHelper) DatabaseHelper.restore(Path.of(DatabaseHelper.DB_FILE), chain);
+                    else if (store instanceof LogStore) LogStore.restore(Path.of(System.getProperty("fitpulse.data", "fitness_tracker_log")), chain);
+                    else throw new IOException("Only the SQLite and log stores can be restored");
+                    System.out.printf("Restored backup %d (%d file%s) in %d ms%n", chain.get(chain.size() - 1).sequence(), chain.size(),
+                            chain.size() == 1 ? "" : "s", (System.nanoTime() - started) / 1_000_000);
+                } else {
+                    store.initTables();
+                    BackupSource source = store.backupSource();
+                    if (source == null) throw new IOException("This store keeps nothing on disk to back up");
+                    long started = System.nanoTime();
+                    Info info = fromProperties(source).backup(args.length > 1 && args[1].equals("full"));
+                    if (info == null) System.out.println("Nothing changed since the last backup");
+                    else System.out.printf("Wrote %s (%s, %,d KB in %d ms)%n", info.path(), info.full() ? "full" : "incremental",
+                            Files.size(info.path()) >> 10, (System.nanoTime() - started) / 1_000_000);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println(e.getMessage());
+                exit = 1;
+            } finally {
+                store.close();
+            }
+            if (exit != 0) System.exit(exit);
+        }
+
+        // One backup file being written; the header goes out when the store reports its mark
+        static class Writer implements BackupSink, Closeable {
+            final long created = System.currentTimeMillis();
+            private final Path path;
+            private final long sequence, base;
+            private OutputStream file;
+            private DataOutputStream out;
+            long rows;
+
+            Writer(Path path, long sequence, long base) {
+                this.path = path;
+                this.sequence = sequence;
+                this.base = base;
+            }
+
+            @Override
+            public void begin(Mark mark) throws IOException {
+                ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(sequence).putLong(base).putLong(created)
+                        .putLong(mark.source()).putLong(mark.workoutId()).putLong(mark.mealId()).putLong(mark.changes()).putLong(mark.users());
+                CRC32 crc = new CRC32();
+                crc.update(h.array(), 0, HEADER_BYTES - 4);
+                h.putInt((int) crc.getValue());
+                file = new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), 1 << 16);
+                file.write(h.array());
+                out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(file, 1 << 16) {{ def.setLevel(Deflater.BEST_SPEED); }}, 1 << 16));
+            }
+
+            @Override
+            public void user(int id, String username, String password, String name, int age, double height, double weight, double goalWeight) throws IOException {
+                out.writeByte(USER); out.writeInt(id); writeString(username); writeString(password); writeString(name);
+                out.writeInt(age); out.writeDouble(height); out.writeDouble(weight); out.writeDouble(goalWeight);
+                rows++;
+            }
+
+            @Override
+            public void workout(long id, int userId, String date, String type, int seconds, String details) throws IOException {
+                out.writeByte(WORKOUT); out.writeLong(id); out.writeInt(userId); writeString(date); writeString(type);
+                out.writeInt(seconds); writeString(details);
+                rows++;
+            }
+
+            @Override
+            public void meal(long id, int userId, String date, String food, double protein, double carbs, double fat, double calories) throws IOException {
+                out.writeByte(MEAL); out.writeLong(id); out.writeInt(userId); writeString(date); writeString(food);
+                out.writeDouble(protein); out.writeDouble(carbs); out.writeDouble(fat); out.writeDouble(calories);
+                rows++;
+            }
+
+            @Override
+            public void deleted(byte table, long id) throws IOException {
+                out.writeByte(DELETED); out.writeByte(table); out.writeLong(id);
+                rows++;
+            }
+
+            private void writeString(String s) throws IOException {
+                if (s == null) { out.writeInt(-1); return; }
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+
+            // Writes the trailer and forces the file to disk
+            void finish() throws IOException {
+                if (out == null) throw new IOException("The store did not start the backup");
+                out.writeByte(END);
+                out.writeLong(rows);
+                out.close();
+                out = null;
+                try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    ch.force(true);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (out != null) out.close();
+                else if (file != null) file.close();
+            }
+        }
+    }
+
+    // [CO4] Abstraction: everything the panels need from storage. DatabaseHelper keeps it in
+    // SQLite, LogStore in plain segment files; openStore() picks one at startup.
+    interface TrackerStore extends WorkoutPageSource {
+        // Aggregate key for the totals over every exercise type
+        String ALL_TYPES = "*";
+        int HISTORY_ROWS = 50;
+        int SCAN_PAGE = 500;
+
+        void initTables();
+        void close();
+        // Published after each write lands; decorators hand out the backend's bus
+        EventBus events();
+        // The files behind this store, for Backups; null when there are none (memory, remote)
+        default BackupSource backupSource() { return null; }
+        // A write-behind store tells the observer how each logWorkout/logMeal/deleteMeal ended and
+        // returns true; for the others a write is over (stored or failed) when the call returns
+        default boolean observeWrites(WriteObserver observer) { return false; }
+
+        boolean register(String u, String p, String n, int a, double h, double w, double gw);
+        User login(String u, String p);
+        void updateUser(User u);
+
+        void logWorkout(int uid, String t, int s, String d);
+        void logWorkout(int uid, String t, int s);
+        void logMeal(int uid, String f, double p, double carbs, double fat, double cals);
+        void logMeal(int uid, String f, double p, double cals);
+        // Only deletes the meal if uid owns it
+        void deleteMeal(int uid, int mealId);
+        // Bulk loading: each call is one batch (one transaction / fsync), aggregates included.
+        // Returns how many rows were stored; fewer than the batch size means the rest failed
+        int importWorkouts(List<WorkoutEntry> batch);
+        int importMeals(List<MealEntry> batch);
+
+        // Inclusive range, oldest first; days without any activity have no row
+        List<DailyRollup> getDailyRollups(int uid, LocalDate from, LocalDate to);
+        int getScore(int uid);
+        StreakSummary getStreakSummary(int uid);
+        List<MealRow> getTodayMeals(int uid);
+        WorkoutStats getWorkoutStats(int uid, String exerciseType);
+        Map<String, WorkoutStats> getWorkoutStatsByType(int uid);
+        void rebuildWorkoutStats(int uid);
+        int[] getWorkoutDurations(int uid);
+
+        // Hands the user's workouts to sink one at a time, newest first, until it returns false, so a
+        // history of any length is scanned in constant memory. This walks keyset pages; SQLite streams one cursor.
+        default void forEachWorkout(int uid, Predicate<? super WorkoutRow> sink) {
+            long before = Long.MAX_VALUE;
+            while (true) {
+                WorkoutPage page = getWorkoutPage(uid, before, SCAN_PAGE);
+                for (int i = 0; i < page.size; i++) {
+                    if (!sink.test(new WorkoutRow(page.ids[i], page.dates[i], page.types[i], page.seconds[i], page.details[i]))) return;
+                }
+                if (page.size < SCAN_PAGE) return;
+                before = page.ids[page.size - 1];
+            }
+        }
+
+        // The most recent workouts, newest first; the scan stops after the last one needed
+        default List<WorkoutRow> getWorkoutHistory(int uid) {
+            List<WorkoutRow> rows = new ArrayList<>();
+            forEachWorkout(uid, w -> rows.add(w) && rows.size() < HISTORY_ROWS);
+            return rows;
+        }
+
+        // Today's row, or an all-zero row if nothing was logged yet
+        default DailyRollup getTodayRollup(int uid) {
+            LocalDate today = LocalDate.now();
+            List<DailyRollup> rows = getDailyRollups(uid, today, today);
+            if (!rows.isEmpty()) return rows.get(0);
+            DailyRollup empty = new DailyRollup();
+            empty.day = today.toString();
+            return empty;
+        }
+
+        default double getTodayProtein(int uid) { return getTodayRollup(uid).protein; }
+
+        // Current consecutive-day streak (today or ending yesterday)
+        default int getStreakDays(int uid) { return getStreakSummary(uid).current; }
+
+        default WorkoutStats getWorkoutStats(int uid) { return getWorkoutStats(uid, ALL_TYPES); }
+    }
+
+    // SQLite backend. Static and free of Swing, so tests and benchmarks can point it at any file.
+    static class DatabaseHelper implements TrackerStore, BackupSource {
+        static final String DB_FILE = "fitness_tracker.db";
+        private static final String DB_URL = "jdbc:sqlite:" + DB_FILE;
+        private static final int POOL_SIZE = 4;
+        // Rows the driver pulls per round trip when a cursor is streamed
+        private static final int FETCH_SIZE = 256;
+        private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        // Group commit: flush once this many writes are queued or the oldest is this old
+        private static final int WRITE_BATCH = 64;
+        private static final long WRITE_DELAY_MS = 50;
+
+        private static final String SQL_REGISTER = "INSERT INTO users(username, password, name, age, height, weight, goal_weight) VALUES(?,?,?,?,?,?,?)";
+        private static final String SQL_LOGIN = "SELECT * FROM users WHERE username=? AND password=?";
+        private static final String SQL_UPDATE_USER = "UPDATE users SET name=?, age=?, height=?, weight=?, goal_weight=? WHERE id=?";
+        private static final String SQL_LOG_WORKOUT = "INSERT INTO workouts(user_id, date, exercise_type, duration_seconds, details) VALUES(?, ?, ?, ?, ?)";
+        private static final String SQL_LOG_MEAL = "INSERT INTO meals(user_id, date, food_name, protein, carbs, fat, calories) VALUES(?, ?, ?, ?, ?, ?, ?)";
+        private static final String SQL_MEAL_GET = "SELECT date, protein, carbs, fat, calories FROM meals WHERE id=? AND user_id=?";
+        private static final String SQL_LAST_ID = "SELECT last_insert_rowid()";
+        private static final String SQL_ROLLUP_SEED = "INSERT OR IGNORE INTO daily_rollups(user_id, day) VALUES(?, ?)";
+        private static final String SQL_ROLLUP_ADD_MEAL = "UPDATE daily_rollups SET protein=protein+?, carbs=carbs+?, fat=fat+?, calories=calories+? WHERE user_id=? AND day=?";
+        private static final String SQL_ROLLUP_ADD_WORKOUT = "UPDATE daily_rollups SET workout_seconds=workout_seconds+?, sessions=sessions+1 WHERE user_id=? AND day=?";
+        private static final String SQL_ROLLUP_ADD = "UPDATE daily_rollups SET protein=protein+?, carbs=carbs+?, fat=fat+?, calories=calories+?, workout_seconds=workout_seconds+?, sessions=sessions+? WHERE user_id=? AND day=?";
+        private static final String SQL_ROLLUP_RANGE = "SELECT day, protein, carbs, fat, calories, workout_seconds, sessions FROM daily_rollups WHERE user_id=? AND day BETWEEN ? AND ? ORDER BY day";
+        private static final String SQL_DELETE_MEAL = "DELETE FROM meals WHERE id=? AND user_id=?";
+        private static final String SQL_USER_WEIGHT = "SELECT weight FROM users WHERE id=?";
+        private static final String SQL_ACTIVE_DAYS = "SELECT DISTINCT substr(date, 1, 10) FROM workouts WHERE user_id=?";
+        private static final String SQL_CALENDAR_GET = "SELECT first_day, bitmap FROM activity_days WHERE user_id=?";
+        private static final String SQL_CALENDAR_PUT = "INSERT OR REPLACE INTO activity_days(user_id, first_day, bitmap) VALUES(?, ?, ?)";
+        private static final String SQL_TODAY_MEALS = "SELECT id, food_name, protein, calories FROM meals WHERE user_id=? AND date=?";
+        private static final String SQL_SCAN = "SELECT id, date, exercise_type, duration_seconds, details FROM workouts WHERE user_id=? ORDER BY id DESC";
+        private static final String SQL_DURATIONS = "SELECT duration_seconds FROM workouts WHERE user_id=?";
+        private static final String SQL_PAGE = "SELECT id, date, exercise_type, duration_seconds, details FROM workouts WHERE user_id=? AND id<? ORDER BY id DESC LIMIT ?";
+        private static final String SQL_ID_AT = "SELECT id FROM workouts WHERE user_id=? ORDER BY id DESC LIMIT 1 OFFSET ?";
+        private static final String SQL_STATS_SEED = "INSERT OR IGNORE INTO workout_stats(user_id, exercise_type, session_count, total_seconds, max_seconds) VALUES(?, ?, 0, 0, 0)";
+        private static final String SQL_STATS_ADD = "UPDATE workout_stats SET session_count=session_count+1, total_seconds=total_seconds+?, max_seconds=MAX(max_seconds, ?) WHERE user_id=? AND exercise_type IN (?, ?)";
+        private static final String SQL_STATS_ADD_MANY = "UPDATE workout_stats SET session_count=session_count+?, total_seconds=total_seconds+?, max_seconds=MAX(max_seconds, ?) WHERE user_id=? AND exercise_type=?";
+        private static final String SQL_STATS_GET = "SELECT session_count, total_seconds, max_seconds FROM workout_stats WHERE user_id=? AND exercise_type=?";
+        private static final String SQL_STATS_ALL = "SELECT exercise_type, session_count, total_seconds, max_seconds FROM workout_stats WHERE user_id=? AND exercise_type<>?";
+        private static final String SQL_STATS_CLEAR = "DELETE FROM workout_stats WHERE user_id=?";
+        private static final String SQL_STATS_REBUILD_TYPES = "INSERT INTO workout_stats SELECT user_id, COALESCE(exercise_type, ''), COUNT(*), SUM(duration_seconds), MAX(duration_seconds) FROM workouts WHERE user_id=? GROUP BY COALESCE(exercise_type, '')";
+        private static final String SQL_STATS_REBUILD_ALL = "INSERT INTO workout_stats SELECT user_id, '*', COUNT(*), SUM(duration_seconds), MAX(duration_seconds) FROM workouts WHERE user_id=? GROUP BY user_id";
+        private static final String SQL_BACKUP_SOURCE = "SELECT value FROM backup_meta WHERE name='source'";
+        private static final String SQL_BACKUP_MARK = "SELECT (SELECT COALESCE(MAX(id), 0) FROM workouts), (SELECT COALESCE(MAX(id), 0) FROM meals), (SELECT COALESCE(MAX(seq), 0) FROM change_log)";
+        private static final String SQL_BACKUP_PRUNE = "DELETE FROM change_log WHERE seq<=?";
+        private static final String SQL_BACKUP_CHANGES = "SELECT DISTINCT tbl, row_id FROM change_log WHERE seq>? AND seq<=?";
+        private static final String SQL_BACKUP_USERS = "SELECT id, username, password, name, age, height, weight, goal_weight FROM users";
+        private static final String SQL_BACKUP_USER = SQL_BACKUP_USERS + " WHERE id=?";
+        private static final String SQL_BACKUP_WORKOUTS = "SELECT id, user_id, date, exercise_type, duration_seconds, details FROM workouts WHERE id>? AND id<=? ORDER BY id";
+        private static final String SQL_BACKUP_WORKOUT = "SELECT id, user_id, date, exercise_type, duration_seconds, details FROM workouts WHERE id=?";
+        private static final String SQL_BACKUP_MEALS = "SELECT id, user_id, date, food_name, protein, carbs, fat, calories FROM meals WHERE id>? AND id<=? ORDER BY id";
+        private static final String SQL_BACKUP_MEAL = "SELECT id, user_id, date, food_name, protein, carbs, fat, calories FROM meals WHERE id=?";
+        private static final String SQL_RESTORE_USER = "INSERT OR REPLACE INTO users(id, username, password, name, age, height, weight, goal_weight) VALUES(?,?,?,?,?,?,?,?)";
+        private static final String SQL_RESTORE_WORKOUT = "INSERT OR REPLACE INTO workouts(id, user_id, date, exercise_type, duration_seconds, details) VALUES(?,?,?,?,?,?)";
+        private static final String SQL_RESTORE_MEAL = "INSERT OR REPLACE INTO meals(id, user_id, date, food_name, protein, carbs, fat, calories) VALUES(?,?,?,?,?,?,?,?)";
+        // The aggregate tables are rebuilt from the restored rows rather than backed up (activity_days fills in lazily)
+        private static final String[] SQL_RESTORE_DERIVED = {
+                "DELETE FROM workout_stats",
+                "INSERT INTO workout_stats SELECT user_id, COALESCE(exercise_type, ''), COUNT(*), SUM(duration_seconds), MAX(duration_seconds) FROM workouts GROUP BY user_id, COALESCE(exercise_type, '')",
+                "INSERT INTO workout_stats SELECT user_id, '*', COUNT(*), SUM(duration_seconds), MAX(duration_seconds) FROM workouts GROUP BY user_id",
+                "DELETE FROM activity_days",
+                "DELETE FROM daily_rollups",
+                "INSERT INTO daily_rollups(user_id, day, protein, carbs, fat, calories) SELECT user_id, date, SUM(protein), SUM(carbs), SUM(fat), SUM(calories) FROM meals GROUP BY user_id, date",
+                "INSERT OR IGNORE INTO daily_rollups(user_id, day) SELECT DISTINCT user_id, substr(date, 1, 10) FROM workouts",
+                "UPDATE daily_rollups SET "
+                        + "workout_seconds = (SELECT COALESCE(SUM(duration_seconds), 0) FROM workouts w WHERE w.user_id = daily_rollups.user_id AND w.date >= daily_rollups.day AND w.date < daily_rollups.day || '~'), "
+                        + "sessions = (SELECT COUNT(*) FROM workouts w WHERE w.user_id = daily_rollups.user_id AND w.date >= daily_rollups.day AND w.date < daily_rollups.day || '~')",
+                "DELETE FROM change_log"
+        };
+        // Restore executes its batches every this many rows
+        private static final int RESTORE_BATCH = 10_000;
+
+        // [CO6] Robustness: one pool for the whole app instead of a new JDBC connection per call
+        private final ConnectionPool pool;
+        // logWorkout/logMeal/deleteMeal go through here; every read awaits the user's queued writes
+        private final WriteBehindQueue writes;
+        private final Map<Integer, ActivityCalendar> calendars = new ConcurrentHashMap<>();
+        private final ScoreEngine scoreEngine = ScoreEngine.standard();
+        // uid -> {epoch day, score}; dropped by every write that feeds a rule
+        private final Map<Integer, long[]> scores = new ConcurrentHashMap<>();
+        private final EventBus events = new EventBus();
+
+        DatabaseHelper() { this(DB_URL); }
+
+        DatabaseHelper(String url) {
+            pool = new ConnectionPool(url, POOL_SIZE);
+            writes = new WriteBehindQueue(pool, WRITE_BATCH, WRITE_DELAY_MS);
+            writes.observe((op, uid, nanos, failure) -> {
+                if (failure != null) events.publish(new WriteFailed(uid, op, String.valueOf(failure.getMessage())));
+            });
+        }
+
+        public void initTables() {
+            try (PooledConnection c = pool.acquire()) {
+                SchemaMigrator.migrate(c.connection);
+            } catch (SQLException e) { StoreFailures.report(e); }
+        }
+
+        // Blocks until uid's queued writes are committed; for callers timing a whole write, not just its enqueue
+        void awaitWrites(int uid) { writes.awaitCommitted(uid); }
+
+        // Drain queued writes before the connections go away
+        public void close() {
+            writes.close();
+            pool.close();
+        }
+
+        // Commits everything work does on one connection, or nothing if it throws
+        private <T> T inTransaction(SqlWork<T> work) throws SQLException {
+            try (PooledConnection c = pool.acquire()) {
+                c.connection.setAutoCommit(false);
+                try {
+                    T result = work.run(c);
+                    c.connection.commit();
+                    return result;
+                } catch (SQLException | RuntimeException e) {
+                    c.connection.rollback();
+                    throw e;
+                } finally {
+                    c.connection.setAutoCommit(true);
+                }
+            }
+        }
+
+        public boolean register(String u, String p, String n, int a, double h, double w, double gw) {
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_REGISTER);
+                ps.setString(1, u); ps.setString(2, p); ps.setString(3, n); ps.setInt(4, a); ps.setDouble(5, h); ps.setDouble(6, w); ps.setDouble(7, gw);
+                ps.executeUpdate(); return true;
+            } catch (SQLException e) { return false; }
+        }
+
+        public User login(String u, String p) {
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_LOGIN);
+                ps.setString(1, u); ps.setString(2, p);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        User user = new User(); user.id = rs.getInt("id"); user.username = rs.getString("username"); user.name = rs.getString("name");
+                        user.age = rs.getInt("age"); user.height = rs.getDouble("height"); user.weight = rs.getDouble("weight"); user.goalWeight = rs.getDouble("goal_weight");
+                        return user;
+                    }
+                }
+            } catch (SQLException e) { StoreFailures.report(e); } return null;
+        }
+
+        public void updateUser(User u) {
+            boolean saved = false;
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_UPDATE_USER);
+                ps.setString(1, u.name); ps.setInt(2, u.age); ps.setDouble(3, u.height); ps.setDouble(4, u.weight); ps.setDouble(5, u.goalWeight); ps.setInt(6, u.id); ps.executeUpdate();
+                saved = true;
+            } catch (SQLException e) { StoreFailures.report(e); }
+            scores.remove(u.id);
+            if (saved) events.publish(new ProfileUpdated(u.id, u.copy()));
+        }
+
+        public EventBus events() { return events; }
+
+        private static long lastInsertId(PooledConnection c) throws SQLException {
+            try (ResultSet rs = c.prepare(SQL_LAST_ID).executeQuery()) { return rs.next() ? rs.getLong(1) : -1; }
+        }
+
+        // [CO5] Method Overloading 1: Full Parameters
+        public void logWorkout(int uid, String t, int s, String d) {
+            String dateNow = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+            String type = t == null ? "" : t;
+            long[] id = {-1};
+            writes.submit(uid, "logWorkout", c -> {
+                PreparedStatement ps = c.prepare(SQL_LOG_WORKOUT);
+                ps.setInt(1, uid);
+                ps.setString(2, dateNow);
+                ps.setString(3, t);
+                ps.setInt(4, s);
+                ps.setString(5, d);
+                ps.executeUpdate();
+                id[0] = lastInsertId(c);
+
+                // Keep the aggregates in step with the insert, in the same transaction
+                PreparedStatement seed = c.prepare(SQL_STATS_SEED);
+                seed.setInt(1, uid); seed.setString(2, type); seed.executeUpdate();
+                seed.setInt(1, uid); seed.setString(2, ALL_TYPES); seed.executeUpdate();
+                PreparedStatement add = c.prepare(SQL_STATS_ADD);
+                add.setInt(1, s); add.setInt(2, s); add.setInt(3, uid); add.setString(4, type); add.setString(5, ALL_TYPES);
+                add.executeUpdate();
+
+                String day = dateNow.substring(0, 10);
+                seedRollup(c, uid, day);
+                PreparedStatement rollup = c.prepare(SQL_ROLLUP_ADD_WORKOUT);
+                rollup.setInt(1, s); rollup.setInt(2, uid); rollup.setString(3, day);
+                rollup.executeUpdate();
+
+                ActivityCalendar cal = calendar(c, uid);
+                if (cal.markActive(LocalDate.parse(day).toEpochDay())) saveCalendar(c, uid, cal);
+                return null;
+            }, () -> {
+                scores.remove(uid);
+                events.publish(new WorkoutLogged(uid, id[0], LocalDateTime.parse(dateNow, STAMP), t, s, d));
+            }, () -> {
+                calendars.remove(uid); // may hold a day the rollback discarded; reload on next read
+                scores.remove(uid);
+            });
+        }
+
+        // [CO5] Method Overloading 2: Simplified (Auto-generates details)
+        public void logWorkout(int uid, String t, int s) {
+            logWorkout(uid, t, s, "Quick Log - No Details Provided");
+        }
+
+        // [CO5] Method Overloading: full macros (the daily rollup keeps carbs and fat too)
+        public void logMeal(int uid, String f, double p, double carbs, double fat, double cals) {
+            LocalDate today = LocalDate.now();
+            String day = today.toString();
+            long[] id = {-1};
+            writes.submit(uid, "logMeal", c -> {
+                PreparedStatement ps = c.prepare(SQL_LOG_MEAL);
+                ps.setInt(1, uid); ps.setString(2, day); ps.setString(3, f);
+                ps.setDouble(4, p); ps.setDouble(5, carbs); ps.setDouble(6, fat); ps.setDouble(7, cals);
+                ps.executeUpdate();
+                id[0] = lastInsertId(c);
+                addMealToRollup(c, uid, day, p, carbs, fat, cals);
+                return null;
+            }, () -> {
+                scores.remove(uid);
+                events.publish(new MealLogged(uid, (int) id[0], today, f, p, carbs, fat, cals));
+            }, null);
+        }
+
+        public void logMeal(int uid, String f, double p, double cals) {
+            logMeal(uid, f, p, 0, 0, cals);
+        }
+
+        // Another user's meal id matches no row, so nothing happens
+        public void deleteMeal(int uid, int mealId) {
+            MealDeleted[] deleted = {null};
+            writes.submit(uid, "deleteMeal", c -> {
+                PreparedStatement find = c.prepare(SQL_MEAL_GET);
+                find.setInt(1, mealId); find.setInt(2, uid);
+                try (ResultSet rs = find.executeQuery()) {
+                    if (!rs.next()) return null;
+                    MealDeleted m = new MealDeleted(uid, mealId, LocalDate.parse(rs.getString(1)),
+                            rs.getDouble(2), rs.getDouble(3), rs.getDouble(4), rs.getDouble(5));
+                    addMealToRollup(c, uid, rs.getString(1), -m.protein(), -m.carbs(), -m.fat(), -m.calories());
+                    PreparedStatement ps = c.prepare(SQL_DELETE_MEAL);
+                    ps.setInt(1, mealId); ps.setInt(2, uid); ps.executeUpdate();
+                    deleted[0] = m;
+                    return null;
+                }
+            }, () -> {
+                if (deleted[0] == null) return;
+                scores.remove(uid);
+                events.publish(deleted[0]);
+            }, null);
+        }
+
+        // (user, exercise type) or (user, day) while summing a bulk load
+        private record Key(int uid, String name) {}
+
+        // Raw rows go in as one JDBC batch; the aggregates are summed in memory and written once per
+        // (user, type) and (user, day), all in the same transaction
+        @Override
+        public int importWorkouts(List<WorkoutEntry> batch) {
+            Map<Key, long[]> stats = new HashMap<>();     // sessions, total seconds, max seconds
+            Map<Key, double[]> rollups = new HashMap<>(); // protein, carbs, fat, calories, seconds, sessions
+            Map<Integer, List<Long>> days = new HashMap<>();
+            boolean saved = false;
+            try {
+                inTransaction(c -> {
+                    PreparedStatement ps = c.prepare(SQL_LOG_WORKOUT);
+                    for (WorkoutEntry w : batch) {
+                        ps.setInt(1, w.userId); ps.setString(2, w.at.format(STAMP)); ps.setString(3, w.type);
+                        ps.setInt(4, w.seconds); ps.setString(5, w.details);
+                        ps.addBatch();
+                        for (String type : new String[]{w.type == null ? "" : w.type, ALL_TYPES}) {
+                            long[] st = stats.computeIfAbsent(new Key(w.userId, type), k -> new long[3]);
+                            st[0]++; st[1] += w.seconds; st[2] = Math.max(st[2], w.seconds);
+                        }
+                        double[] r = rollups.computeIfAbsent(new Key(w.userId, w.at.toLocalDate().toString()), k -> new double[6]);
+                        r[4] += w.seconds; r[5]++;
+                        days.computeIfAbsent(w.userId, k -> new ArrayList<>()).add(w.at.toLocalDate().toEpochDay());
+                    }
+                    ps.executeBatch();
+
+                    PreparedStatement seed = c.prepare(SQL_STATS_SEED), add = c.prepare(SQL_STATS_ADD_MANY);
+                    for (Map.Entry<Key, long[]> e : stats.entrySet()) {
+                        Key k = e.getKey(); long[] st = e.getValue();
+                        seed.setInt(1, k.uid()); seed.setString(2, k.name()); seed.addBatch();
+                        add.setLong(1, st[0]); add.setLong(2, st[1]); add.setLong(3, st[2]); add.setInt(4, k.uid()); add.setString(5, k.name());
+                        add.addBatch();
+                    }
+                    seed.executeBatch();
+                    add.executeBatch();
+                    addRollups(c, rollups);
+
+                    for (Map.Entry<Integer, List<Long>> e : days.entrySet()) {
+                        ActivityCalendar cal = calendar(c, e.getKey());
+                        boolean changed = false;
+                        for (long day : e.getValue()) changed |= cal.markActive(day);
+                        if (changed) saveCalendar(c, e.getKey(), cal);
+                    }
+                    return null;
+                });
+                saved = true;
+            } catch (SQLException e) {
+                days.keySet().forEach(calendars::remove); // may hold days the rollback discarded
+                StoreFailures.report(e);
+            }
+            days.keySet().forEach(scores::remove);
+            if (!saved) return 0;
+            WorkoutsImported.of(batch).forEach(events::publish);
+            return batch.size();
+        }
+
+        @Override
+        public int importMeals(List<MealEntry> batch) {
+            Map<Key, double[]> rollups = new HashMap<>();
+            Set<Integer> users = new HashSet<>();
+            int saved = 0;
+            try {
+                inTransaction(c -> {
+                    PreparedStatement ps = c.prepare(SQL_LOG_MEAL);
+                    for (MealEntry m : batch) {
+                        ps.setInt(1, m.userId); ps.setString(2, m.day.toString()); ps.setString(3, m.food);
+                        ps.setDouble(4, m.protein); ps.setDouble(5, m.carbs); ps.setDouble(6, m.fat); ps.setDouble(7, m.calories);
+                        ps.addBatch();
+                        double[] r = rollups.computeIfAbsent(new Key(m.userId, m.day.toString()), k -> new double[6]);
+                        r[0] += m.protein; r[1] += m.carbs; r[2] += m.fat; r[3] += m.calories;
+                        users.add(m.userId);
+                    }
+                    ps.executeBatch();
+                    addRollups(c, rollups);
+                    return null;
+                });
+                saved = batch.size();
+            } catch (SQLException e) { StoreFailures.report(e); }
+            users.forEach(scores::remove);
+            return saved;
+        }
+
+        private void addRollups(PooledConnection c, Map<Key, double[]> rollups) throws SQLException {
+            PreparedStatement seed = c.prepare(SQL_ROLLUP_SEED), add = c.prepare(SQL_ROLLUP_ADD);
+            for (Map.Entry<Key, double[]> e : rollups.entrySet()) {
+                Key k = e.getKey(); double[] r = e.getValue();
+                seed.setInt(1, k.uid()); seed.setString(2, k.name()); seed.addBatch();
+                for (int i = 0; i < 4; i++) add.setDouble(i + 1, r[i]);
+                add.setInt(5, (int) r[4]); add.setInt(6, (int) r[5]); add.setInt(7, k.uid()); add.setString(8, k.name());
+                add.addBatch();
+            }
+            seed.executeBatch();
+            add.executeBatch();
+        }
+
+        private void seedRollup(PooledConnection c, int uid, String day) throws SQLException {
+            PreparedStatement seed = c.prepare(SQL_ROLLUP_SEED);
+            seed.setInt(1, uid); seed.setString(2, day);
+            seed.executeUpdate();
+        }
+
+        // Negative amounts take a deleted meal back out
+        private void addMealToRollup(PooledConnection c, int uid, String day, double p, double carbs, double fat, double cals) throws SQLException {
+            seedRollup(c, uid, day);
+            PreparedStatement ps = c.prepare(SQL_ROLLUP_ADD_MEAL);
+            ps.setDouble(1, p); ps.setDouble(2, carbs); ps.setDouble(3, fat); ps.setDouble(4, cals);
+            ps.setInt(5, uid); ps.setString(6, day);
+            ps.executeUpdate();
+        }
+
+        // Inclusive range, oldest first; days without any activity have no row
+        public List<DailyRollup> getDailyRollups(int uid, LocalDate from, LocalDate to) {
+            writes.awaitCommitted(uid);
+            List<DailyRollup> list = new ArrayList<>();
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_ROLLUP_RANGE);
+                ps.setInt(1, uid); ps.setString(2, from.toString()); ps.setString(3, to.toString());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        DailyRollup r = new DailyRollup();
+                        r.day = rs.getString(1); r.protein = rs.getDouble(2); r.carbs = rs.getDouble(3); r.fat = rs.getDouble(4);
+                        r.calories = rs.getDouble(5); r.workoutSeconds = rs.getInt(6); r.sessions = rs.getInt(7);
+                        list.add(r);
+                    }
+                }
+            } catch (SQLException e) { StoreFailures.report(e); }
+            return list;
+        }
+
+        // Cached per user and day; recomputed from the aggregates only after a relevant write
+        public int getScore(int uid) {
+            writes.awaitCommitted(uid);
+            long today = LocalDate.now().toEpochDay();
+            long[] cached = scores.get(uid);
+            if (cached != null && cached[0] == today) return (int) cached[1];
+
+            ScoreInputs in = new ScoreInputs();
+            in.streak = getStreakSummary(uid);
+            in.workouts = getWorkoutStats(uid);
+            in.todayProtein = getTodayProtein(uid);
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_USER_WEIGHT);
+                ps.setInt(1, uid);
+                try (ResultSet rs = ps.executeQuery()) { if (rs.next()) in.proteinGoal = User.proteinGoalFor(rs.getDouble(1)); }
+            } catch (SQLException e) { StoreFailures.report(e); }
+            int score = scoreEngine.score(in);
+            scores.put(uid, new long[]{today, score});
+            return score;
+        }
+
+        public StreakSummary getStreakSummary(int uid) {
+            writes.awaitCommitted(uid);
+            StreakSummary summary = new StreakSummary();
+            try (PooledConnection c = pool.acquire()) {
+                ActivityCalendar cal = calendar(c, uid);
+                long today = LocalDate.now().toEpochDay();
+                summary.current = cal.currentStreak(today);
+                summary.longest = cal.longestStreak();
+                summary.last30Days = cal.activeDaysInLast(30, today);
+                summary.totalActiveDays = cal.totalActiveDays();
+            } catch (SQLException e) { StoreFailures.report(e); }
+            return summary;
+        }
+
+        // Cached bitmap, else the stored row, else rebuilt from the workouts table (first use only)
+        private ActivityCalendar calendar(PooledConnection c, int uid) throws SQLException {
+            ActivityCalendar cal = calendars.get(uid);
+            if (cal != null) return cal;
+            PreparedStatement ps = c.prepare(SQL_CALENDAR_GET);
+            ps.setInt(1, uid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) cal = ActivityCalendar.fromBytes(rs.getLong(1), rs.getBytes(2));
+            }
+            if (cal == null) {
+                cal = new ActivityCalendar();
+                PreparedStatement days = c.prepare(SQL_ACTIVE_DAYS);
+                days.setInt(1, uid);
+                try (ResultSet rs = days.executeQuery()) {
+                    while (rs.next()) {
+                        String day = rs.getString(1);
+                        if (day != null) cal.markActive(LocalDate.parse(day).toEpochDay());
+                    }
+                }
+                if (cal.getFirstDay() >= 0) saveCalendar(c, uid, cal);
+            }
+            ActivityCalendar raced = calendars.putIfAbsent(uid, cal);
+            return raced != null ? raced : cal;
+        }
+
+        private void saveCalendar(PooledConnection c, int uid, ActivityCalendar cal) throws SQLException {
+            PreparedStatement ps = c.prepare(SQL_CALENDAR_PUT);
+            ps.setInt(1, uid); ps.setLong(2, cal.getFirstDay()); ps.setBytes(3, cal.toBytes());
+            ps.executeUpdate();
+        }
+
+        // Streams a query's rows, pulling fetchSize at a time from the driver, so nothing is materialized
+        // unless the caller collects it. The pooled connection is held until the stream is closed: use
+        // try-with-resources. Short-circuiting operations (limit, anyMatch, findFirst) stop reading there.
+        // A failure is reported and ends the stream early, like the other reads return what they have.
+        <T> Stream<T> stream(String sql, int fetchSize, RowMapper<T> mapper, Object... params) {
+            PooledConnection c = null;
+            try {
+                c = pool.acquire();
+                PreparedStatement ps = c.prepare(sql);
+                for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+                ps.setFetchSize(fetchSize);
+                ResultSet rs = ps.executeQuery();
+                Spliterator<T> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                    @Override
+                    public boolean tryAdvance(Consumer<? super T> action) {
+                        try {
+                            if (!rs.next()) return false;
+                            action.accept(mapper.map(rs));
+                            return true;
+                        } catch (SQLException e) {
+                            StoreFailures.report(e);
+                            return false;
+                        }
+                    }
+                };
+                PooledConnection held = c;
+                return StreamSupport.stream(rows, false).onClose(() -> {
+                    try { rs.close(); } catch (SQLException e) { StoreFailures.report(e); }
+                    held.close();
+                });
+            } catch (SQLException e) {
+                StoreFailures.report(e);
+                if (c != null) c.close();
+                return Stream.empty();
+            }
+        }
+
+        public List<MealRow> getTodayMeals(int uid) {
+            writes.awaitCommitted(uid);
+            try (Stream<MealRow> rows = stream(SQL_TODAY_MEALS, FETCH_SIZE,
+                    rs -> new MealRow(rs.getInt(1), rs.getString(2), rs.getDouble(3), rs.getDouble(4)), uid, LocalDate.now().toString())) {
+                return rows.toList();
+            }
+        }
+
+        // One cursor over the whole history; the sink decides when to stop reading
+        @Override
+        public void forEachWorkout(int uid, Predicate<? super WorkoutRow> sink) {
+            writes.awaitCommitted(uid);
+            try (Stream<WorkoutRow> rows = stream(SQL_SCAN, FETCH_SIZE,
+                    rs -> new WorkoutRow(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getString(5)), uid)) {
+                for (Iterator<WorkoutRow> it = rows.iterator(); it.hasNext(); ) {
+                    if (!sink.test(it.next())) return;
+                }
+            }
+        }
+
+        // Single-row lookup; ALL_TYPES gives the totals over every exercise type
+        public WorkoutStats getWorkoutStats(int uid, String exerciseType) {
+            writes.awaitCommitted(uid);
+            WorkoutStats stats = new WorkoutStats();
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_STATS_GET);
+                ps.setInt(1, uid); ps.setString(2, exerciseType);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        stats.sessions = rs.getInt(1); stats.totalSeconds = rs.getLong(2); stats.maxSeconds = rs.getInt(3);
+                    }
+                }
+            } catch (SQLException e) { StoreFailures.report(e); }
+            return stats;
+        }
+
+        public Map<String, WorkoutStats> getWorkoutStatsByType(int uid) {
+            writes.awaitCommitted(uid);
+            Map<String, WorkoutStats> byType = new TreeMap<>();
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_STATS_ALL);
+                ps.setInt(1, uid); ps.setString(2, ALL_TYPES);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        WorkoutStats stats = new WorkoutStats();
+                        stats.sessions = rs.getInt(2); stats.totalSeconds = rs.getLong(3); stats.maxSeconds = rs.getInt(4);
+                        byType.put(rs.getString(1), stats);
+                    }
+                }
+            } catch (SQLException e) { StoreFailures.report(e); }
+            return byType;
+        }
+
+        // Recomputes a user's aggregates from the raw workouts table
+        public void rebuildWorkoutStats(int uid) {
+            writes.awaitCommitted(uid);
+            try {
+                inTransaction(c -> {
+                    for (String sql : new String[]{SQL_STATS_CLEAR, SQL_STATS_REBUILD_TYPES, SQL_STATS_REBUILD_ALL}) {
+                        PreparedStatement ps = c.prepare(sql);
+                        ps.setInt(1, uid); ps.executeUpdate();
+                    }
+                    return null;
+                });
+            } catch (SQLException e) { StoreFailures.report(e); }
+        }
+
+        // workout_stats already counts every session, so this is a single-row lookup
+        @Override
+        public int countWorkouts(int uid) {
+            return getWorkoutStats(uid).sessions;
+        }
+
+        @Override
+        public long getWorkoutIdAt(int uid, int offset) {
+            writes.awaitCommitted(uid);
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_ID_AT);
+                ps.setInt(1, uid); ps.setInt(2, offset);
+                try (ResultSet rs = ps.executeQuery()) { if (rs.next()) return rs.getLong(1); }
+            } catch (SQLException e) { StoreFailures.report(e); }
+            return -1;
+        }
+
+        @Override
+        public WorkoutPage getWorkoutPage(int uid, long beforeId, int limit) {
+            writes.awaitCommitted(uid);
+            WorkoutPage page = new WorkoutPage(limit);
+            int n = 0;
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_PAGE);
+                ps.setInt(1, uid); ps.setLong(2, beforeId); ps.setInt(3, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next() && n < limit) {
+                        page.ids[n] = rs.getLong(1); page.dates[n] = rs.getString(2); page.types[n] = rs.getString(3);
+                        page.seconds[n] = rs.getInt(4); page.details[n] = rs.getString(5);
+                        n++;
+                    }
+                }
+            } catch (SQLException e) { StoreFailures.report(e); }
+            return page.truncate(n);
+        }
+
+        // Read straight into an int[]: a Stream<Integer> would box every row
+        public int[] getWorkoutDurations(int uid) {
+            writes.awaitCommitted(uid);
+            int[] seconds = new int[64];
+            int n = 0;
+            try (PooledConnection c = pool.acquire()) {
+                PreparedStatement ps = c.prepare(SQL_DURATIONS);
+                ps.setInt(1, uid); ps.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (n == seconds.length) seconds = Arrays.copyOf(seconds, n * 2);
+                        seconds[n++] = rs.getInt(1);
+                    }
+                }
+            } catch (SQLException e) { StoreFailures.report(e); }
+            return Arrays.copyOf(seconds, n);
+        }
+
+        @Override
+        public BackupSource backupSource() { return this; }
+
+        @Override
+        public boolean observeWrites(WriteObserver observer) {
+            writes.observe(observer);
+            return true;
+        }
+
+        @Override
+        public long backupSourceId() throws IOException {
+            try (PooledConnection c = pool.acquire(); ResultSet rs = c.prepare(SQL_BACKUP_SOURCE).executeQuery()) {
+                if (rs.next()) return rs.getLong(1);
+                throw new IOException("The database has no backup source id (schema older than v6?)");
+            } catch (SQLException e) {
+                throw new IOException("Could not read the backup source id", e);
+            }
+        }
+
+        // One read transaction is one snapshot, and in WAL mode it holds no writer up. Writes still in the
+        // write-behind queue are not committed yet and go into the next backup. Change log entries the
+        // previous backup already covered are dropped first; nothing reads them again.
+        @Override
+        public Backups.Mark backup(Backups.Mark since, BackupSink sink) throws IOException {
+            try (PooledConnection c = pool.acquire()) {
+                if (since != null) {
+                    PreparedStatement prune = c.prepare(SQL_BACKUP_PRUNE);
+                    prune.setLong(1, since.changes()); prune.executeUpdate();
+                }
+                c.connection.setAutoCommit(false);
+                try {
+                    Backups.Mark mark;
+                    try (ResultSet rs = c.prepare(SQL_BACKUP_MARK).executeQuery()) {
+                        rs.next();
+                        mark = new Backups.Mark(backupSourceId(c), rs.getLong(1), rs.getLong(2), rs.getLong(3), 0);
+                    }
+                    sink.begin(mark);
+                    if (since == null) sendRows(c.prepare(SQL_BACKUP_USERS), Backups.USERS, sink);
+                    PreparedStatement ps = c.prepare(SQL_BACKUP_WORKOUTS);
+                    ps.setLong(1, since == null ? 0 : since.workoutId()); ps.setLong(2, mark.workoutId());
+                    sendRows(ps, Backups.WORKOUTS, sink);
+                    ps = c.prepare(SQL_BACKUP_MEALS);
+                    ps.setLong(1, since == null ? 0 : since.mealId()); ps.setLong(2, mark.mealId());
+                    sendRows(ps, Backups.MEALS, sink);
+                    if (since != null) {
+                        // Rows updated or deleted since: the current version, or a tombstone if it is gone
+                        ps = c.prepare(SQL_BACKUP_CHANGES);
+                        ps.setLong(1, since.changes()); ps.setLong(2, mark.changes());
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                String tbl = rs.getString(1);
+                                byte table = tbl.equals("users") ? Backups.USERS : tbl.equals("workouts") ? Backups.WORKOUTS : Backups.MEALS;
+                                PreparedStatement one = c.prepare(table == Backups.USERS ? SQL_BACKUP_USER
+                                        : table == Backups.WORKOUTS ? SQL_BACKUP_WORKOUT : SQL_BACKUP_MEAL);
+                                one.setLong(1, rs.getLong(2));
+                                if (sendRows(one, table, sink) == 0) sink.deleted(table, rs.getLong(2));
+                            }
+                        }
+                    }
+                    return mark;
+                } finally {
+                    c.connection.rollback(); // read only
+                    c.connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                throw new IOException("Backup read failed", e);
+            }
+        }
+
+        private static long backupSourceId(PooledConnection c) throws SQLException {
+            try (ResultSet rs = c.prepare(SQL_BACKUP_SOURCE).executeQuery()) { return rs.next() ? rs.getLong(1) : 0; }
+        }
+
+        // Streams the rows of one of the SQL_BACKUP_* selects to sink; returns how many there were
+        private static int sendRows(PreparedStatement ps, byte table, BackupSink sink) throws SQLException, IOException {
+            int n = 0;
+            ps.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    switch (table) {
+                        case Backups.USERS -> sink.user(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5),
+                                rs.getDouble(6), rs.getDouble(7), rs.getDouble(8));
+                        case Backups.WORKOUTS -> sink.workout(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getString(4), rs.getInt(5), rs.getString(6));
+                        default -> sink.meal(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getString(4),
+                                rs.getDouble(5), rs.getDouble(6), rs.getDouble(7), rs.getDouble(8));
+                    }
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        // Builds the database a backup chain describes next to db, with journaling off since a failed
+        // restore just deletes it, then swaps it in. The old files stay as db.before-restore (and its
+        // -wal/-shm). Run with the app closed.
+        static void restore(Path db, List<Backups.Info> chain) throws IOException {
+            Path building = db.resolveSibling(db.getFileName() + ".restoring");
+            Path old = db.resolveSibling(db.getFileName() + ".before-restore");
+            if (Files.exists(old)) throw new IOException(old + " is left from an earlier restore; move it away first");
+            Files.deleteIfExists(building);
+            try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + building)) {
+                SchemaMigrator.migrate(c); // also picks a new source id: this is a new copy
+                try (Statement s = c.createStatement()) {
+                    s.execute("PRAGMA journal_mode=OFF");
+                    s.execute("PRAGMA synchronous=OFF");
+                }
+                c.setAutoCommit(false);
+                try (RestoreSink sink = new RestoreSink(c)) {
+                    for (Backups.Info b : chain) {
+                        Backups.replay(b.path(), sink);
+                        sink.flush(); // deletes in the next file may name rows of this one
+                    }
+                }
+                try (Statement s = c.createStatement()) {
+                    for (String sql : SQL_RESTORE_DERIVED) s.execute(sql);
+                }
+                c.commit();
+                c.setAutoCommit(true);
+                try (Statement s = c.createStatement()) {
+                    s.execute("PRAGMA journal_mode=WAL");
+                }
+            } catch (SQLException | IOException e) {
+                Files.deleteIfExists(building);
+                throw e instanceof IOException io ? io : new IOException("Restore failed", e);
+            }
+            for (String suffix : new String[]{"", "-wal", "-shm"}) {
+                Path f = db.resolveSibling(db.getFileName() + suffix);
+                if (Files.exists(f)) Files.move(f, old.resolveSibling(old.getFileName() + suffix));
+            }
+            Files.move(building, db, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // Backup rows as JDBC batches, executed every RESTORE_BATCH rows; deletes go after the rows
+        private static class RestoreSink implements BackupSink, AutoCloseable {
+            private final PreparedStatement users, workouts, meals;
+            private final PreparedStatement[] deletes = new PreparedStatement[3];
+            private int pending;
+
+            RestoreSink(Connection c) throws SQLException {
+                users = c.prepareStatement(SQL_RESTORE_USER);
+                workouts = c.prepareStatement(SQL_RESTORE_WORKOUT);
+                meals = c.prepareStatement(SQL_RESTORE_MEAL);
+                String[] tables = {"users", "workouts", "meals"};
+                for (int i = 0; i < 3; i++) deletes[i] = c.prepareStatement("DELETE FROM " + tables[i] + " WHERE id=?");
+            }
+
+            void flush() throws SQLException {
+                users.executeBatch(); workouts.executeBatch(); meals.executeBatch();
+                for (PreparedStatement d : deletes) d.executeBatch();
+                pending = 0;
+            }
+
+            private void added() throws IOException {
+                if (++pending < RESTORE_BATCH) return;
+                try { flush(); } catch (SQLException e) { throw new IOException("Restore write failed", e); }
+            }
+
+            @Override public void begin(Backups.Mark mark) {}
+
+            @Override
+            public void user(int id, String username, String password, String name, int age, double height, double weight, double goalWeight) throws IOException {
+                try {
+                    users.setInt(1, id); users.setString(2, username); users.setString(3, password); users.setString(4, name);
+                    users.setInt(5, age); users.setDouble(6, height); users.setDouble(7, weight); users.setDouble(8, goalWeight);
+                    users.addBatch();
+                } catch (SQLException e) { throw new IOException("Restore write failed", e); }
+                added();
+            }
+
+            @Override
+            public void workout(long id, int userId, String date, String type, int seconds, String details) throws IOException {
+                try {
+                    workouts.setLong(1, id); workouts.setInt(2, userId); workouts.setString(3, date); workouts.setString(4, type);
+                    workouts.setInt(5, seconds); workouts.setString(6, details);
+                    workouts.addBatch();
+                } catch (SQLException e) { throw new IOException("Restore write failed", e); }
+                added();
+            }
+
+            @Override
+            public void meal(long id, int userId, String date, String food, double protein, double carbs, double fat, double calories) throws IOException {
+                try {
+                    meals.setLong(1, id); meals.setInt(2, userId); meals.setString(3, date); meals.setString(4, food);
+                    meals.setDouble(5, protein); meals.setDouble(6, carbs); meals.setDouble(7, fat); meals.setDouble(8, calories);
+                    meals.addBatch();
+                } catch (SQLException e) { throw new IOException("Restore write failed", e); }
+                added();
+            }
+
+            @Override
+            public void deleted(byte table, long id) throws IOException {
+                try {
+                    PreparedStatement d = deletes[table - Backups.USERS];
+                    d.setLong(1, id); d.addBatch();
+                } catch (SQLException e) { throw new IOException("Restore write failed", e); }
+                added();
+            }
+
+            @Override
+            public void close() throws SQLException {
+                users.close(); workouts.close(); meals.close();
+                for (PreparedStatement d : deletes) d.close();
+            }
+        }
+    }
+
+    // [CO6] Storage without JDBC, built only on the JDK. Records are appended to segment files in one
+    // directory with FileChannel and fsynced before the call returns (concurrent writers share one
+    // fsync). Sealed segments are memory-mapped for reads. Every query is answered from an in-memory
+    // index per user and day, rebuilt by replaying the log at startup; only names and details are read
+    // back from the log. A background thread rewrites segments that are mostly dead records
+    // (deleted meals, old profile versions).
+    static class LogStore implements TrackerStore, BackupSource {
+        private static final int MAGIC = 0x46504c47; // "FPLG"
+        // Segment header: magic, replay order, id of the segment this one replaces (-1 if none)
+        private static final int HEADER_BYTES = 16;
+        // Record: int body length, int CRC32 of the body, body (first byte is the record type)
+        private static final int FRAME_BYTES = 8;
+        private static final long SEGMENT_BYTES = 32L << 20;
+        private static final byte USER = 1, WORKOUT = 2, MEAL = 3, MEAL_DELETE = 4;
+        // Set on a deleted meal's pointer while its record still exists in some segment
+        private static final long DEAD = 1L << 62;
+        private static final long COMPACT_CHECK_MS = 30_000;
+        private static final long COMPACT_MIN_BYTES = 64 << 10;
+        // Ids a backup reads per trip through the read lock, and records a restore appends per fsync
+        private static final int BACKUP_CHUNK = 4096;
+        private static final String SOURCE_FILE = "backup-source";
+        private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        private static class Segment {
+            final int id; final long order; final Path path; final FileChannel channel;
+            long size; long garbage;
+            MappedByteBuffer map; // set once sealed; the active segment is read through the channel
+
+            Segment(int id, long order, Path path, FileChannel channel, long size) {
+                this.id = id; this.order = order; this.path = path; this.channel = channel; this.size = size;
+            }
+
+            ByteBuffer read(long offset, int length) throws IOException {
+                if (map != null) return map.slice((int) offset, length);
+                ByteBuffer buf = ByteBuffer.allocate(length);
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, offset + buf.position()) < 0) throw new IOException("Truncated record in " + path);
+                }
+                return buf.flip();
+            }
+
+            void seal() throws IOException {
+                channel.force(false);
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        private static class DayIndex {
+            final DailyRollup rollup = new DailyRollup();
+            int[] meals = new int[4]; int mealCount;
+        }
+
+        // Workouts are kept oldest first, so ids ascend and keyset pages are a binary search
+        private static class UserIndex {
+            User user; String password; long ptr; int recordBytes;
+            int[] workoutIds = new int[16]; int[] workoutSeconds = new int[16]; int workouts;
+            final Map<String, WorkoutStats> stats = new TreeMap<>();
+            final WorkoutStats all = new WorkoutStats();
+            final ActivityCalendar calendar = new ActivityCalendar();
+            final TreeMap<Long, DayIndex> days = new TreeMap<>();
+
+            DayIndex day(long epochDay) {
+                return days.computeIfAbsent(epochDay, d -> {
+                    DayIndex ix = new DayIndex();
+                    ix.rollup.day = LocalDate.ofEpochDay(d).toString();
+                    return ix;
+                });
+            }
+        }
+
+        // A record body being built; frame() puts the length and checksum in front
+        private static class RecordOut {
+            private ByteBuffer buf = ByteBuffer.allocate(128);
+
+            RecordOut(byte type) { buf.position(FRAME_BYTES); buf.put(type); }
+
+            private void room(int n) {
+                if (buf.remaining() < n) buf = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n)).put(buf.flip());
+            }
+
+            RecordOut putInt(int v) { room(4); buf.putInt(v); return this; }
+            RecordOut putLong(long v) { room(8); buf.putLong(v); return this; }
+            RecordOut putDouble(double v) { room(8); buf.putDouble(v); return this; }
+
+            RecordOut putString(String s) {
+                if (s == null) return putInt(-1);
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                putInt(b.length); room(b.length); buf.put(b);
+                return this;
+            }
+
+            ByteBuffer frame() {
+                int len = buf.position() - FRAME_BYTES;
+                CRC32 crc = new CRC32();
+                crc.update(buf.array(), FRAME_BYTES, len);
+                buf.putInt(0, len).putInt(4, (int) crc.getValue());
+                return buf.flip();
+            }
+        }
+
+        private static String getString(ByteBuffer b) {
+            int len = b.getInt();
+            if (len < 0) return null;
+            byte[] bytes = new byte[len];
+            b.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static long ptr(int segment, long offset) { return ((long) segment << 32) | offset; }
+        private static int segmentOf(long ptr) { return (int) ((ptr & ~DEAD) >>> 32); }
+        private static long offsetOf(long ptr) { return ptr & 0xffffffffL; }
+
+        private final Path dir;
+        // -Dfitpulse.log.segment shrinks segments so a check can roll and compact them with a few records
+        private final long segmentBytes = Long.getLong("fitpulse.log.segment", SEGMENT_BYTES);
+        // Guards the segments and the whole index; writers also hold it while appending
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final EventBus events = new EventBus();
+        private final Map<Integer, Segment> segments = new HashMap<>();
+        private final List<Segment> ordered = new ArrayList<>();
+        private volatile Segment active;
+        private int nextSegmentId = 1;
+        // Group commit: bytes appended so far, and how many of those are known to be on disk
+        private final Object syncLock = new Object();
+        private volatile long appended;
+        private long synced;
+        // Set by the first failed fsync. What the kernel did with the unsynced pages is unknown and a retry
+        // cannot tell, so the store stays read-only from then on rather than guess what is on disk.
+        private volatile IOException syncFailure;
+
+        private final List<UserIndex> users = new ArrayList<>(); // index = id - 1
+        private final Map<String, Integer> byUsername = new HashMap<>();
+        private long[] workoutPtr = new long[1024]; private int workoutCount;
+        private long[] mealPtr = new long[1024]; private int mealCount;
+        private final ScoreEngine scoreEngine = ScoreEngine.standard();
+        private Thread compactor;
+        private volatile boolean closed;
+
+        LogStore(Path dir) { this.dir = dir; }
+
+        // Replays the log into the index, then starts the compactor
+        @Override
+        public void initTables() {
+            lock.writeLock().lock();
+            try {
+                Files.createDirectories(dir);
+                recover();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            compactor = new Thread(this::compactLoop, "log-compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            if (compactor != null) {
+                compactor.interrupt();
+                try { compactor.join(5000); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+            lock.writeLock().lock();
+            try {
+                if (active != null) active.channel.force(false);
+                for (Segment s : ordered) s.channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                ordered.clear(); segments.clear(); active = null;
+                lock.writeLock().unlock();
+            }
+        }
+
+        // ---- startup ----
+
+        private void recover() throws IOException {
+            List<Segment> found = new ArrayList<>();
+            Set<Integer> replaced = new HashSet<>();
+            try (var files = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator) {
+                    String name = p.getFileName().toString();
+                    if (!name.startsWith("seg-")) continue;
+                    if (name.endsWith(".tmp")) { Files.deleteIfExists(p); continue; } // compaction that never finished
+                    if (!name.endsWith(".log")) continue;
+                    FileChannel ch = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+                    while (h.hasRemaining() && ch.read(h, h.position()) > 0) { }
+                    h.flip();
+                    int id = Integer.parseInt(name.substring(4, name.length() - 4));
+                    if (h.remaining() < HEADER_BYTES) { // created, but the header never reached the disk
+                        ch.close();
+                        Files.deleteIfExists(p);
+                        continue;
+                    }
+                    if (h.getInt() != MAGIC) {
+                        System.err.println("Skipping " + p + ": not a segment file");
+                        ch.close();
+                        continue;
+                    }
+                    long order = h.getLong();
+                    int replaces = h.getInt();
+                    if (replaces >= 0) replaced.add(replaces);
+                    found.add(new Segment(id, order, p, ch, ch.size()));
+                    nextSegmentId = Math.max(nextSegmentId, id + 1);
+                }
+            }
+            // A compacted copy was committed but the original was not deleted yet
+            for (Iterator<Segment> it = found.iterator(); it.hasNext(); ) {
+                Segment s = it.next();
+                if (replaced.contains(s.id)) { s.channel.close(); Files.deleteIfExists(s.path); it.remove(); }
+            }
+            found.sort(Comparator.comparingLong(s -> s.order));
+
+            for (int i = 0; i < found.size(); i++) {
+                Segment s = found.get(i);
+                boolean last = i == found.size() - 1;
+                segments.put(s.id, s);
+                ordered.add(s);
+                ByteBuffer data;
+                if (last) {
+                    // Read the tail segment into memory instead of mapping it, so it can still be truncated
+                    data = s.read(0, (int) s.size);
+                } else {
+                    s.seal();
+                    data = s.map;
+                }
+                long end = replay(s, data);
+                if (end < s.size) {
+                    System.err.println("Log " + s.path + ": dropping " + (s.size - end) + " bytes after the last valid record");
+                    if (last) s.channel.truncate(end);
+                    s.size = end;
+                    if (!last) s.seal();
+                }
+            }
+            Segment tail = ordered.isEmpty() ? null : ordered.get(ordered.size() - 1);
+            if (tail != null && tail.size < segmentBytes) {
+                active = tail;
+            } else {
+                if (tail != null) tail.seal();
+                active = createSegment(-1, -1, ".log");
+                segments.put(active.id, active);
+                ordered.add(active);
+            }
+        }
+
+        // Applies records in order and returns the offset just past the last valid one
+        private long replay(Segment s, ByteBuffer data) throws IOException {
+            CRC32 crc = new CRC32();
+            long pos = HEADER_BYTES;
+            while (pos + FRAME_BYTES <= s.size) {
+                int len = data.getInt((int) pos);
+                int sum = data.getInt((int) pos + 4);
+                if (len <= 0 || pos + FRAME_BYTES + len > s.size) break;
+                ByteBuffer body = data.slice((int) pos + FRAME_BYTES, len);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != sum) break;
+                apply(body, ptr(s.id, pos), FRAME_BYTES + len);
+                pos += FRAME_BYTES + len;
+            }
+            return pos;
+        }
+
+        // ---- index ----
+
+        // Same code path for replay and for live writes, so the index can never disagree with the log
+        private void apply(ByteBuffer b, long ptr, int recordBytes) throws IOException {
+            switch (b.get()) {
+                case USER -> {
+                    User u = new User();
+                    u.id = b.getInt(); u.username = getString(b);
+                    String password = getString(b);
+                    u.name = getString(b); u.age = b.getInt(); u.height = b.getDouble(); u.weight = b.getDouble(); u.goalWeight = b.getDouble();
+                    UserIndex ix = indexFor(u.id);
+                    if (ix.user != null) {
+                        segments.get(segmentOf(ix.ptr)).garbage += ix.recordBytes;
+                        byUsername.remove(ix.user.username);
+                    }
+                    ix.user = u; ix.password = password; ix.ptr = ptr; ix.recordBytes = recordBytes;
+                    byUsername.put(u.username, u.id);
+                }
+                case WORKOUT -> {
+                    int id = b.getInt(); int uid = b.getInt(); long stamp = b.getLong();
+                    String type = getString(b); int seconds = b.getInt();
+                    workoutPtr = ensure(workoutPtr, id);
+                    workoutPtr[id] = ptr;
+                    workoutCount = Math.max(workoutCount, id);
+                    addWorkout(indexFor(uid), id, Math.floorDiv(stamp, 86400), type == null ? "" : type, seconds);
+                }
+                case MEAL -> {
+                    int id = b.getInt(); int uid = b.getInt(); long day = b.getInt();
+                    getString(b);
+                    double p = b.getDouble(), carbs = b.getDouble(), fat = b.getDouble(), cals = b.getDouble();
+                    mealPtr = ensure(mealPtr, id);
+                    mealPtr[id] = ptr;
+                    mealCount = Math.max(mealCount, id);
+                    DayIndex d = indexFor(uid).day(day);
+                    if (d.mealCount == d.meals.length) d.meals = Arrays.copyOf(d.meals, d.mealCount * 2);
+                    d.meals[d.mealCount++] = id;
+                    addMacros(d.rollup, p, carbs, fat, cals);
+                }
+                case MEAL_DELETE -> {
+                    int id = b.getInt();
+                    if (id <= 0) return;
+                    // Tombstones outlive the meal records they delete, so they also keep the highest id in use
+                    mealPtr = ensure(mealPtr, id);
+                    mealCount = Math.max(mealCount, id);
+                    if (mealPtr[id] == 0 || (mealPtr[id] & DEAD) != 0) return;
+                    ByteBuffer meal = body(mealPtr[id]);
+                    meal.get(); meal.getInt();
+                    int uid = meal.getInt(); long day = meal.getInt();
+                    getString(meal);
+                    DayIndex d = indexFor(uid).day(day);
+                    addMacros(d.rollup, -meal.getDouble(), -meal.getDouble(), -meal.getDouble(), -meal.getDouble());
+                    for (int i = 0; i < d.mealCount; i++) {
+                        if (d.meals[i] == id) { System.arraycopy(d.meals, i + 1, d.meals, i, d.mealCount - i - 1); d.mealCount--; break; }
+                    }
+                    segments.get(segmentOf(mealPtr[id])).garbage += FRAME_BYTES + meal.limit();
+                    mealPtr[id] |= DEAD;
+                }
+                default -> throw new IOException("Unknown record type at " + Long.toHexString(ptr));
+            }
+        }
+
+        private UserIndex indexFor(int uid) {
+            while (users.size() < uid) users.add(null);
+            UserIndex ix = users.get(uid - 1);
+            if (ix == null) { ix = new UserIndex(); users.set(uid - 1, ix); }
+            return ix;
+        }
+
+        // Null for ids that were never registered
+        private UserIndex find(int uid) {
+            return uid >= 1 && uid <= users.size() ? users.get(uid - 1) : null;
+        }
+
+        private static void addWorkout(UserIndex ix, int id, long day, String type, int seconds) {
+            if (ix.workouts == ix.workoutIds.length) {
+                ix.workoutIds = Arrays.copyOf(ix.workoutIds, ix.workouts * 2);
+                ix.workoutSeconds = Arrays.copyOf(ix.workoutSeconds, ix.workouts * 2);
+            }
+            ix.workoutIds[ix.workouts] = id;
+            ix.workoutSeconds[ix.workouts] = seconds;
+            ix.workouts++;
+            addToStats(ix.all, seconds);
+            addToStats(ix.stats.computeIfAbsent(type, t -> new WorkoutStats()), seconds);
+            ix.calendar.markActive(day);
+            DailyRollup r = ix.day(day).rollup;
+            r.workoutSeconds += seconds;
+            r.sessions++;
+        }
+
+        private static void addToStats(WorkoutStats st, int seconds) {
+            st.sessions++;
+            st.totalSeconds += seconds;
+            st.maxSeconds = Math.max(st.maxSeconds, seconds);
+        }
+
+        private static void addMacros(DailyRollup r, double p, double carbs, double fat, double cals) {
+            r.protein += p; r.carbs += carbs; r.fat += fat; r.calories += cals;
+        }
+
+        private static long[] ensure(long[] a, int index) {
+            return index < a.length ? a : Arrays.copyOf(a, Math.max(a.length * 2, index + 1));
+        }
+
+        // Body of the record at ptr, positioned at its type byte
+        private ByteBuffer body(long ptr) throws IOException {
+            Segment s = segments.get(segmentOf(ptr));
+            long off = offsetOf(ptr);
+            int len = s.read(off, 4).getInt();
+            return s.read(off + FRAME_BYTES, len);
+        }
+
+        // ---- writes ----
+
+        // build runs under the write lock (so it may check and assign ids) and returns null to abort
+        private boolean commit(Supplier<RecordOut> build) {
+            return commitAll(1, i -> build.get()) == 1;
+        }
+
+        // Appends n records (null ones are skipped) and fsyncs once; returns how many were written.
+        // Records are in the index before the fsync, so if that fails they stay (readers may have seen
+        // them) and the store turns read-only instead.
+        private int commitAll(int n, IntFunction<RecordOut> build) {
+            int written = 0;
+            long end;
+            lock.writeLock().lock();
+            try {
+                if (syncFailure != null) throw new IOException("The log store is read-only after a failed fsync", syncFailure);
+                for (int i = 0; i < n; i++) {
+                    RecordOut r = build.apply(i);
+                    if (r == null) continue;
+                    ByteBuffer rec = r.frame();
+                    int len = rec.limit();
+                    long at = append(rec);
+                    apply(rec.slice(FRAME_BYTES, len - FRAME_BYTES), at, len);
+                    written++;
+                }
+            } catch (IOException e) {
+                StoreFailures.report(e);
+            } finally {
+                end = appended;
+                lock.writeLock().unlock();
+            }
+            if (written > 0) sync(end);
+            return written;
+        }
+
+        private long append(ByteBuffer rec) throws IOException {
+            if (active == null) throw new IOException("Log store is not open");
+            int len = rec.remaining();
+            if (active.size + len > segmentBytes && active.size > HEADER_BYTES) roll();
+            Segment s = active;
+            long at = s.size;
+            try {
+                while (rec.hasRemaining()) s.channel.write(rec, at + rec.position());
+            } catch (IOException e) {
+                s.channel.truncate(at); // never leave half a record in front of the next one
+                throw e;
+            }
+            rec.rewind();
+            s.size += len;
+            appended += len;
+            return ptr(s.id, at);
+        }
+
+        // Whoever gets here first forces everything appended so far; later callers find it done
+        private void sync(long end) {
+            synchronized (syncLock) {
+                if (synced >= end) return;
+                if (syncFailure != null) {
+                    StoreFailures.report(new IOException("The log store is read-only after a failed fsync", syncFailure));
+                    return;
+                }
+                long upTo = appended;
+                try {
+                    Segment s = active;
+                    if (s != null) s.channel.force(false);
+                    synced = upTo;
+                } catch (IOException e) {
+                    syncFailure = e;
+                    StoreFailures.report(e);
+                }
+            }
+        }
+
+        // Called with the write lock held. The full segment is forced before it is sealed.
+        private void roll() throws IOException {
+            active.seal();
+            Segment next = createSegment(-1, -1, ".log");
+            segments.put(next.id, next);
+            ordered.add(next);
+            active = next;
+        }
+
+        private Segment createSegment(long order, int replaces, String suffix) throws IOException {
+            int id = nextSegmentId++;
+            Path path = dir.resolve(String.format("seg-%08d%s", id, suffix));
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putLong(order < 0 ? id : order).putInt(replaces).flip();
+            while (h.hasRemaining()) ch.write(h, h.position());
+            return new Segment(id, order < 0 ? id : order, path, ch, HEADER_BYTES);
+        }
+
+        @Override
+        public boolean register(String u, String p, String n, int a, double h, double w, double gw) {
+            return commit(() -> byUsername.containsKey(u) ? null : new RecordOut(USER).putInt(users.size() + 1).putString(u).putString(p)
+                    .putString(n).putInt(a).putDouble(h).putDouble(w).putDouble(gw));
+        }
+
+        @Override
+        public User login(String u, String p) {
+            lock.readLock().lock();
+            try {
+                Integer id = byUsername.get(u);
+                UserIndex ix = id == null ? null : find(id);
+                if (ix == null || ix.password == null || !ix.password.equals(p)) return null;
+                return ix.user.copy();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public EventBus events() { return events; }
+
+        @Override
+        public void updateUser(User u) {
+            User saved = u.copy();
+            boolean written = commit(() -> {
+                UserIndex ix = find(u.id);
+                if (ix == null || ix.user == null) return null;
+                return new RecordOut(USER).putInt(u.id).putString(ix.user.username).putString(ix.password)
+                        .putString(u.name).putInt(u.age).putDouble(u.height).putDouble(u.weight).putDouble(u.goalWeight);
+            });
+            if (written) events.publish(new ProfileUpdated(u.id, saved));
+        }
+
+        // [CO5] Method Overloading 1: Full Parameters
+        @Override
+        public void logWorkout(int uid, String t, int s, String d) {
+            LocalDateTime now = LocalDateTime.now().withNano(0);
+            long stamp = now.toEpochSecond(ZoneOffset.UTC); // wall-clock time, stored without a zone
+            int[] id = {0};
+            if (commit(() -> new RecordOut(WORKOUT).putInt(id[0] = workoutCount + 1).putInt(uid).putLong(stamp).putString(t).putInt(s).putString(d))) {
+                events.publish(new WorkoutLogged(uid, id[0], now, t, s, d));
+            }
+        }
+
+        // [CO5] Method Overloading 2: Simplified (Auto-generates details)
+        @Override
+        public void logWorkout(int uid, String t, int s) {
+            logWorkout(uid, t, s, "Quick Log - No Details Provided");
+        }
+
+        @Override
+        public void logMeal(int uid, String f, double p, double carbs, double fat, double cals) {
+            LocalDate today = LocalDate.now();
+            int day = (int) today.toEpochDay();
+            int[] id = {0};
+            if (commit(() -> new RecordOut(MEAL).putInt(id[0] = mealCount + 1).putInt(uid).putInt(day).putString(f)
+                    .putDouble(p).putDouble(carbs).putDouble(fat).putDouble(cals))) {
+                events.publish(new MealLogged(uid, id[0], today, f, p, carbs, fat, cals));
+            }
+        }
+
+        @Override
+        public void logMeal(int uid, String f, double p, double cals) {
+            logMeal(uid, f, p, 0, 0, cals);
+        }
+
+        @Override
+        public int importWorkouts(List<WorkoutEntry> batch) {
+            int written = commitAll(batch.size(), i -> {
+                WorkoutEntry w = batch.get(i);
+                return new RecordOut(WORKOUT).putInt(workoutCount + 1).putInt(w.userId).putLong(w.at.toEpochSecond(ZoneOffset.UTC))
+                        .putString(w.type).putInt(w.seconds).putString(w.details);
+            });
+            WorkoutsImported.of(batch.subList(0, written)).forEach(events::publish);
+            return written;
+        }
+
+        @Override
+        public int importMeals(List<MealEntry> batch) {
+            return commitAll(batch.size(), i -> {
+                MealEntry m = batch.get(i);
+                return new RecordOut(MEAL).putInt(mealCount + 1).putInt(m.userId).putInt((int) m.day.toEpochDay()).putString(m.food)
+                        .putDouble(m.protein).putDouble(m.carbs).putDouble(m.fat).putDouble(m.calories);
+            });
+        }
+
+        @Override
+        public void deleteMeal(int uid, int mealId) {
+            MealDeleted[] gone = {null};
+            boolean written = commit(() -> {
+                if (mealId <= 0 || mealId > mealCount || mealPtr[mealId] == 0 || (mealPtr[mealId] & DEAD) != 0) return null;
+                gone[0] = readDeleted(mealId);
+                if (gone[0] == null || gone[0].userId() != uid) return null; // unreadable, or someone else's
+                return new RecordOut(MEAL_DELETE).putInt(mealId);
+            });
+            if (written && gone[0] != null) events.publish(gone[0]);
+        }
+
+        // The event for deleting a live meal, read back from its record; null if it can't be read
+        private MealDeleted readDeleted(int mealId) {
+            try {
+                ByteBuffer b = body(mealPtr[mealId]);
+                b.get(); b.getInt(); // type, id
+                int uid = b.getInt(); long day = b.getInt();
+                getString(b);
+                return new MealDeleted(uid, mealId, LocalDate.ofEpochDay(day), b.getDouble(), b.getDouble(), b.getDouble(), b.getDouble());
+            } catch (IOException e) {
+                StoreFailures.report(e);
+                return null;
+            }
+        }
+
+        // ---- reads ----
+
+        @Override
+        public List<DailyRollup> getDailyRollups(int uid, LocalDate from, LocalDate to) {
+            List<DailyRollup> list = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                if (ix == null) return list;
+                for (DayIndex d : ix.days.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+                    DailyRollup r = new DailyRollup(), src = d.rollup;
+                    r.day = src.day; r.protein = src.protein; r.carbs = src.carbs; r.fat = src.fat;
+                    r.calories = src.calories; r.workoutSeconds = src.workoutSeconds; r.sessions = src.sessions;
+                    list.add(r);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return list;
+        }
+
+        // Everything is already aggregated in memory, so there is nothing worth caching
+        @Override
+        public int getScore(int uid) {
+            ScoreInputs in = new ScoreInputs();
+            in.streak = getStreakSummary(uid);
+            in.workouts = getWorkoutStats(uid);
+            in.todayProtein = getTodayProtein(uid);
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                if (ix != null && ix.user != null) in.proteinGoal = ix.user.getProteinGoal();
+            } finally {
+                lock.readLock().unlock();
+            }
+            return scoreEngine.score(in);
+        }
+
+        @Override
+        public StreakSummary getStreakSummary(int uid) {
+            StreakSummary summary = new StreakSummary();
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                if (ix == null) return summary;
+                long today = LocalDate.now().toEpochDay();
+                summary.current = ix.calendar.currentStreak(today);
+                summary.longest = ix.calendar.longestStreak();
+                summary.last30Days = ix.calendar.activeDaysInLast(30, today);
+                summary.totalActiveDays = ix.calendar.totalActiveDays();
+            } finally {
+                lock.readLock().unlock();
+            }
+            return summary;
+        }
+
+        @Override
+        public List<MealRow> getTodayMeals(int uid) {
+            List<MealRow> list = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                DayIndex d = ix == null ? null : ix.days.get(LocalDate.now().toEpochDay());
+                if (d == null) return list;
+                for (int i = 0; i < d.mealCount; i++) {
+                    ByteBuffer b = body(mealPtr[d.meals[i]]);
+                    b.get();
+                    int id = b.getInt(); b.getInt(); b.getInt();
+                    String food = getString(b);
+                    double protein = b.getDouble(); b.getDouble(); b.getDouble();
+                    list.add(new MealRow(id, food, protein, b.getDouble()));
+                }
+            } catch (IOException e) {
+                StoreFailures.report(e);
+            } finally {
+                lock.readLock().unlock();
+            }
+            return list;
+        }
+
+        @Override
+        public WorkoutStats getWorkoutStats(int uid, String exerciseType) {
+            WorkoutStats copy = new WorkoutStats();
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                WorkoutStats st = ix == null ? null : ALL_TYPES.equals(exerciseType) ? ix.all : ix.stats.get(exerciseType);
+                if (st != null) { copy.sessions = st.sessions; copy.totalSeconds = st.totalSeconds; copy.maxSeconds = st.maxSeconds; }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return copy;
+        }
+
+        @Override
+        public Map<String, WorkoutStats> getWorkoutStatsByType(int uid) {
+            Map<String, WorkoutStats> byType = new TreeMap<>();
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                if (ix == null) return byType;
+                for (Map.Entry<String, WorkoutStats> e : ix.stats.entrySet()) {
+                    WorkoutStats copy = new WorkoutStats(), st = e.getValue();
+                    copy.sessions = st.sessions; copy.totalSeconds = st.totalSeconds; copy.maxSeconds = st.maxSeconds;
+                    byType.put(e.getKey(), copy);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return byType;
+        }
+
+        // The aggregates are derived from the log on every start, so they cannot drift; kept for the interface
+        @Override
+        public void rebuildWorkoutStats(int uid) { }
+
+        @Override
+        public int countWorkouts(int uid) {
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                return ix == null ? 0 : ix.workouts;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public long getWorkoutIdAt(int uid, int offset) {
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                if (ix == null || offset < 0 || offset >= ix.workouts) return -1;
+                return ix.workoutIds[ix.workouts - 1 - offset];
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public WorkoutPage getWorkoutPage(int uid, long beforeId, int limit) {
+            WorkoutPage page = new WorkoutPage(limit);
+            int n = 0;
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                if (ix == null) return page.truncate(0);
+                int key = (int) Math.min(beforeId, Integer.MAX_VALUE);
+                int i = Arrays.binarySearch(ix.workoutIds, 0, ix.workouts, key);
+                i = (i >= 0 ? i : -i - 1) - 1; // newest workout with id < beforeId
+                for (; i >= 0 && n < limit; i--, n++) {
+                    ByteBuffer b = body(workoutPtr[ix.workoutIds[i]]);
+                    b.get();
+                    page.ids[n] = b.getInt(); b.getInt();
+                    page.dates[n] = LocalDateTime.ofEpochSecond(b.getLong(), 0, ZoneOffset.UTC).format(STAMP);
+                    page.types[n] = getString(b);
+                    page.seconds[n] = b.getInt();
+                    page.details[n] = getString(b);
+                }
+            } catch (IOException e) {
+                StoreFailures.report(e);
+            } finally {
+                lock.readLock().unlock();
+            }
+            return page.truncate(n);
+        }
+
+        @Override
+        public int[] getWorkoutDurations(int uid) {
+            lock.readLock().lock();
+            try {
+                UserIndex ix = find(uid);
+                return ix == null ? new int[0] : Arrays.copyOf(ix.workoutSeconds, ix.workouts);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // ---- compaction ----
+
+        private void compactLoop() {
+            while (!closed) {
+                try {
+                    Thread.sleep(COMPACT_CHECK_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Segment victim = null;
+                lock.readLock().lock();
+                try {
+                    for (Segment s : ordered) {
+                        if (s != active && s.size >= COMPACT_MIN_BYTES && s.garbage * 2 > s.size) { victim = s; break; }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (victim == null) continue;
+                try {
+                    compact(victim);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        // Copies the live records of one sealed segment into a new file that takes its place in the
+        // replay order. The header of the copy names the original, so a crash between the rename
+        // and the delete is cleaned up by recover().
+        void compact(Segment s) throws IOException {
+            // 1. decide what is live (records in a sealed segment never change, only the index does)
+            long[] live = new long[256]; int liveCount = 0;
+            Map<Integer, Long> droppedMeals = new HashMap<>(); // id -> its pointer, DEAD set
+            int outId;
+            lock.readLock().lock();
+            try {
+                if (!segments.containsKey(s.id) || s == active) return;
+                for (long pos = HEADER_BYTES; pos < s.size; ) {
+                    int len = s.map.getInt((int) pos);
+                    long p = ptr(s.id, pos);
+                    ByteBuffer b = s.map.slice((int) pos + FRAME_BYTES, len);
+                    byte type = b.get();
+                    int id = b.getInt();
+                    boolean keep = switch (type) {
+                        case USER -> find(id) != null && find(id).ptr == p;
+                        // a meal that was deleted, or re-issued by a restore, has no use
+                        case MEAL -> {
+                            if (mealPtr[id] == (p | DEAD)) droppedMeals.put(id, p | DEAD);
+                            yield mealPtr[id] == p;
+                        }
+                        // Tombstones are always kept: which record one deleted is not known here, and replaying
+                        // them is what stops a restart from handing the id of a dropped meal out again
+                        case MEAL_DELETE -> true;
+                        default -> true;
+                    };
+                    if (keep) {
+                        if (liveCount == live.length) live = Arrays.copyOf(live, liveCount * 2);
+                        live[liveCount++] = pos;
+                    }
+                    pos += FRAME_BYTES + len;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            lock.writeLock().lock();
+            try {
+                outId = nextSegmentId++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            // 2. write the copy without holding the lock
+            Path tmp = dir.resolve(String.format("seg-%08d.tmp", outId));
+            Path dest = dir.resolve(String.format("seg-%08d.log", outId));
+            long[] moved = new long[liveCount];
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putLong(s.order).putInt(s.id).flip();
+                long at = 0;
+                while (h.hasRemaining()) at += ch.write(h, at);
+                for (int i = 0; i < liveCount; i++) {
+                    int len = s.map.getInt((int) live[i]);
+                    ByteBuffer rec = s.map.slice((int) live[i], FRAME_BYTES + len);
+                    moved[i] = at;
+                    while (rec.hasRemaining()) at += ch.write(rec, at);
+                }
+                ch.force(true);
+            }
+            Files.move(tmp, dest, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel ch = FileChannel.open(dest, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment out = new Segment(outId, s.order, dest, ch, ch.size());
+            out.seal();
+
+            // 3. point the index at the copy; anything that changed meanwhile is left alone
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < liveCount; i++) {
+                    long from = ptr(s.id, live[i]), to = ptr(out.id, moved[i]);
+                    int len = s.map.getInt((int) live[i]);
+                    ByteBuffer b = s.map.slice((int) live[i] + FRAME_BYTES, len);
+                    byte type = b.get();
+                    int id = b.getInt();
+                    switch (type) {
+                        case USER -> {
+                            UserIndex ix = find(id);
+                            if (ix != null && ix.ptr == from) ix.ptr = to; else out.garbage += FRAME_BYTES + len;
+                        }
+                        case WORKOUT -> { if (workoutPtr[id] == from) workoutPtr[id] = to; }
+                        case MEAL -> {
+                            if ((mealPtr[id] & ~DEAD) == from) {
+                                if ((mealPtr[id] & DEAD) != 0) out.garbage += FRAME_BYTES + len; // deleted while copying
+                                mealPtr[id] = to | (mealPtr[id] & DEAD);
+                            }
+                        }
+                        default -> { }
+                    }
+                }
+                // unless a restore re-issued the id meanwhile
+                droppedMeals.forEach((id, p) -> { if (mealPtr[id] == p) mealPtr[id] = 0; });
+                segments.remove(s.id);
+                segments.put(out.id, out);
+                ordered.set(ordered.indexOf(s), out);
+                s.channel.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                Files.deleteIfExists(s.path);
+            } catch (IOException e) {
+                // Still mapped on some platforms; recover() deletes it on the next start
+            }
+        }
+
+        // Compacts every sealed segment now, whatever its garbage; for tools and checks
+        void compactAll() throws IOException {
+            List<Segment> sealed;
+            lock.readLock().lock();
+            try {
+                sealed = new ArrayList<>(ordered);
+                sealed.remove(active);
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (Segment s : sealed) compact(s);
+        }
+
+        // ---- backup ----
+
+        @Override
+        public BackupSource backupSource() { return this; }
+
+        // Kept in a file next to the segments; a restored directory starts without one
+        @Override
+        public synchronized long backupSourceId() throws IOException {
+            Path file = dir.resolve(SOURCE_FILE);
+            if (Files.exists(file)) return Long.parseLong(Files.readString(file).trim());
+            long id = new SecureRandom().nextLong() & Long.MAX_VALUE;
+            Path tmp = dir.resolve(SOURCE_FILE + ".tmp");
+            Files.writeString(tmp, Long.toString(id));
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return id;
+        }
+
+        // Records never change once written, so the counts read first fix the snapshot: workouts and meals
+        // up to them, read BACKUP_CHUNK ids per trip through the read lock and sent outside it. Only a
+        // meal deleted meanwhile can differ; it is left out here and its tombstone goes in the next backup.
+        // changes counts deleted meals and users is a digest of where each user record sits (an update
+        // or a compaction moves it), so a backup only repeats them when they moved.
+        @Override
+        public Backups.Mark backup(Backups.Mark since, BackupSink sink) throws IOException {
+            long fromWorkout = since == null ? 0 : since.workoutId(), fromMeal = since == null ? 0 : since.mealId();
+            int workouts, meals, gone = 0, goneBefore = 0;
+            int[] goneIds = new int[16];
+            long digest = 0;
+            List<User> people = new ArrayList<>();
+            List<String> passwords = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                workouts = workoutCount;
+                meals = mealCount;
+                for (int id = 1; id <= meals; id++) {
+                    if (mealPtr[id] != 0 && (mealPtr[id] & DEAD) == 0) continue;
+                    gone++;
+                    if (id > fromMeal) continue;
+                    if (goneBefore == goneIds.length) goneIds = Arrays.copyOf(goneIds, goneBefore * 2);
+                    goneIds[goneBefore++] = id;
+                }
+                for (UserIndex ix : users) {
+                    if (ix == null || ix.user == null) continue;
+                    digest = digest * 31 + ix.ptr;
+                    people.add(ix.user.copy());
+                    passwords.add(ix.password);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            Backups.Mark mark = new Backups.Mark(backupSourceId(), workouts, meals, gone, digest);
+            sink.begin(mark);
+            if (since == null || since.users() != digest) {
+                for (int i = 0; i < people.size(); i++) {
+                    User u = people.get(i);
+                    sink.user(u.id, u.username, passwords.get(i), u.name, u.age, u.height, u.weight, u.goalWeight);
+                }
+            }
+            sendRecords(fromWorkout + 1, workouts, false, sink);
+            sendRecords(fromMeal + 1, meals, true, sink);
+            // Meals the last backup had that were deleted since (deletes are final, so the count only grows)
+            if (since != null && goneBefore > since.changes()) {
+                for (int i = 0; i < goneBefore; i++) sink.deleted(Backups.MEALS, goneIds[i]);
+            }
+            return mark;
+        }
+
+        // Live workout or meal records with ids from..to, oldest first
+        private void sendRecords(long from, long to, boolean meals, BackupSink sink) throws IOException {
+            List<ByteBuffer> chunk = new ArrayList<>(BACKUP_CHUNK);
+            for (long start = from; start <= to; start += BACKUP_CHUNK) {
+                chunk.clear();
+                lock.readLock().lock();
+                try {
+                    long[] ptrs = meals ? mealPtr : workoutPtr;
+                    for (int id = (int) start; id <= Math.min(to, start + BACKUP_CHUNK - 1); id++) {
+                        if (ptrs[id] != 0 && (ptrs[id] & DEAD) == 0) chunk.add(body(ptrs[id]));
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                // A sealed segment's map stays valid even if compaction replaces the segment meanwhile
+                for (ByteBuffer b : chunk) {
+                    b.get();
+                    int id = b.getInt(), uid = b.getInt();
+                    if (meals) {
+                        sink.meal(id, uid, LocalDate.ofEpochDay(b.getInt()).toString(), getString(b),
+                                b.getDouble(), b.getDouble(), b.getDouble(), b.getDouble());
+                    } else {
+                        String date = LocalDateTime.ofEpochSecond(b.getLong(), 0, ZoneOffset.UTC).format(STAMP);
+                        sink.workout(id, uid, date, getString(b), b.getInt(), getString(b));
+                    }
+                }
+            }
+        }
+
+        // Replays a backup chain into a new directory next to dir and swaps it in; the old one stays as
+        // dir.before-restore. Run with the app closed. Backups of the SQLite store load too, as long as
+        // they only delete meals: the log has no record for deleting a user or a workout.
+        static void restore(Path dir, List<Backups.Info> chain) throws IOException {
+            Path building = dir.resolveSibling(dir.getFileName() + ".restoring");
+            Path old = dir.resolveSibling(dir.getFileName() + ".before-restore");
+            if (Files.exists(old)) throw new IOException(old + " is left from an earlier restore; move it away first");
+            deleteDirectory(building);
+            LogStore store = new LogStore(building);
+            store.initTables();
+            try {
+                RestoreSink sink = store.new RestoreSink();
+                for (Backups.Info b : chain) {
+                    Backups.replay(b.path(), sink);
+                    sink.flush();
+                }
+                store.close();
+            } catch (IOException | RuntimeException e) {
+                store.close();
+                deleteDirectory(building);
+                throw e;
+            }
+            if (Files.exists(dir)) Files.move(dir, old);
+            Files.move(building, dir, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // Log directories are flat
+        private static void deleteDirectory(Path dir) throws IOException {
+            if (!Files.isDirectory(dir)) return;
+            try (var files = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+            }
+            Files.delete(dir);
+        }
+
+        // Backup rows as log records, appended BACKUP_CHUNK at a time with one fsync each
+        private class RestoreSink implements BackupSink {
+            private final List<RecordOut> pending = new ArrayList<>();
+            private long lastWorkout, lastMeal;
+
+            private void add(RecordOut r) throws IOException {
+                pending.add(r);
+                if (pending.size() >= BACKUP_CHUNK) flush();
+            }
+
+            void flush() throws IOException {
+                if (commitAll(pending.size(), pending::get) != pending.size() || syncFailure != null) {
+                    throw new IOException("Could not write the restored records to " + dir, syncFailure);
+                }
+                pending.clear();
+            }
+
+            @Override public void begin(Backups.Mark mark) {}
+
+            @Override
+            public void user(int id, String username, String password, String name, int age, double height, double weight, double goalWeight) throws IOException {
+                add(new RecordOut(USER).putInt(id).putString(username).putString(password).putString(name)
+                        .putInt(age).putDouble(height).putDouble(weight).putDouble(goalWeight));
+            }
+
+            @Override
+            public void workout(long id, int userId, String date, String type, int seconds, String details) throws IOException {
+                if (id <= lastWorkout) throw new IOException("The log store cannot replace workout " + id);
+                lastWorkout = id;
+                LocalDateTime at = WorkoutImporter.fixedTime(date);
+                if (at == null) at = LocalDateTime.parse(date, STAMP); // reports what is wrong with it
+                add(new RecordOut(WORKOUT).putInt((int) id).putInt(userId).putLong(at.toEpochSecond(ZoneOffset.UTC))
+                        .putString(type).putInt(seconds).putString(details));
+            }
+
+            // A meal that comes again (updated in SQLite) replaces the earlier one
+            @Override
+            public void meal(long id, int userId, String date, String food, double protein, double carbs, double fat, double calories) throws IOException {
+                if (id <= lastMeal) add(new RecordOut(MEAL_DELETE).putInt((int) id));
+                lastMeal = Math.max(lastMeal, id);
+                add(new RecordOut(MEAL).putInt((int) id).putInt(userId).putInt((int) LocalDate.parse(date).toEpochDay()).putString(food)
+                        .putDouble(protein).putDouble(carbs).putDouble(fat).putDouble(calories));
+            }
+
+            @Override
+            public void deleted(byte table, long id) throws IOException {
+                if (table != Backups.MEALS) throw new IOException("The log store cannot delete " + (table == Backups.USERS ? "user " : "workout ") + id);
+                add(new RecordOut(MEAL_DELETE).putInt((int) id));
+            }
+        }
+    }
+
+    // Heap-only backend. Each user's history is a set of growable primitive columns (long[] timestamps,
+    // int[] durations, double[] macros) appended in time order, so a day range is two binary searches.
+    // Nothing survives a restart: meant for tests, benchmarks and -Dfitpulse.store=memory.
+    static class InMemoryStore implements TrackerStore {
+        private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        private static final int MACROS = 4; // protein, carbs, fat, calories
+
+        // Columns stay in id order for paging; the sorted flags say whether time order still matches,
+        // which holds unless a bulk load adds older history after newer rows
+        private static class UserData {
+            User user; String password;
+            boolean workoutsByTime = true, mealsByTime = true;
+            int workouts;
+            long[] workoutIds = new long[16]; long[] workoutTimes = new long[16]; int[] durations = new int[16];
+            String[] types = new String[16]; String[] details = new String[16];
+            final WorkoutStats all = new WorkoutStats();
+            final Map<String, WorkoutStats> stats = new TreeMap<>();
+            final ActivityCalendar calendar = new ActivityCalendar();
+            int meals;
+            int[] mealIds = new int[16]; long[] mealTimes = new long[16]; String[] foods = new String[16];
+            double[] macros = new double[16 * MACROS];
+
+            void addWorkout(long id, long time, String type, int seconds, String detail) {
+                if (workouts == workoutIds.length) {
+                    int cap = workouts * 2;
+                    workoutIds = Arrays.copyOf(workoutIds, cap); workoutTimes = Arrays.copyOf(workoutTimes, cap);
+                    durations = Arrays.copyOf(durations, cap); types = Arrays.copyOf(types, cap); details = Arrays.copyOf(details, cap);
+                }
+                if (workouts > 0 && time < workoutTimes[workouts - 1]) workoutsByTime = false;
+                workoutIds[workouts] = id; workoutTimes[workouts] = time; durations[workouts] = seconds;
+                types[workouts] = type; details[workouts] = detail;
+                workouts++;
+                count(all, seconds);
+                count(stats.computeIfAbsent(type == null ? "" : type, t -> new WorkoutStats()), seconds);
+                calendar.markActive(Math.floorDiv(time, 86400));
+            }
+
+            void addMeal(int id, long time, String food, double p, double carbs, double fat, double cals) {
+                if (meals == mealIds.length) {
+                    int cap = meals * 2;
+                    mealIds = Arrays.copyOf(mealIds, cap); mealTimes = Arrays.copyOf(mealTimes, cap);
+                    foods = Arrays.copyOf(foods, cap); macros = Arrays.copyOf(macros, cap * MACROS);
+                }
+                if (meals > 0 && time < mealTimes[meals - 1]) mealsByTime = false;
+                mealIds[meals] = id; mealTimes[meals] = time; foods[meals] = food;
+                int m = meals * MACROS;
+                macros[m] = p; macros[m + 1] = carbs; macros[m + 2] = fat; macros[m + 3] = cals;
+                meals++;
+            }
+
+            // What was removed, for the MealDeleted event; null if this user has no such meal
+            MealDeleted removeMeal(int uid, int id) {
+                int i = Arrays.binarySearch(mealIds, 0, meals, id);
+                if (i < 0) return null;
+                int m = i * MACROS;
+                MealDeleted gone = new MealDeleted(uid, id, LocalDate.ofEpochDay(Math.floorDiv(mealTimes[i], 86400)),
+                        macros[m], macros[m + 1], macros[m + 2], macros[m + 3]);
+                int tail = meals - i - 1;
+                System.arraycopy(mealIds, i + 1, mealIds, i, tail);
+                System.arraycopy(mealTimes, i + 1, mealTimes, i, tail);
+                System.arraycopy(foods, i + 1, foods, i, tail);
+                System.arraycopy(macros, (i + 1) * MACROS, macros, i * MACROS, tail * MACROS);
+                meals--;
+                foods[meals] = null;
+                return gone;
+            }
+
+            static void count(WorkoutStats st, int seconds) {
+                st.sessions++; st.totalSeconds += seconds; st.maxSeconds = Math.max(st.maxSeconds, seconds);
+            }
+        }
+
+        private final List<UserData> users = new ArrayList<>(); // index = id - 1
+        private final Map<String, Integer> byUsername = new HashMap<>();
+        private int[] mealOwner = new int[1024]; // meal id -> user id, 0 once deleted
+        private int mealCount;
+        private long workoutCount;
+        private final ScoreEngine scoreEngine = ScoreEngine.standard();
+        // Published after the lock is released, so a subscriber may read straight back
+        private final EventBus events = new EventBus();
+
+        // Wall-clock time as seconds, without a zone, like the dates the SQLite backend stores
+        private static long now() { return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC); }
+
+        // Where a scan for times >= start begins: a binary search if the column is in time order
+        private static int scanFrom(long[] times, int n, boolean sorted, long start) {
+            return sorted ? lowerBound(times, n, start) : 0;
+        }
+
+        // First index in a[0..n) whose value is >= key
+        private static int lowerBound(long[] a, int n, long key) {
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (a[mid] < key) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        private UserData data(int uid) {
+            while (users.size() < uid) users.add(null);
+            UserData d = users.get(uid - 1);
+            if (d == null) { d = new UserData(); users.set(uid - 1, d); }
+            return d;
+        }
+
+        private UserData find(int uid) {
+            return uid >= 1 && uid <= users.size() ? users.get(uid - 1) : null;
+        }
+
+        @Override public void initTables() { }
+        @Override public void close() { }
+        @Override public EventBus events() { return events; }
+
+        @Override
+        public synchronized boolean register(String u, String p, String n, int a, double h, double w, double gw) {
+            if (byUsername.containsKey(u)) return false;
+            User user = new User();
+            user.id = users.size() + 1; user.username = u; user.name = n; user.age = a; user.height = h; user.weight = w; user.goalWeight = gw;
+            UserData d = data(user.id);
+            d.user = user; d.password = p;
+            byUsername.put(u, user.id);
+            return true;
+        }
+
+        @Override
+        public synchronized User login(String u, String p) {
+            Integer id = byUsername.get(u);
+            UserData d = id == null ? null : find(id);
+            if (d == null || !p.equals(d.password)) return null;
+            User user = new User();
+            user.id = d.user.id; user.username = d.user.username; user.name = d.user.name; user.age = d.user.age;
+            user.height = d.user.height; user.weight = d.user.weight; user.goalWeight = d.user.goalWeight;
+            return user;
+        }
+
+        @Override
+        public void updateUser(User u) {
+            synchronized (this) {
+                UserData d = find(u.id);
+                if (d == null || d.user == null) return;
+                d.user.name = u.name; d.user.age = u.age; d.user.height = u.height; d.user.weight = u.weight; d.user.goalWeight = u.goalWeight;
+            }
+            events.publish(new ProfileUpdated(u.id, u.copy()));
+        }
+
+        // [CO5] Method Overloading 1: Full Parameters
+        @Override
+        public void logWorkout(int uid, String t, int s, String d) {
+            LocalDateTime at = LocalDateTime.now().withNano(0);
+            long id;
+            synchronized (this) {
+                id = ++workoutCount;
+                data(uid).addWorkout(id, at.toEpochSecond(ZoneOffset.UTC), t, s, d);
+            }
+            events.publish(new WorkoutLogged(uid, id, at, t, s, d));
+        }
+
+        // [CO5] Method Overloading 2: Simplified (Auto-generates details)
+        @Override
+        public void logWorkout(int uid, String t, int s) {
+            logWorkout(uid, t, s, "Quick Log - No Details Provided");
+        }
+
+        @Override
+        public void logMeal(int uid, String f, double p, double carbs, double fat, double cals) {
+            long time = now();
+            int id;
+            synchronized (this) {
+                id = ++mealCount;
+                if (id == mealOwner.length) mealOwner = Arrays.copyOf(mealOwner, id * 2);
+                mealOwner[id] = uid;
+                data(uid).addMeal(id, time, f, p, carbs, fat, cals);
+            }
+            events.publish(new MealLogged(uid, id, LocalDate.ofEpochDay(Math.floorDiv(time, 86400)), f, p, carbs, fat, cals));
+        }
+
+        @Override
+        public void logMeal(int uid, String f, double p, double cals) {
+            logMeal(uid, f, p, 0, 0, cals);
+        }
+
+        @Override
+        public int importWorkouts(List<WorkoutEntry> batch) {
+            synchronized (this) {
+                for (WorkoutEntry w : batch) data(w.userId).addWorkout(++workoutCount, w.at.toEpochSecond(ZoneOffset.UTC), w.type, w.seconds, w.details);
+            }
+            WorkoutsImported.of(batch).forEach(events::publish);
+            return batch.size();
+        }
+
+        @Override
+        public synchronized int importMeals(List<MealEntry> batch) {
+            for (MealEntry m : batch) {
+                int id = ++mealCount;
+                if (id == mealOwner.length) mealOwner = Arrays.copyOf(mealOwner, id * 2);
+                mealOwner[id] = m.userId;
+                // a meal only carries its day; file it under midday
+                data(m.userId).addMeal(id, m.day.toEpochDay() * 86400 + 43200, m.food, m.protein, m.carbs, m.fat, m.calories);
+            }
+            return batch.size();
+        }
+
+        @Override
+        public void deleteMeal(int uid, int mealId) {
+            MealDeleted gone;
+            synchronized (this) {
+                if (mealId <= 0 || mealId > mealCount || mealOwner[mealId] != uid) return;
+                gone = find(uid).removeMeal(uid, mealId);
+                mealOwner[mealId] = 0;
+            }
+            if (gone != null) events.publish(gone);
+        }
+
+        @Override
+        public synchronized List<DailyRollup> getDailyRollups(int uid, LocalDate from, LocalDate to) {
+            UserData d = find(uid);
+            if (d == null) return new ArrayList<>();
+            long start = from.toEpochDay() * 86400, end = (to.toEpochDay() + 1) * 86400;
+            TreeMap<Long, DailyRollup> days = new TreeMap<>();
+            for (int i = scanFrom(d.workoutTimes, d.workouts, d.workoutsByTime, start); i < d.workouts; i++) {
+                if (d.workoutTimes[i] >= end) { if (d.workoutsByTime) break; else continue; }
+                if (d.workoutTimes[i] < start) continue;
+                DailyRollup r = rollup(days, Math.floorDiv(d.workoutTimes[i], 86400));
+                r.workoutSeconds += d.durations[i];
+                r.sessions++;
+            }
+            for (int i = scanFrom(d.mealTimes, d.meals, d.mealsByTime, start); i < d.meals; i++) {
+                if (d.mealTimes[i] >= end) { if (d.mealsByTime) break; else continue; }
+                if (d.mealTimes[i] < start) continue;
+                DailyRollup r = rollup(days, Math.floorDiv(d.mealTimes[i], 86400));
+                int m = i * MACROS;
+                r.protein += d.macros[m]; r.carbs += d.macros[m + 1]; r.fat += d.macros[m + 2]; r.calories += d.macros[m + 3];
+            }
+            return new ArrayList<>(days.values());
+        }
+
+        private static DailyRollup rollup(TreeMap<Long, DailyRollup> days, long day) {
+            return days.computeIfAbsent(day, k -> {
+                DailyRollup r = new DailyRollup();
+                r.day = LocalDate.ofEpochDay(k).toString();
+                return r;
+            });
+        }
+
+        @Override
+        public int getScore(int uid) {
+            ScoreInputs in = new ScoreInputs();
+            in.streak = getStreakSummary(uid);
+            in.workouts = getWorkoutStats(uid);
+            in.todayProtein = getTodayProtein(uid);
+            synchronized (this) {
+                UserData d = find(uid);
+                if (d != null && d.user != null) in.proteinGoal = d.user.getProteinGoal();
+            }
+            return scoreEngine.score(in);
+        }
+
+        @Override
+        public synchronized StreakSummary getStreakSummary(int uid) {
+            StreakSummary summary = new StreakSummary();
+            UserData d = find(uid);
+            if (d == null) return summary;
+            long today = LocalDate.now().toEpochDay();
+            summary.current = d.calendar.currentStreak(today);
+            summary.longest = d.calendar.longestStreak();
+            summary.last30Days = d.calendar.activeDaysInLast(30, today);
+            summary.totalActiveDays = d.calendar.totalActiveDays();
+            return summary;
+        }
+
+        @Override
+        public synchronized List<MealRow> getTodayMeals(int uid) {
+            List<MealRow> list = new ArrayList<>();
+            UserData d = find(uid);
+            if (d == null) return list;
+            long start = LocalDate.now().toEpochDay() * 86400;
+            for (int i = scanFrom(d.mealTimes, d.meals, d.mealsByTime, start); i < d.meals; i++) {
+                if (d.mealTimes[i] >= start + 86400) { if (d.mealsByTime) break; else continue; }
+                if (d.mealTimes[i] < start) continue;
+                list.add(new MealRow(d.mealIds[i], d.foods[i], d.macros[i * MACROS], d.macros[i * MACROS + 3]));
+            }
+            return list;
+        }
+
+        @Override
+        public synchronized WorkoutStats getWorkoutStats(int uid, String exerciseType) {
+            WorkoutStats copy = new WorkoutStats();
+            UserData d = find(uid);
+            WorkoutStats st = d == null ? null : ALL_TYPES.equals(exerciseType) ? d.all : d.stats.get(exerciseType);
+            if (st != null) { copy.sessions = st.sessions; copy.totalSeconds = st.totalSeconds; copy.maxSeconds = st.maxSeconds; }
+            return copy;
+        }
+
+        @Override
+        public synchronized Map<String, WorkoutStats> getWorkoutStatsByType(int uid) {
+            Map<String, WorkoutStats> byType = new TreeMap<>();
+            UserData d = find(uid);
+            if (d == null) return byType;
+            for (Map.Entry<String, WorkoutStats> e : d.stats.entrySet()) {
+                WorkoutStats copy = new WorkoutStats(), st = e.getValue();
+                copy.sessions = st.sessions; copy.totalSeconds = st.totalSeconds; copy.maxSeconds = st.maxSeconds;
+                byType.put(e.getKey(), copy);
+            }
+            return byType;
+        }
+
+        @Override
+        public synchronized void rebuildWorkoutStats(int uid) {
+            UserData d = find(uid);
+            if (d == null) return;
+            d.stats.clear();
+            d.all.sessions = 0; d.all.totalSeconds = 0; d.all.maxSeconds = 0;
+            for (int i = 0; i < d.workouts; i++) {
+                UserData.count(d.all, d.durations[i]);
+                UserData.count(d.stats.computeIfAbsent(d.types[i] == null ? "" : d.types[i], t -> new WorkoutStats()), d.durations[i]);
+            }
+        }
+
+        @Override
+        public synchronized int countWorkouts(int uid) {
+            UserData d = find(uid);
+            return d == null ? 0 : d.workouts;
+        }
+
+        @Override
+        public synchronized long getWorkoutIdAt(int uid, int offset) {
+            UserData d = find(uid);
+            if (d == null || offset < 0 || offset >= d.workouts) return -1;
+            return d.workoutIds[d.workouts - 1 - offset];
+        }
+
+        @Override
+        public synchronized WorkoutPage getWorkoutPage(int uid, long beforeId, int limit) {
+            WorkoutPage page = new WorkoutPage(limit);
+            UserData d = find(uid);
+            if (d == null) return page.truncate(0);
+            int n = 0;
+            for (int i = lowerBound(d.workoutIds, d.workouts, beforeId) - 1; i >= 0 && n < limit; i--, n++) {
+                page.ids[n] = d.workoutIds[i];
+                page.dates[n] = LocalDateTime.ofEpochSecond(d.workoutTimes[i], 0, ZoneOffset.UTC).format(STAMP);
+                page.types[n] = d.types[i]; page.seconds[n] = d.durations[i]; page.details[n] = d.details[i];
+            }
+            return page.truncate(n);
+        }
+
+        @Override
+        public synchronized int[] getWorkoutDurations(int uid) {
+            UserData d = find(uid);
+            return d == null ? new int[0] : Arrays.copyOf(d.durations, d.workouts);
+        }
+    }
+
+    // JMX view of one store operation, registered as fitpulse:type=Query,name=<operation>
+    public interface QueryStatsMBean {
+        long getCalls();
+        long getErrors();
+        long getRows();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP99Millis();
+        double getP999Millis();
+        double getMaxMillis();
+        void reset();
+    }
+
+    static class QueryStats implements QueryStatsMBean {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder(), rows = new LongAdder();
+
+        QueryStats(String name) { this.name = name; }
+
+        public long getCalls() { return latency.count(); }
+        public long getErrors() { return errors.sum(); }
+        public long getRows() { return rows.sum(); }
+        public double getMeanMillis() { return latency.meanNanos() / 1e6; }
+        public double getP50Millis() { return latency.percentile(0.50) / 1e6; }
+        public double getP99Millis() { return latency.percentile(0.99) / 1e6; }
+        public double getP999Millis() { return latency.percentile(0.999) / 1e6; }
+        public double getMaxMillis() { return latency.maxNanos() / 1e6; }
+        public void reset() { latency.reset(); errors.reset(); rows.reset(); }
+    }
+
+    // The stores catch their own SQL/IO errors and answer with an empty value, reporting each error here.
+    // attempt() runs a store call and says whether anything under it reported one, so a caller can tell an
+    // empty result from a failed call. Reads and synchronous writes do their I/O on the calling thread.
+    static final class StoreFailures {
+        private static final ThreadLocal<boolean[]> FAILED = ThreadLocal.withInitial(() -> new boolean[1]);
+
+        record Attempt<T>(T value, boolean failed) {}
+
+        private StoreFailures() {}
+
+        static void report(Exception e) {
+            e.printStackTrace();
+            FAILED.get()[0] = true;
+        }
+
+        // Nests: an enclosing attempt also sees the failures of the calls inside it
+        static <T> Attempt<T> attempt(Supplier<T> call) {
+            boolean[] failed = FAILED.get();
+            boolean outer = failed[0];
+            failed[0] = false;
+            try {
+                T value = call.get();
+                return new Attempt<>(value, failed[0]);
+            } finally {
+                failed[0] |= outer;
+            }
+        }
+    }
+
+    // Decorator that counts calls, errors and rows returned and keeps a latency histogram for every
+    // store operation. The numbers are published over JMX and, when a dump file is given, appended to
+    // it as CSV every interval, so a query that slows down as the tables grow shows up over time.
+    static class InstrumentedStore implements TrackerStore {
+        private final TrackerStore store;
+        private final Map<String, QueryStats> stats = new LinkedHashMap<>();
+        private final QueryStats register = op("register"), login = op("login"), updateUser = op("updateUser");
+        private final QueryStats logWorkout = op("logWorkout"), logMeal = op("logMeal"), deleteMeal = op("deleteMeal");
+        private final QueryStats importWorkouts = op("importWorkouts"), importMeals = op("importMeals");
+        private final QueryStats dailyRollups = op("getDailyRollups"), todayRollup = op("getTodayRollup"), todayProtein = op("getTodayProtein");
+        private final QueryStats score = op("getScore"), streakSummary = op("getStreakSummary"), streakDays = op("getStreakDays");
+        private final QueryStats todayMeals = op("getTodayMeals"), workoutHistory = op("getWorkoutHistory"), scanWorkouts = op("forEachWorkout");
+        private final QueryStats workoutStats = op("getWorkoutStats"), workoutStatsByType = op("getWorkoutStatsByType");
+        private final QueryStats rebuildStats = op("rebuildWorkoutStats"), durations = op("getWorkoutDurations");
+        private final QueryStats countWorkouts = op("countWorkouts"), workoutIdAt = op("getWorkoutIdAt"), workoutPage = op("getWorkoutPage");
+        private final Path dumpFile;
+        // Writes land after the call returns; their stats come from writeDone instead
+        private final boolean writeBehind;
+        private Thread dumper;
+        private volatile boolean closed;
+
+        // dumpFile may be null for JMX only
+        InstrumentedStore(TrackerStore store, Path dumpFile, long dumpIntervalMs) {
+            this.store = store;
+            this.dumpFile = dumpFile;
+            writeBehind = store.observeWrites(this::writeDone);
+            publish();
+            if (dumpFile != null) {
+                dumper = new Thread(() -> dumpLoop(dumpIntervalMs), "metrics-dump");
+                dumper.setDaemon(true);
+                dumper.start();
+            }
+        }
+
+        private QueryStats op(String name) {
+            QueryStats s = new QueryStats(name);
+            stats.put(name, s);
+            return s;
+        }
+
+        Map<String, QueryStats> stats() { return stats; }
+
+        private static ObjectName objectName(QueryStats s) throws MalformedObjectNameException {
+            return new ObjectName("fitpulse:type=Query,name=" + s.name);
+        }
+
+        private void publish() {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (QueryStats s : stats.values()) {
+                try {
+                    ObjectName name = objectName(s);
+                    // The newest store in the JVM takes the names over
+                    if (server.isRegistered(name)) server.unregisterMBean(name);
+                    server.registerMBean(s, name);
+                } catch (JMException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void unpublish() {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (QueryStats s : stats.values()) {
+                try {
+                    ObjectName name = objectName(s);
+                    if (server.isRegistered(name)) server.unregisterMBean(name);
+                } catch (JMException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void dumpLoop(long intervalMs) {
+            while (!closed) {
+                try {
+                    Thread.sleep(intervalMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                dump();
+            }
+        }
+
+        // Appends one CSV line per operation that has been called, totals since start
+        void dump() {
+            StringBuilder sb = new StringBuilder();
+            if (!Files.exists(dumpFile)) sb.append("time,operation,calls,errors,rows,mean_ms,p50_ms,p99_ms,p999_ms,max_ms\n");
+            String now = LocalDateTime.now().withNano(0).toString();
+            for (QueryStats s : stats.values()) {
+                if (s.getCalls() == 0) continue;
+                sb.append(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n", now, s.name, s.getCalls(), s.getErrors(),
+                        s.getRows(), s.getMeanMillis(), s.getP50Millis(), s.getP99Millis(), s.getP999Millis(), s.getMaxMillis()));
+            }
+            try {
+                Files.writeString(dumpFile, sb, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private <T> T time(QueryStats op, Supplier<T> call, ToIntFunction<T> rows) {
+            return time(op, call, rows, r -> false);
+        }
+
+        // incomplete marks a result as an error even though the store reported nothing; one error per call either way
+        private <T> T time(QueryStats op, Supplier<T> call, ToIntFunction<T> rows, Predicate<T> incomplete) {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                StoreFailures.Attempt<T> result = StoreFailures.attempt(call);
+                op.rows.add(rows.applyAsInt(result.value()));
+                failed = result.failed() || incomplete.test(result.value());
+                return result.value();
+            } finally {
+                op.latency.record(System.nanoTime() - start);
+                if (failed) op.errors.increment();
+            }
+        }
+
+        private void run(QueryStats op, int rows, Runnable call) {
+            time(op, () -> { call.run(); return null; }, r -> rows);
+        }
+
+        // A batch that was only partly stored counts as an error
+        private int imported(QueryStats op, int size, Supplier<Integer> call) {
+            return time(op, call, n -> n, n -> n < size);
+        }
+
+        // Timing only the enqueue would hide the commit and never see its failures
+        private void write(QueryStats op, Runnable call) {
+            if (writeBehind) call.run();
+            else run(op, 1, call);
+        }
+
+        // From queue to commit (or to being dropped), under the same name as the call
+        private void writeDone(String name, int uid, long nanos, Exception failure) {
+            QueryStats op = stats.get(name);
+            if (op == null) return;
+            op.latency.record(nanos);
+            if (failure != null) op.errors.increment();
+            else op.rows.increment();
+        }
+
+        private static int size(Collection<?> c) { return c == null ? 0 : c.size(); }
+
+        @Override public void initTables() { store.initTables(); }
+
+        @Override
+        public void close() {
+            closed = true;
+            if (dumper != null) {
+                dumper.interrupt();
+                try { dumper.join(5000); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+            store.close();
+            if (dumpFile != null) dump();
+            unpublish();
+        }
+
+        @Override
+        public boolean register(String u, String p, String n, int a, double h, double w, double gw) {
+            return time(register, () -> store.register(u, p, n, a, h, w, gw), ok -> ok ? 1 : 0);
+        }
+
+        @Override public User login(String u, String p) { return time(login, () -> store.login(u, p), user -> user == null ? 0 : 1); }
+        @Override public EventBus events() { return store.events(); }
+        @Override public BackupSource backupSource() { return store.backupSource(); }
+        @Override public boolean observeWrites(WriteObserver observer) { return store.observeWrites(observer); }
+        @Override public void updateUser(User u) { run(updateUser, 1, () -> store.updateUser(u)); }
+
+        @Override public void logWorkout(int uid, String t, int s, String d) { write(logWorkout, () -> store.logWorkout(uid, t, s, d)); }
+        @Override public void logWorkout(int uid, String t, int s) { write(logWorkout, () -> store.logWorkout(uid, t, s)); }
+
+        @Override
+        public void logMeal(int uid, String f, double p, double carbs, double fat, double cals) {
+            write(logMeal, () -> store.logMeal(uid, f, p, carbs, fat, cals));
+        }
+
+        @Override public void logMeal(int uid, String f, double p, double cals) { write(logMeal, () -> store.logMeal(uid, f, p, cals)); }
+        @Override public void deleteMeal(int uid, int mealId) { write(deleteMeal, () -> store.deleteMeal(uid, mealId)); }
+        @Override public int importWorkouts(List<WorkoutEntry> batch) { return imported(importWorkouts, batch.size(), () -> store.importWorkouts(batch)); }
+        @Override public int importMeals(List<MealEntry> batch) { return imported(importMeals, batch.size(), () -> store.importMeals(batch)); }
+
+        @Override
+        public List<DailyRollup> getDailyRollups(int uid, LocalDate from, LocalDate to) {
+            return time(dailyRollups, () -> store.getDailyRollups(uid, from, to), InstrumentedStore::size);
+        }
+
+        @Override public DailyRollup getTodayRollup(int uid) { return time(todayRollup, () -> store.getTodayRollup(uid), r -> 1); }
+        @Override public double getTodayProtein(int uid) { return time(todayProtein, () -> store.getTodayProtein(uid), r -> 1); }
+        @Override public int getScore(int uid) { return time(score, () -> store.getScore(uid), r -> 1); }
+        @Override public StreakSummary getStreakSummary(int uid) { return time(streakSummary, () -> store.getStreakSummary(uid), r -> 1); }
+        @Override public int getStreakDays(int uid) { return time(streakDays, () -> store.getStreakDays(uid), r -> 1); }
+        @Override public List<MealRow> getTodayMeals(int uid) { return time(todayMeals, () -> store.getTodayMeals(uid), InstrumentedStore::size); }
+        @Override public List<WorkoutRow> getWorkoutHistory(int uid) { return time(workoutHistory, () -> store.getWorkoutHistory(uid), InstrumentedStore::size); }
+
+        // The time includes whatever the sink does with each row
+        @Override
+        public void forEachWorkout(int uid, Predicate<? super WorkoutRow> sink) {
+            int[] rows = {0};
+            time(scanWorkouts, () -> { store.forEachWorkout(uid, w -> { rows[0]++; return sink.test(w); }); return rows; }, r -> r[0]);
+        }
+        @Override public WorkoutStats getWorkoutStats(int uid) { return time(workoutStats, () -> store.getWorkoutStats(uid), r -> 1); }
+
+        @Override
+        public WorkoutStats getWorkoutStats(int uid, String exerciseType) {
+            return time(workoutStats, () -> store.getWorkoutStats(uid, exerciseType), r -> 1);
+        }
+
+        @Override
+        public Map<String, WorkoutStats> getWorkoutStatsByType(int uid) {
+            return time(workoutStatsByType, () -> store.getWorkoutStatsByType(uid), m -> m == null ? 0 : m.size());
+        }
+
+        @Override public void rebuildWorkoutStats(int uid) { run(rebuildStats, 0, () -> store.rebuildWorkoutStats(uid)); }
+        @Override public int[] getWorkoutDurations(int uid) { return time(durations, () -> store.getWorkoutDurations(uid), r -> r.length); }
+
+        @Override public int countWorkouts(int uid) { return time(countWorkouts, () -> store.countWorkouts(uid), r -> 1); }
+        @Override public long getWorkoutIdAt(int uid, int offset) { return time(workoutIdAt, () -> store.getWorkoutIdAt(uid, offset), id -> id < 0 ? 0 : 1); }
+
+        @Override
+        public WorkoutPage getWorkoutPage(int uid, long beforeId, int limit) {
+            return time(workoutPage, () -> store.getWorkoutPage(uid, beforeId, limit), page -> page == null ? 0 : page.size);
+        }
+    }
+
+    // JMX view of the dashboard cache, registered as fitpulse:type=Cache
+    public interface CachingStoreMBean {
+        long getHits();
+        long getMisses();
+        int getCachedUsers();
+        void clear();
+    }
+
+    // Read-through cache in front of a store: every read is remembered per user until a write that can
+    // change it. Entries are tagged with what they depend on (meals, workouts, profile, today's date), so a
+    // logged meal drops the meal-derived results but keeps the workout history, and "today" results
+    // expire at midnight. At most MAX_ENTRIES results per user and maxUsers users are kept (LRU).
+    static class CachingStore implements TrackerStore, CachingStoreMBean {
+        private static final int MEALS = 1, WORKOUTS = 2, PROFILE = 4, TODAY = 8;
+        private static final int MAX_ENTRIES = 64;
+
+        private record Entry(Object value, int deps, long day) {}
+
+        private static final class UserCache extends LinkedHashMap<String, Entry> {
+            long version;
+            UserCache(long version) { super(16, 0.75f, true); this.version = version; }
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) { return size() > MAX_ENTRIES; }
+        }
+
+        private final TrackerStore store;
+        private final LinkedHashMap<Integer, UserCache> users;
+        // Bumped by every invalidation; a read only fills the cache if its user's version did not move meanwhile
+        private long versions;
+        private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+        // Backend events are re-published only after the entries they touch are dropped,
+        // so a subscriber that reads back never gets the cached value from before the write
+        private final EventBus events = new EventBus();
+        private ObjectName mbean;
+
+        CachingStore(TrackerStore store, int maxUsers) {
+            this.store = store;
+            this.users = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override protected boolean removeEldestEntry(Map.Entry<Integer, UserCache> eldest) { return size() > maxUsers; }
+            };
+            store.events().subscribe(DomainEvent.class, e -> {
+                invalidate(e.userId(), switch (e) {
+                    case MealLogged m -> MEALS;
+                    case MealDeleted m -> MEALS;
+                    case WorkoutLogged w -> WORKOUTS;
+                    case WorkoutsImported w -> WORKOUTS;
+                    case WriteFailed f -> 0; // nothing was stored
+                    default -> PROFILE;
+                });
+                events.publish(e);
+            });
+            try {
+                mbean = new ObjectName("fitpulse:type=Cache");
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(mbean)) server.unregisterMBean(mbean);
+                server.registerMBean(this, mbean);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+
+        public long getHits() { return hits.sum(); }
+        public long getMisses() { return misses.sum(); }
+        public synchronized int getCachedUsers() { return users.size(); }
+        public synchronized void clear() { users.clear(); versions++; }
+
+        @SuppressWarnings("unchecked")
+        private <T> T cached(int uid, String key, int deps, Supplier<T> load) {
+            long day = (deps & TODAY) != 0 ? LocalDate.now().toEpochDay() : 0;
+            long version;
+            synchronized (this) {
+                UserCache cache = users.get(uid);
+                if (cache == null) users.put(uid, cache = new UserCache(++versions));
+                Entry e = cache.get(key);
+                if (e != null && e.day() == day) {
+                    hits.increment();
+                    return (T) e.value();
+                }
+                version = cache.version;
+            }
+            misses.increment();
+            StoreFailures.Attempt<T> loaded = StoreFailures.attempt(load);
+            T value = loaded.value();
+            // An empty result from a failed call is not worth keeping
+            if (value == null || loaded.failed()) return value;
+            synchronized (this) {
+                UserCache cache = users.get(uid);
+                if (cache != null && cache.version == version) cache.put(key, new Entry(value, deps, day));
+            }
+            return value;
+        }
+
+        private synchronized void invalidate(int uid, int deps) {
+            UserCache cache = users.get(uid);
+            if (cache == null) return;
+            cache.version = ++versions;
+            cache.values().removeIf(e -> (e.deps() & deps) != 0);
+        }
+
+        @Override public void initTables() { store.initTables(); }
+
+        @Override
+        public void close() {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbean);
+            } catch (JMException | NullPointerException e) {
+                // never registered
+            }
+            store.close();
+        }
+
+        @Override public boolean register(String u, String p, String n, int a, double h, double w, double gw) { return store.register(u, p, n, a, h, w, gw); }
+        @Override public User login(String u, String p) { return store.login(u, p); }
+        @Override public EventBus events() { return events; }
+        @Override public BackupSource backupSource() { return store.backupSource(); }
+        @Override public boolean observeWrites(WriteObserver observer) { return store.observeWrites(observer); }
+        @Override public void updateUser(User u) { store.updateUser(u); invalidate(u.id, PROFILE); }
+
+        @Override public void logWorkout(int uid, String t, int s, String d) { store.logWorkout(uid, t, s, d); invalidate(uid, WORKOUTS); }
+        @Override public void logWorkout(int uid, String t, int s) { store.logWorkout(uid, t, s); invalidate(uid, WORKOUTS); }
+
+        @Override
+        public void logMeal(int uid, String f, double p, double carbs, double fat, double cals) {
+            store.logMeal(uid, f, p, carbs, fat, cals);
+            invalidate(uid, MEALS);
+        }
+
+        @Override public void logMeal(int uid, String f, double p, double cals) { store.logMeal(uid, f, p, cals); invalidate(uid, MEALS); }
+
+        @Override public void deleteMeal(int uid, int mealId) { store.deleteMeal(uid, mealId); invalidate(uid, MEALS); }
+
+        @Override
+        public int importWorkouts(List<WorkoutEntry> batch) {
+            int written = store.importWorkouts(batch);
+            batch.stream().mapToInt(w -> w.userId).distinct().forEach(uid -> invalidate(uid, WORKOUTS));
+            return written;
+        }
+
+        @Override
+        public int importMeals(List<MealEntry> batch) {
+            int written = store.importMeals(batch);
+            batch.stream().mapToInt(m -> m.userId).distinct().forEach(uid -> invalidate(uid, MEALS));
+            return written;
+        }
+
+        // Lists and maps are copied on the way out so callers cannot change what is cached
+
+        @Override
+        public List<DailyRollup> getDailyRollups(int uid, LocalDate from, LocalDate to) {
+            return new ArrayList<>(cached(uid, "rollups:" + from + ":" + to, MEALS | WORKOUTS, () -> store.getDailyRollups(uid, from, to)));
+        }
+
+        @Override public DailyRollup getTodayRollup(int uid) { return cached(uid, "todayRollup", MEALS | WORKOUTS | TODAY, () -> store.getTodayRollup(uid)); }
+        @Override public double getTodayProtein(int uid) { return cached(uid, "todayProtein", MEALS | TODAY, () -> store.getTodayProtein(uid)); }
+        @Override public int getScore(int uid) { return cached(uid, "score", MEALS | WORKOUTS | PROFILE | TODAY, () -> store.getScore(uid)); }
+        @Override public StreakSummary getStreakSummary(int uid) { return cached(uid, "streak", WORKOUTS | TODAY, () -> store.getStreakSummary(uid)); }
+        @Override public int getStreakDays(int uid) { return cached(uid, "streakDays", WORKOUTS | TODAY, () -> store.getStreakDays(uid)); }
+        @Override public List<MealRow> getTodayMeals(int uid) { return new ArrayList<>(cached(uid, "todayMeals", MEALS | TODAY, () -> store.getTodayMeals(uid))); }
+        @Override public List<WorkoutRow> getWorkoutHistory(int uid) { return new ArrayList<>(cached(uid, "history", WORKOUTS, () -> store.getWorkoutHistory(uid))); }
+        // A scan is never cached: holding a whole history is what it exists to avoid
+        @Override public void forEachWorkout(int uid, Predicate<? super WorkoutRow> sink) { store.forEachWorkout(uid, sink); }
+        @Override public WorkoutStats getWorkoutStats(int uid) { return getWorkoutStats(uid, ALL_TYPES); }
+        @Override public WorkoutStats getWorkoutStats(int uid, String type) { return cached(uid, "stats:" + type, WORKOUTS, () -> store.getWorkoutStats(uid, type)); }
+
+        @Override
+        public Map<String, WorkoutStats> getWorkoutStatsByType(int uid) {
+            return new HashMap<>(cached(uid, "statsByType", WORKOUTS, () -> store.getWorkoutStatsByType(uid)));
+        }
+
+        @Override public void rebuildWorkoutStats(int uid) { store.rebuildWorkoutStats(uid); invalidate(uid, WORKOUTS); }
+        @Override public int[] getWorkoutDurations(int uid) { return cached(uid, "durations", WORKOUTS, () -> store.getWorkoutDurations(uid)).clone(); }
+
+        @Override public int countWorkouts(int uid) { return cached(uid, "count", WORKOUTS, () -> store.countWorkouts(uid)); }
+        @Override public long getWorkoutIdAt(int uid, int offset) { return cached(uid, "idAt:" + offset, WORKOUTS, () -> store.getWorkoutIdAt(uid, offset)); }
+
+        @Override
+        public WorkoutPage getWorkoutPage(int uid, long beforeId, int limit) {
+            return cached(uid, "page:" + beforeId + ":" + limit, WORKOUTS, () -> store.getWorkoutPage(uid, beforeId, limit));
+        }
+    }
+
+    // Just enough JSON for the HTTP API: objects parse to LinkedHashMap, arrays to ArrayList, numbers
+    // to Long or Double. The tracker types are converted field by field in both directions.
+    static final class Json {
+        // Deeper input is rejected rather than recursed into until the stack runs out
+        private static final int MAX_DEPTH = 64;
+
+        private final String text;
+        private int pos;
+        private int depth;
+
+        private Json(String text) { this.text = text; }
+
+        static Object parse(String text) {
+            Json p = new Json(text);
+            Object value = p.value();
+            p.skipSpace();
+            if (p.pos != text.length()) throw p.error("trailing characters");
+            return value;
+        }
+
+        private IllegalArgumentException error(String what) { return new IllegalArgumentException("Bad JSON at " + pos + ": " + what); }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        private boolean take(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) { pos++; return true; }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!take(c)) throw error("expected '" + c + "'");
+        }
+
+        private Object value() {
+            skipSpace();
+            if (pos >= text.length()) throw error("unexpected end");
+            char c = text.charAt(pos);
+            if (c == '{') {
+                nest();
+                Map<String, Object> map = new LinkedHashMap<>();
+                if (!take('}')) {
+                    do {
+                        skipSpace();
+                        String key = string();
+                        expect(':');
+                        map.put(key, value());
+                    } while (take(','));
+                    expect('}');
+                }
+                depth--;
+                return map;
+            }
+            if (c == '[') {
+                nest();
+                List<Object> list = new ArrayList<>();
+                if (!take(']')) {
+                    do list.add(value()); while (take(','));
+                    expect(']');
+                }
+                depth--;
+                return list;
+            }
+            if (c == '"') return string();
+            if (text.startsWith("true", pos)) { pos += 4; return Boolean.TRUE; }
+            if (text.startsWith("false", pos)) { pos += 5; return Boolean.FALSE; }
+            if (text.startsWith("null", pos)) { pos += 4; return null; }
+            int start = pos;
+            boolean decimal = false;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                decimal |= ".eE".indexOf(text.charAt(pos)) >= 0;
+                pos++;
+            }
+            if (start == pos) throw error("unexpected '" + c + "'");
+            String number = text.substring(start, pos);
+            return decimal ? (Object) Double.parseDouble(number) : (Object) Long.parseLong(number);
+        }
+
+        private void nest() {
+            if (++depth > MAX_DEPTH) throw error("nested more than " + MAX_DEPTH + " deep");
+            pos++;
+        }
+
+        private String string() {
+            if (pos >= text.length() || text.charAt(pos) != '"') throw error("expected a string");
+            StringBuilder sb = new StringBuilder();
+            for (pos++; pos < text.length(); pos++) {
+                char c = text.charAt(pos);
+                if (c == '"') { pos++; return sb.toString(); }
+                if (c != '\\') { sb.append(c); continue; }
+                if (++pos >= text.length()) break;
+                switch (text.charAt(pos)) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case 'r' -> sb.append('\r');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 >= text.length()) throw error("short \\u escape");
+                        sb.append((char) Integer.parseInt(text.substring(pos + 1, pos + 5), 16));
+                        pos += 4;
+                    }
+                    default -> sb.append(text.charAt(pos));
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        static String write(Object value) {
+            StringBuilder sb = new StringBuilder();
+            write(sb, value);
+            return sb.toString();
+        }
+
+        private static void write(StringBuilder sb, Object v) {
+            if (v == null) sb.append("null");
+            else if (v instanceof String s) quote(sb, s);
+            else if (v instanceof Double d && (d.isNaN() || d.isInfinite())) sb.append("null");
+            else if (v instanceof Number || v instanceof Boolean) sb.append(v);
+            else if (v instanceof Map<?, ?> map) {
+                sb.append('{');
+                boolean first = true;
+                for (Map.Entry<?, ?> e : map.entrySet()) {
+                    if (!first) sb.append(',');
+                    first = false;
+                    quote(sb, String.valueOf(e.getKey()));
+                    sb.append(':');
+                    write(sb, e.getValue());
+                }
+                sb.append('}');
+            } else if (v instanceof Collection<?> list) {
+                sb.append('[');
+                boolean first = true;
+                for (Object item : list) {
+                    if (!first) sb.append(',');
+                    first = false;
+                    write(sb, item);
+                }
+                sb.append(']');
+            } else if (v.getClass().isArray()) {
+                sb.append('[');
+                for (int i = 0, n = java.lang.reflect.Array.getLength(v); i < n; i++) {
+                    if (i > 0) sb.append(',');
+                    write(sb, java.lang.reflect.Array.get(v, i));
+                }
+                sb.append(']');
+            } else quote(sb, v.toString());
+        }
+
+        private static void quote(StringBuilder sb, String s) {
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                    }
+                }
+            }
+            sb.append('"');
+        }
+
+        // ---- field access ----
+
+        @SuppressWarnings("unchecked")
+        static Map<String, Object> map(Object o) { return (Map<String, Object>) o; }
+        @SuppressWarnings("unchecked")
+        static List<Object> list(Object o) { return o == null ? List.of() : (List<Object>) o; }
+        static int i(Map<String, Object> m, String k) { return ((Number) m.get(k)).intValue(); }
+        static long l(Map<String, Object> m, String k) { return ((Number) m.get(k)).longValue(); }
+        static double d(Map<String, Object> m, String k) { Object v = m.get(k); return v == null ? 0 : ((Number) v).doubleValue(); }
+        static String s(Map<String, Object> m, String k) { Object v = m.get(k); return v == null ? null : v.toString(); }
+
+        // ---- tracker types ----
+
+        static Map<String, Object> of(User u) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", u.id); m.put("username", u.username); m.put("name", u.name); m.put("age", u.age);
+            m.put("height", u.height); m.put("weight", u.weight); m.put("goalWeight", u.goalWeight);
+            return m;
+        }
+
+        static User user(Object o) {
+            Map<String, Object> m = map(o);
+            User u = new User();
+            u.id = i(m, "id"); u.username = s(m, "username"); u.name = s(m, "name"); u.age = i(m, "age");
+            u.height = d(m, "height"); u.weight = d(m, "weight"); u.goalWeight = d(m, "goalWeight");
+            return u;
+        }
+
+        static Map<String, Object> of(DailyRollup r) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("day", r.day); m.put("protein", r.protein); m.put("carbs", r.carbs); m.put("fat", r.fat);
+            m.put("calories", r.calories); m.put("workoutSeconds", r.workoutSeconds); m.put("sessions", r.sessions);
+            return m;
+        }
+
+        static DailyRollup rollup(Object o) {
+            Map<String, Object> m = map(o);
+            DailyRollup r = new DailyRollup();
+            r.day = s(m, "day"); r.protein = d(m, "protein"); r.carbs = d(m, "carbs"); r.fat = d(m, "fat");
+            r.calories = d(m, "calories"); r.workoutSeconds = i(m, "workoutSeconds"); r.sessions = i(m, "sessions");
+            return r;
+        }
+
+        static Map<String, Object> of(StreakSummary s) {
+            return Map.of("current", s.current, "longest", s.longest, "last30Days", s.last30Days, "totalActiveDays", s.totalActiveDays);
+        }
+
+        static StreakSummary streak(Object o) {
+            Map<String, Object> m = map(o);
+            StreakSummary s = new StreakSummary();
+            s.current = i(m, "current"); s.longest = i(m, "longest"); s.last30Days = i(m, "last30Days"); s.totalActiveDays = i(m, "totalActiveDays");
+            return s;
+        }
+
+        static Map<String, Object> of(WorkoutStats s) {
+            return Map.of("sessions", s.sessions, "totalSeconds", s.totalSeconds, "maxSeconds", s.maxSeconds);
+        }
+
+        static WorkoutStats stats(Object o) {
+            Map<String, Object> m = map(o);
+            WorkoutStats s = new WorkoutStats();
+            s.sessions = i(m, "sessions"); s.totalSeconds = l(m, "totalSeconds"); s.maxSeconds = i(m, "maxSeconds");
+            return s;
+        }
+
+        static Map<String, Object> of(WorkoutPage p) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("ids", Arrays.copyOf(p.ids, p.size)); m.put("dates", Arrays.copyOf(p.dates, p.size));
+            m.put("types", Arrays.copyOf(p.types, p.size)); m.put("seconds", Arrays.copyOf(p.seconds, p.size));
+            m.put("details", Arrays.copyOf(p.details, p.size));
+            return m;
+        }
+
+        static WorkoutPage page(Object o) {
+            Map<String, Object> m = map(o);
+            List<Object> ids = list(m.get("ids")), dates = list(m.get("dates")), types = list(m.get("types"));
+            List<Object> seconds = list(m.get("seconds")), details = list(m.get("details"));
+            WorkoutPage page = new WorkoutPage(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                page.ids[i] = ((Number) ids.get(i)).longValue(); page.dates[i] = (String) dates.get(i); page.types[i] = (String) types.get(i);
+                page.seconds[i] = ((Number) seconds.get(i)).intValue(); page.details[i] = (String) details.get(i);
+            }
+            return page.truncate(ids.size());
+        }
+
+        static Map<String, Object> of(MealRow m) {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("id", m.id()); out.put("food", m.food()); out.put("protein", m.protein()); out.put("calories", m.calories());
+            return out;
+        }
 
-    // [CO5] Inheritance: Creating a custom button component
-    static class ModernButton extends JButton {
-        private Color normalColor;
-        private Color hoverColor;
+        static MealRow mealRow(Object o) {
+            Map<String, Object> m = map(o);
+            return new MealRow(i(m, "id"), s(m, "food"), d(m, "protein"), d(m, "calories"));
+        }
 
-        // [CO5] Method Overloading: Constructor 1 (Standard)
-        public ModernButton(String text, Color normal, Color hover) {
-            super(text);
-            this.normalColor = normal;
-            this.hoverColor = hover;
-            initButton();
+        static Map<String, Object> of(WorkoutRow w) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", w.id()); m.put("date", w.date()); m.put("type", w.type()); m.put("seconds", w.seconds()); m.put("details", w.details());
+            return m;
         }
 
-        // [CO5] Method Overloading: Constructor 2 (Simplified, uses default blue)
-        public ModernButton(String text) {
-            super(text);
-            this.normalColor = new Color(52, 152, 219); // Default Blue
-            this.hoverColor = new Color(41, 128, 185);
-            initButton();
+        static WorkoutRow workoutRow(Object o) {
+            Map<String, Object> m = map(o);
+            return new WorkoutRow(l(m, "id"), s(m, "date"), s(m, "type"), i(m, "seconds"), s(m, "details"));
         }
 
-        private void initButton() {
-            setBackground(normalColor);
-            setForeground(Color.WHITE);
-            setFont(new Font("Segoe UI", Font.BOLD, 14));
-            setFocusPainted(false);
-            setBorderPainted(false);
-            setCursor(new Cursor(Cursor.HAND_CURSOR));
-            setContentAreaFilled(false);
-            setOpaque(true);
+        static Map<String, Object> of(WorkoutEntry w) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("userId", w.userId); m.put("at", w.at.toString()); m.put("type", w.type); m.put("seconds", w.seconds); m.put("details", w.details);
+            return m;
+        }
 
-            addMouseListener(new MouseAdapter() {
-                public void mouseEntered(MouseEvent e) { setBackground(hoverColor); }
-                public void mouseExited(MouseEvent e) { setBackground(normalColor); }
-            });
+        static WorkoutEntry workoutEntry(Object o) {
+            Map<String, Object> m = map(o);
+            return new WorkoutEntry(i(m, "userId"), LocalDateTime.parse(s(m, "at")), s(m, "type"), i(m, "seconds"), s(m, "details"));
         }
 
-        @Override
-        protected void paintComponent(Graphics g) {
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.setColor(getBackground());
-            g2.fillRoundRect(0, 0, getWidth(), getHeight(), 15, 15);
-            super.paintComponent(g2);
-            g2.dispose();
+        static Map<String, Object> of(MealEntry e) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("userId", e.userId); m.put("day", e.day.toString()); m.put("food", e.food); m.put("protein", e.protein);
+            m.put("carbs", e.carbs); m.put("fat", e.fat); m.put("calories", e.calories);
+            return m;
         }
-    }
 
-    static class ModernCard extends JPanel {
-        public ModernCard() {
-            setBackground(CARD_BG);
-            setBorder(new CompoundBorder(new LineBorder(new Color(220, 224, 228), 1), new EmptyBorder(25, 25, 25, 25)));
+        static MealEntry mealEntry(Object o) {
+            Map<String, Object> m = map(o);
+            return new MealEntry(i(m, "userId"), LocalDate.parse(s(m, "day")), s(m, "food"), d(m, "protein"), d(m, "carbs"), d(m, "fat"), d(m, "calories"));
         }
     }
 
-    static class SmoothProgressBar extends JProgressBar {
-        public SmoothProgressBar(int min, int max) {
-            super(min, max);
-            setUI(new BasicProgressBarUI() {
-                protected void paintDeterminate(Graphics g, JComponent c) {
-                    Graphics2D g2 = (Graphics2D) g;
-                    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                    int w = c.getWidth(); int h = c.getHeight();
-                    int fillW = (int) (w * getPercentComplete());
-                    g2.setColor(new Color(230, 230, 230));
-                    g2.fillRoundRect(0, 0, w, h, 10, 10);
-                    g2.setColor(ACCENT_COLOR);
-                    g2.fillRoundRect(0, 0, fillW, h, 10, 10);
-                }
-            });
-            setBorderPainted(false);
-            setBackground(Color.WHITE);
+    // Headless service mode (java FitnessTrackerApp --server [port] [address]): serves one store to many
+    // desktop clients as POST /api/<operation> with the arguments as a JSON object. Every request runs on
+    // its own virtual thread. Login returns a token; later calls must carry it ("Authorization: Bearer ...")
+    // and may only touch that user's data. Plain HTTP, so bind it to a trusted network only.
+    static class TrackerServer {
+        @FunctionalInterface
+        interface Op {
+            Object call(Map<String, Object> args, int sessionUid);
         }
-        public void setTargetValue(int target) {
-            setValue(target);
+
+        static class HttpError extends RuntimeException {
+            final int status;
+            HttpError(int status, String message) { super(message); this.status = status; }
         }
-    }
 
-    // [CO5] Abstract Class: Enforcing 'refreshData' implementation in all subclasses
-    abstract static class BasePanel extends JPanel {
-        abstract void refreshData();
-    }
+        // Room for a full import batch (5,000 rows) with plenty to spare
+        static final int MAX_BODY = 4 << 20;
 
-    // [CO4] Encapsulation: User entity with fields and methods
-    static class User {
-        int id; String username; String name; int age; double height; double weight; double goalWeight;
-        public int getProteinGoal() { return (int) Math.round(weight * 1.8); }
-    }
+        private final TrackerStore store;
+        private final HttpServer http;
+        private final Map<String, Op> ops = new HashMap<>();
+        private final Mac tokens;
 
-    // [CO4] Class and Object: Representing a food item
-    static class FoodItem {
-        double protein; double carbs; double fat; double calories;
-        public FoodItem(double p, double c, double f, double cal) {
-            this.protein = p; this.carbs = c; this.fat = f; this.calories = cal;
+        TrackerServer(TrackerStore store, InetSocketAddress address) throws IOException {
+            this.store = store;
+            try {
+                // Tokens are HMACs of the user id under a key that lives as long as the server does
+                byte[] key = new byte[32];
+                new SecureRandom().nextBytes(key);
+                tokens = Mac.getInstance("HmacSHA256");
+                tokens.init(new SecretKeySpec(key, "HmacSHA256"));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            http = HttpServer.create(address, 1024);
+            http.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            http.createContext("/api/", this::handle);
+            register();
         }
-    }
 
-    static class DataUtils {
-        // [CO3] Recursion: Method to calculate streak score recursively
-        public static int recursiveStreakScore(int days) {
-            if (days <= 0) return 0; // Base case
-            return 10 + recursiveStreakScore(days - 1); // Recursive call
+        void start() { http.start(); }
+
+        InetSocketAddress address() { return http.getAddress(); }
+
+        void stop() {
+            http.stop(1);
+            store.close();
+        }
+
+        private void register() {
+            ops.put("register", (a, uid) -> store.register(Json.s(a, "username"), Json.s(a, "password"), Json.s(a, "name"),
+                    Json.i(a, "age"), Json.d(a, "height"), Json.d(a, "weight"), Json.d(a, "goalWeight")));
+            ops.put("login", (a, uid) -> {
+                User u = store.login(Json.s(a, "username"), Json.s(a, "password"));
+                if (u == null) return null;
+                Map<String, Object> m = Json.of(u);
+                m.put("token", token(u.id));
+                return m;
+            });
+            ops.put("updateUser", (a, uid) -> {
+                User u = Json.user(a.get("user"));
+                own(uid, u.id);
+                store.updateUser(u);
+                return null;
+            });
+            ops.put("logWorkout", (a, uid) -> {
+                store.logWorkout(own(uid, Json.i(a, "uid")), Json.s(a, "type"), Json.i(a, "seconds"), Json.s(a, "details"));
+                return null;
+            });
+            ops.put("logMeal", (a, uid) -> {
+                store.logMeal(own(uid, Json.i(a, "uid")), Json.s(a, "food"), Json.d(a, "protein"), Json.d(a, "carbs"), Json.d(a, "fat"), Json.d(a, "calories"));
+                return null;
+            });
+            ops.put("deleteMeal", (a, uid) -> { store.deleteMeal(own(uid, Json.i(a, "uid")), Json.i(a, "mealId")); return null; });
+            ops.put("importWorkouts", (a, uid) -> {
+                List<WorkoutEntry> batch = new ArrayList<>();
+                for (Object o : Json.list(a.get("batch"))) batch.add(Json.workoutEntry(o));
+                for (WorkoutEntry w : batch) own(uid, w.userId);
+                return store.importWorkouts(batch);
+            });
+            ops.put("importMeals", (a, uid) -> {
+                List<MealEntry> batch = new ArrayList<>();
+                for (Object o : Json.list(a.get("batch"))) batch.add(Json.mealEntry(o));
+                for (MealEntry m : batch) own(uid, m.userId);
+                return store.importMeals(batch);
+            });
+            ops.put("getDailyRollups", (a, uid) -> store.getDailyRollups(own(uid, Json.i(a, "uid")), LocalDate.parse(Json.s(a, "from")),
+                    LocalDate.parse(Json.s(a, "to"))).stream().map(Json::of).toList());
+            ops.put("getScore", (a, uid) -> store.getScore(own(uid, Json.i(a, "uid"))));
+            ops.put("getStreakSummary", (a, uid) -> Json.of(store.getStreakSummary(own(uid, Json.i(a, "uid")))));
+            ops.put("getTodayMeals", (a, uid) -> store.getTodayMeals(own(uid, Json.i(a, "uid"))).stream().map(Json::of).toList());
+            ops.put("getWorkoutHistory", (a, uid) -> store.getWorkoutHistory(own(uid, Json.i(a, "uid"))).stream().map(Json::of).toList());
+            ops.put("getWorkoutStats", (a, uid) -> Json.of(store.getWorkoutStats(own(uid, Json.i(a, "uid")), Json.s(a, "type"))));
+            ops.put("getWorkoutStatsByType", (a, uid) -> {
+                Map<String, Object> m = new LinkedHashMap<>();
+                store.getWorkoutStatsByType(own(uid, Json.i(a, "uid"))).forEach((type, s) -> m.put(type, Json.of(s)));
+                return m;
+            });
+            ops.put("rebuildWorkoutStats", (a, uid) -> { store.rebuildWorkoutStats(own(uid, Json.i(a, "uid"))); return null; });
+            ops.put("getWorkoutDurations", (a, uid) -> store.getWorkoutDurations(own(uid, Json.i(a, "uid"))));
+            ops.put("countWorkouts", (a, uid) -> store.countWorkouts(own(uid, Json.i(a, "uid"))));
+            ops.put("getWorkoutIdAt", (a, uid) -> store.getWorkoutIdAt(own(uid, Json.i(a, "uid")), Json.i(a, "offset")));
+            ops.put("getWorkoutPage", (a, uid) -> {
+                WorkoutPage page = store.getWorkoutPage(own(uid, Json.i(a, "uid")), Json.l(a, "beforeId"), Math.min(Json.i(a, "limit"), 1000));
+                return page == null ? null : Json.of(page);
+            });
         }
 
-        // [CO2] Algorithm: Sorting logic using 1D Arrays (Bubble Sort)
-        public static int getLongestWorkoutDuration(ArrayList<Integer> durationsList) {
-            int[] arr = new int[durationsList.size()];
-            for (int i = 0; i < durationsList.size(); i++) {
-                arr[i] = durationsList.get(i);
+        private String token(int uid) {
+            byte[] mac;
+            synchronized (tokens) {
+                mac = tokens.doFinal(Integer.toString(uid).getBytes(StandardCharsets.UTF_8));
             }
+            return uid + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(mac);
+        }
 
-            int n = arr.length;
-            if (n == 0) return 0;
-            for (int i = 0; i < n - 1; i++) {
-                for (int j = 0; j < n - i - 1; j++) {
-                    if (arr[j] > arr[j + 1]) {
-                        int temp = arr[j];
-                        arr[j] = arr[j + 1];
-                        arr[j + 1] = temp;
-                    }
+        // The user id the request's token was issued to, or -1 without a valid token
+        private int session(HttpExchange exchange) {
+            String header = exchange.getRequestHeaders().getFirst("Authorization");
+            if (header == null || !header.startsWith("Bearer ")) return -1;
+            String token = header.substring(7).trim();
+            int dot = token.indexOf('.');
+            if (dot <= 0) return -1;
+            try {
+                int uid = Integer.parseInt(token.substring(0, dot));
+                return MessageDigest.isEqual(token(uid).getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8)) ? uid : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        private static void signedIn(int sessionUid) {
+            if (sessionUid < 0) throw new HttpError(401, "Sign in first");
+        }
+
+        private static int own(int sessionUid, int uid) {
+            signedIn(sessionUid);
+            if (uid != sessionUid) throw new HttpError(403, "Not your data");
+            return uid;
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            int status = 200;
+            Object body;
+            try (exchange) {
+                try {
+                    if (!exchange.getRequestMethod().equals("POST")) throw new HttpError(405, "Use POST");
+                    Op op = ops.get(exchange.getRequestURI().getPath().substring("/api/".length()));
+                    if (op == null) throw new HttpError(404, "No such operation");
+                    String request = new String(body(exchange), StandardCharsets.UTF_8);
+                    Object args = request.isBlank() ? Map.of() : Json.parse(request);
+                    if (!(args instanceof Map)) throw new HttpError(400, "Arguments must be a JSON object");
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("result", op.call(Json.map(args), session(exchange)));
+                    body = result;
+                } catch (HttpError e) {
+                    status = e.status;
+                    body = Map.of("error", e.getMessage());
+                } catch (IllegalArgumentException | ClassCastException | NullPointerException | DateTimeParseException e) {
+                    status = 400;
+                    body = Map.of("error", "Bad arguments: " + e);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    status = 500;
+                    body = Map.of("error", "Internal error");
                 }
+                byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                exchange.getResponseBody().write(bytes);
             }
-            return arr[n - 1];
         }
 
-        // [CO6] Generics and Collections (Map)
-        public static Map<String, String[]> getExerciseMap() {
-            Map<String, String[]> map = new HashMap<>();
-            map.put("Legs", new String[]{"Barbell Squats", "Leg Press", "Lunges", "Calf Raises", "Leg Extensions", "Romanian Deadlift"});
-            map.put("Chest", new String[]{"Bench Press", "Incline Dumbbell Press", "Cable Flys", "Push-ups", "Dips", "Chest Press"});
-            map.put("Back", new String[]{"Deadlift", "Pull-Ups", "Lat Pulldown", "Barbell Rows", "Face Pulls", "Seated Cable Row"});
-            map.put("Arms", new String[]{"Bicep Curls", "Tricep Extensions", "Hammer Curls", "Skull Crushers", "Preacher Curls"});
-            map.put("Abs", new String[]{"Crunches", "Plank", "Leg Raises", "Russian Twists", "Bicycle Crunches"});
-            map.put("Shoulders", new String[]{"Overhead Press", "Lateral Raises", "Front Raises", "Shrugs", "Rear Delt Fly"});
-            map.put("Cardio", new String[]{"Treadmill Run", "Outdoor Run", "Cycling", "Elliptical", "Jump Rope", "Rowing", "Swimming", "Stair Climber"});
-            return map;
+        // Refuses a request body over MAX_BODY, whether announced in Content-Length or not
+        private static byte[] body(HttpExchange exchange) throws IOException {
+            String length = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (length != null && Long.parseLong(length.trim()) > MAX_BODY) throw new HttpError(413, "Request body over " + MAX_BODY + " bytes");
+            byte[] bytes = exchange.getRequestBody().readNBytes(MAX_BODY + 1);
+            if (bytes.length > MAX_BODY) throw new HttpError(413, "Request body over " + MAX_BODY + " bytes");
+            return bytes;
+        }
+
+        static void run(String[] args) throws IOException {
+            // Headers and body go out in separate writes; without this, Nagle plus delayed ACKs add ~40 ms a call
+            if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            String address = args.length > 2 ? args[2] : "127.0.0.1";
+            TrackerStore store = openStore();
+            store.initTables();
+            TrackerServer server = new TrackerServer(store, new InetSocketAddress(address, port));
+            Backups backups = Backups.schedule(store);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (backups != null) backups.stop();
+                server.stop();
+            }, "server-stop"));
+            server.start();
+            System.out.println("Serving the " + System.getProperty("fitpulse.store", "default") + " store on http://" + address + ":" + port
+                    + " (clients: -Dfitpulse.store=http://<this host>:" + port + ")");
         }
     }
 
-    class DatabaseHelper {
-        private static final String DB_URL = "jdbc:sqlite:fitness_tracker.db";
+    // Client side of TrackerServer: a TrackerStore whose calls go over HTTP. Errors are reported like
+    // the local stores report theirs, and the call returns an empty result.
+    static class RemoteStore implements TrackerStore {
+        private final URI base;
+        private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5)).build();
+        // Token per signed-in user; one client may act for several users (the load driver does)
+        private final Map<Integer, String> tokens = new ConcurrentHashMap<>();
+        // Only this client's own writes are announced; the server does not push. Ids are not
+        // sent back, so the events carry -1 and views that need the id reload instead.
+        private final EventBus events = new EventBus();
+
+        RemoteStore(URI base) { this.base = base.resolve("/api/"); }
+
+        private Object call(String op, String token, Object... keyValues) throws IOException, InterruptedException {
+            Map<String, Object> args = new LinkedHashMap<>();
+            for (int i = 0; i < keyValues.length; i += 2) args.put((String) keyValues[i], keyValues[i + 1]);
+            HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve(op)).timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(Json.write(args)));
+            if (token != null) request.header("Authorization", "Bearer " + token);
+            HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            if (response.statusCode() != 200) {
+                String error;
+                try {
+                    error = String.valueOf(Json.map(Json.parse(response.body())).get("error"));
+                } catch (RuntimeException e) {
+                    error = "(the reply is not from a Fitpulse server)";
+                }
+                throw new IOException(op + ": HTTP " + response.statusCode() + " " + error);
+            }
+            return Json.map(Json.parse(response.body())).get("result");
+        }
 
-        // [CO6] Robustness: Exception Handling (try-catch) and JDBC connection
-        private Connection connect() {
+        // Runs a call for uid's session (no session when uid < 0); on failure reports it and returns fallback.
+        // A reply that is not JSON (a proxy's error page, a cut-off body) or not the expected shape is a failure too.
+        private <T> T as(int uid, T fallback, String op, Function<Object, T> decode, Object... keyValues) {
             try {
-                Class.forName("org.sqlite.JDBC");
-                return DriverManager.getConnection(DB_URL);
-            } catch (Exception e) {
-                e.printStackTrace();
-                return null;
+                return decode.apply(call(op, uid < 0 ? null : tokens.get(uid), keyValues));
+            } catch (IOException | RuntimeException e) {
+                StoreFailures.report(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+            return fallback;
         }
 
-        public void initTables() {
-            try (Connection c = connect(); Statement s = c.createStatement()) {
-                s.execute("CREATE TABLE IF NOT EXISTS users (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT UNIQUE, password TEXT, name TEXT, age INTEGER, height REAL, weight REAL, goal_weight REAL)");
-                s.execute("CREATE TABLE IF NOT EXISTS workouts (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER, date TEXT, exercise_type TEXT, duration_seconds INTEGER, details TEXT)");
-                s.execute("CREATE TABLE IF NOT EXISTS meals (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER, date TEXT, food_name TEXT, protein REAL, calories REAL)");
-            } catch (SQLException e) { e.printStackTrace(); }
-        }
+        @Override public void initTables() {} // the server owns the schema
+        @Override public void close() { client.close(); }
+        @Override public EventBus events() { return events; }
 
+        @Override
         public boolean register(String u, String p, String n, int a, double h, double w, double gw) {
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("INSERT INTO users(username, password, name, age, height, weight, goal_weight) VALUES(?,?,?,?,?,?,?)")) {
-                ps.setString(1, u); ps.setString(2, p); ps.setString(3, n); ps.setInt(4, a); ps.setDouble(5, h); ps.setDouble(6, w); ps.setDouble(7, gw);
-                ps.executeUpdate(); return true;
-            } catch (SQLException e) { return false; }
+            return as(-1, false, "register", Boolean.TRUE::equals, "username", u, "password", p, "name", n, "age", a, "height", h, "weight", w, "goalWeight", gw);
         }
 
+        @Override
         public User login(String u, String p) {
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("SELECT * FROM users WHERE username=? AND password=?")) {
-                ps.setString(1, u); ps.setString(2, p); ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    User user = new User(); user.id = rs.getInt("id"); user.username = rs.getString("username"); user.name = rs.getString("name");
-                    user.age = rs.getInt("age"); user.height = rs.getDouble("height"); user.weight = rs.getDouble("weight"); user.goalWeight = rs.getDouble("goal_weight");
-                    return user;
-                }
-            } catch (SQLException e) { e.printStackTrace(); } return null;
+            return as(-1, null, "login", result -> {
+                if (result == null) return null;
+                User user = Json.user(result);
+                String token = Json.s(Json.map(result), "token");
+                tokens.put(user.id, token);
+                return user;
+            }, "username", u, "password", p);
         }
 
+        @Override
         public void updateUser(User u) {
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("UPDATE users SET name=?, age=?, height=?, weight=?, goal_weight=? WHERE id=?")) {
-                ps.setString(1, u.name); ps.setInt(2, u.age); ps.setDouble(3, u.height); ps.setDouble(4, u.weight); ps.setDouble(5, u.goalWeight); ps.setInt(6, u.id); ps.executeUpdate();
-            } catch (SQLException e) { e.printStackTrace(); }
+            if (as(u.id, false, "updateUser", r -> true, "user", Json.of(u))) events.publish(new ProfileUpdated(u.id, u.copy()));
         }
 
-        // [CO5] Method Overloading 1: Full Parameters
+        @Override
         public void logWorkout(int uid, String t, int s, String d) {
-            String dateNow = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("INSERT INTO workouts(user_id, date, exercise_type, duration_seconds, details) VALUES(?, ?, ?, ?, ?)")) {
-                ps.setInt(1, uid);
-                ps.setString(2, dateNow);
-                ps.setString(3, t);
-                ps.setInt(4, s);
-                ps.setString(5, d);
-                ps.executeUpdate();
-            } catch (SQLException e) { e.printStackTrace(); }
+            LocalDateTime at = LocalDateTime.now().withNano(0);
+            if (as(uid, false, "logWorkout", r -> true, "uid", uid, "type", t, "seconds", s, "details", d)) {
+                events.publish(new WorkoutLogged(uid, -1, at, t, s, d));
+            }
         }
 
-        // [CO5] Method Overloading 2: Simplified (Auto-generates details)
-        public void logWorkout(int uid, String t, int s) {
-            logWorkout(uid, t, s, "Quick Log - No Details Provided");
+        @Override public void logWorkout(int uid, String t, int s) { logWorkout(uid, t, s, "Quick Log - No Details Provided"); }
+
+        @Override
+        public void logMeal(int uid, String f, double p, double carbs, double fat, double cals) {
+            if (as(uid, false, "logMeal", r -> true, "uid", uid, "food", f, "protein", p, "carbs", carbs, "fat", fat, "calories", cals)) {
+                events.publish(new MealLogged(uid, -1, LocalDate.now(), f, p, carbs, fat, cals));
+            }
         }
 
-        public void logMeal(int uid, String f, double p, double cals) {
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("INSERT INTO meals(user_id, date, food_name, protein, calories) VALUES(?, date('now','localtime'), ?, ?, ?)")) {
-                ps.setInt(1, uid); ps.setString(2, f); ps.setDouble(3, p); ps.setDouble(4, cals); ps.executeUpdate();
-            } catch (SQLException e) { e.printStackTrace(); }
+        @Override public void logMeal(int uid, String f, double p, double cals) { logMeal(uid, f, p, 0, 0, cals); }
+        @Override
+        public void deleteMeal(int uid, int mealId) {
+            if (as(uid, false, "deleteMeal", r -> true, "uid", uid, "mealId", mealId)) events.publish(new MealDeleted(uid, mealId, null, 0, 0, 0, 0));
+        }
+
+        // The server only accepts a user's own rows, so a mixed batch goes out as one request per user,
+        // stopping at the first that is not fully stored
+        @Override
+        public int importWorkouts(List<WorkoutEntry> batch) {
+            Map<Integer, List<Object>> byUser = new LinkedHashMap<>();
+            for (WorkoutEntry w : batch) byUser.computeIfAbsent(w.userId, k -> new ArrayList<>()).add(Json.of(w));
+            return importByUser(byUser, "importWorkouts", (uid, n) -> events.publish(new WorkoutsImported(uid, n)));
         }
 
-        public void deleteMeal(int mealId) {
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("DELETE FROM meals WHERE id=?")) {
-                ps.setInt(1, mealId); ps.executeUpdate();
-            } catch (SQLException e) { e.printStackTrace(); }
+        @Override
+        public int importMeals(List<MealEntry> batch) {
+            Map<Integer, List<Object>> byUser = new LinkedHashMap<>();
+            for (MealEntry m : batch) byUser.computeIfAbsent(m.userId, k -> new ArrayList<>()).add(Json.of(m));
+            return importByUser(byUser, "importMeals", (uid, n) -> {});
         }
 
-        public int getStreakDays(int uid) {
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("SELECT COUNT(DISTINCT date(date)) as streak FROM workouts WHERE user_id=?")) {
-                ps.setInt(1, uid); ResultSet rs = ps.executeQuery(); if(rs.next()) return rs.getInt("streak");
-            } catch (SQLException e) { e.printStackTrace(); } return 0;
+        private int importByUser(Map<Integer, List<Object>> byUser, String op, BiConsumer<Integer, Integer> stored) {
+            int written = 0;
+            for (Map.Entry<Integer, List<Object>> e : byUser.entrySet()) {
+                int n = as(e.getKey(), 0, op, r -> ((Number) r).intValue(), "batch", e.getValue());
+                if (n > 0) stored.accept(e.getKey(), n);
+                written += n;
+                if (n < e.getValue().size()) break;
+            }
+            return written;
         }
 
-        public double getTodayProtein(int uid) {
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("SELECT SUM(protein) as total FROM meals WHERE user_id=? AND date=date('now','localtime')")) {
-                ps.setInt(1, uid); ResultSet rs = ps.executeQuery(); if(rs.next()) return rs.getDouble("total");
-            } catch (SQLException e) { e.printStackTrace(); } return 0.0;
+        @Override
+        public List<DailyRollup> getDailyRollups(int uid, LocalDate from, LocalDate to) {
+            return as(uid, List.of(), "getDailyRollups", r -> Json.list(r).stream().map(Json::rollup).toList(),
+                    "uid", uid, "from", from.toString(), "to", to.toString());
         }
 
-        public ArrayList<Object[]> getTodayMealsRaw(int uid) {
-            ArrayList<Object[]> list = new ArrayList<>();
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("SELECT id, food_name, protein, calories FROM meals WHERE user_id=? AND date=date('now','localtime')")) {
-                ps.setInt(1, uid); ResultSet rs = ps.executeQuery();
-                while(rs.next()) {
-                    list.add(new Object[]{rs.getInt("id"), rs.getString("food_name"), rs.getDouble("protein"), rs.getDouble("calories")});
-                }
-            } catch(SQLException e) { e.printStackTrace(); }
-            return list;
+        @Override public int getScore(int uid) { return as(uid, 0, "getScore", r -> ((Number) r).intValue(), "uid", uid); }
+        @Override public StreakSummary getStreakSummary(int uid) { return as(uid, new StreakSummary(), "getStreakSummary", Json::streak, "uid", uid); }
+
+        @Override
+        public List<MealRow> getTodayMeals(int uid) {
+            return as(uid, List.of(), "getTodayMeals", r -> Json.list(r).stream().map(Json::mealRow).toList(), "uid", uid);
         }
 
-        public ArrayList<Object[]> getWorkoutHistory(int uid) {
-            ArrayList<Object[]> list = new ArrayList<>();
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("SELECT date, exercise_type, duration_seconds, details FROM workouts WHERE user_id=? ORDER BY id DESC LIMIT 50")) {
-                ps.setInt(1, uid); ResultSet rs = ps.executeQuery();
-                while(rs.next()) {
-                    int seconds = rs.getInt("duration_seconds");
-                    String durStr = (seconds / 60) + "m " + (seconds % 60) + "s";
-                    list.add(new Object[]{rs.getString("date"), rs.getString("exercise_type"), durStr, rs.getString("details")});
-                }
-            } catch(SQLException e) {
-                e.printStackTrace();
-            }
-            return list;
+        // One call instead of a scan page, which would fetch ten times the rows
+        @Override
+        public List<WorkoutRow> getWorkoutHistory(int uid) {
+            return as(uid, List.of(), "getWorkoutHistory", r -> Json.list(r).stream().map(Json::workoutRow).toList(), "uid", uid);
         }
 
-        public ArrayList<Integer> getWorkoutDurations(int uid) {
-            ArrayList<Integer> list = new ArrayList<>();
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("SELECT duration_seconds FROM workouts WHERE user_id=?")) {
-                ps.setInt(1, uid); ResultSet rs = ps.executeQuery();
-                while(rs.next()) {
-                    list.add(rs.getInt("duration_seconds"));
-                }
-            } catch(SQLException e) { e.printStackTrace(); }
-            return list;
+        @Override
+        public WorkoutStats getWorkoutStats(int uid, String exerciseType) {
+            return as(uid, new WorkoutStats(), "getWorkoutStats", Json::stats, "uid", uid, "type", exerciseType);
+        }
+
+        @Override
+        public Map<String, WorkoutStats> getWorkoutStatsByType(int uid) {
+            return as(uid, new HashMap<>(), "getWorkoutStatsByType", r -> {
+                Map<String, WorkoutStats> byType = new HashMap<>();
+                Json.map(r).forEach((type, s) -> byType.put(type, Json.stats(s)));
+                return byType;
+            }, "uid", uid);
+        }
+
+        @Override public void rebuildWorkoutStats(int uid) { as(uid, null, "rebuildWorkoutStats", r -> null, "uid", uid); }
+
+        @Override
+        public int[] getWorkoutDurations(int uid) {
+            return as(uid, new int[0], "getWorkoutDurations", r -> Json.list(r).stream().mapToInt(o -> ((Number) o).intValue()).toArray(), "uid", uid);
+        }
+
+        @Override public int countWorkouts(int uid) { return as(uid, 0, "countWorkouts", r -> ((Number) r).intValue(), "uid", uid); }
+        @Override public long getWorkoutIdAt(int uid, int offset) { return as(uid, -1L, "getWorkoutIdAt", r -> ((Number) r).longValue(), "uid", uid, "offset", offset); }
+
+        @Override
+        public WorkoutPage getWorkoutPage(int uid, long beforeId, int limit) {
+            return as(uid, new WorkoutPage(0), "getWorkoutPage", r -> r == null ? new WorkoutPage(0) : Json.page(r),
+                    "uid", uid, "beforeId", beforeId, "limit", limit);
         }
     }
 
@@ -570,13 +6685,17 @@ public class FitnessTrackerApp extends JFrame {
 
             loginBtn.addActionListener(e -> {
                 String u = userField.getText(); String p = new String(passField.getPassword());
-                currentUser = dbHelper.login(u, p);
-                if (currentUser != null) {
-                    userField.setText(""); passField.setText("");
-                    homePanel.updateWelcome();
-                    setNavigationVisible(true);
-                    navigateTo(HOME_PANEL);
-                } else JOptionPane.showMessageDialog(this, "Invalid credentials", "Error", JOptionPane.ERROR_MESSAGE);
+                loginBtn.setEnabled(false);
+                asyncData.submit(() -> storeReady.join().login(u, p), user -> {
+                    loginBtn.setEnabled(true);
+                    currentUser = user;
+                    if (currentUser != null) {
+                        userField.setText(""); passField.setText("");
+                        setNavigationVisible(true);
+                        navigateTo(HOME_PANEL);
+                        warmUp();
+                    } else JOptionPane.showMessageDialog(this, "Invalid credentials", "Error", JOptionPane.ERROR_MESSAGE);
+                });
             });
             regBtn.addActionListener(e -> showRegDialog());
         }
@@ -593,8 +6712,12 @@ public class FitnessTrackerApp extends JFrame {
             Object[] msg = {"Username:", u, "Password:", p, "Name:", n, "Age:", a, "Height (cm):", h, "Weight (kg):", w, "Goal (kg):", gw};
             if (JOptionPane.showConfirmDialog(null, msg, "Create Account", JOptionPane.OK_CANCEL_OPTION) == JOptionPane.OK_OPTION) {
                 try {
-                    if(dbHelper.register(u.getText(), new String(p.getPassword()), n.getText(), Integer.parseInt(a.getText()), Double.parseDouble(h.getText()), Double.parseDouble(w.getText()), Double.parseDouble(gw.getText())))
-                        JOptionPane.showMessageDialog(this, "Account created!");
+                    String user = u.getText(), pass = new String(p.getPassword()), name = n.getText();
+                    int age = Integer.parseInt(a.getText());
+                    double height = Double.parseDouble(h.getText()), weight = Double.parseDouble(w.getText()), goal = Double.parseDouble(gw.getText());
+                    asyncData.submit(() -> storeReady.join().register(user, pass, name, age, height, weight, goal), created -> {
+                        if (created) JOptionPane.showMessageDialog(this, "Account created!");
+                    });
                 } catch (Exception ex) { JOptionPane.showMessageDialog(this, "Invalid inputs"); }
             }
         }
@@ -646,6 +6769,7 @@ public class FitnessTrackerApp extends JFrame {
                     "\"Set your goals high, and don't stop till you get there.\"\n\nAdjust your path, not the goal."));
 
             add(grid, BorderLayout.CENTER);
+            onEvent(ProfileUpdated.class, e -> updateWelcome());
         }
 
         private JPanel createInteractiveCard(String title, String desc, String icon, String motivation) {
@@ -702,15 +6826,23 @@ public class FitnessTrackerApp extends JFrame {
         SmoothProgressBar progressBar;
         JComboBox<String> foodCombo;
         JTextField gramsField, searchField;
-        // [CO6] Use of TreeMap for sorted keys (robust collections)
-        Map<String, FoodItem> foodData = new TreeMap<>();
+        // Memory-mapped catalog and its search index, both loaded in the background
+        volatile FoodCatalog catalog = FoodCatalog.empty();
+        FoodSearchIndex searchIndex;
+        FoodResultModel resultModel;
+        // Search runs once typing pauses for this long, not on every key
+        private final Timer searchDebounce = new Timer(150, e -> runSearch());
+        private int searchGeneration;
         JLabel goalL, currL;
         JLabel infoProtein, infoCarbs, infoFats, infoCals;
         JTable historyTable;
-        DefaultTableModel tableModel;
+        MealTableModel tableModel;
+        // Today's totals as last loaded, then moved along by meal events
+        private DailyRollup today;
+
+        private record Today(DailyRollup totals, List<MealRow> meals) {}
 
         public FoodPanel() {
-            initFoodDatabase(); // Loads 100+ items
             setLayout(new BorderLayout());
             setBackground(MAIN_BG);
             setBorder(new EmptyBorder(20, 20, 20, 20));
@@ -756,16 +6888,21 @@ public class FitnessTrackerApp extends JFrame {
             searchLbl.setAlignmentX(Component.LEFT_ALIGNMENT);
             searchField = new JTextField();
             searchField.setMaximumSize(new Dimension(2000, 35));
-            searchField.addKeyListener(new KeyAdapter() {
-                public void keyReleased(KeyEvent e) {
-                    filterFoodList(searchField.getText());
-                }
+            searchDebounce.setRepeats(false);
+            searchField.getDocument().addDocumentListener(new DocumentListener() {
+                public void insertUpdate(DocumentEvent e) { searchDebounce.restart(); }
+                public void removeUpdate(DocumentEvent e) { searchDebounce.restart(); }
+                public void changedUpdate(DocumentEvent e) { searchDebounce.restart(); }
             });
 
             // Dropdown
             JLabel selectLbl = new JLabel("Select Item:");
             selectLbl.setAlignmentX(Component.LEFT_ALIGNMENT);
-            foodCombo = new JComboBox<>(foodData.keySet().toArray(new String[0]));
+            resultModel = new FoodResultModel(id -> catalog.name(id));
+            foodCombo = new JComboBox<>(resultModel);
+            // Fixed cell width: otherwise the combo measures every result to size itself
+            foodCombo.setPrototypeDisplayValue("Whole Wheat Bread (1 slice) - extra");
+            foodCombo.setMaximumRowCount(12);
             foodCombo.setMaximumSize(new Dimension(2000, 35));
             foodCombo.addActionListener(e -> updateInfoLabels());
 
@@ -806,8 +6943,10 @@ public class FitnessTrackerApp extends JFrame {
             histTitle.setFont(FONT_HEADER);
             histTitle.setBorder(new EmptyBorder(0, 0, 10, 0));
 
-            tableModel = new DefaultTableModel(new String[]{"ID", "Food", "Prot(g)", "Kcal"}, 0);
+            tableModel = new MealTableModel();
             historyTable = new JTable(tableModel);
+            FormattedCellRenderer.install(historyTable);
+            historyTable.setRowSorter(new TableRowSorter<>(tableModel)); // numeric order for Prot(g) and Kcal
             historyTable.setRowHeight(25);
             historyTable.setShowGrid(false);
             historyTable.setIntercellSpacing(new Dimension(0, 0));
@@ -836,49 +6975,91 @@ public class FitnessTrackerApp extends JFrame {
             addBtn.addActionListener(e -> {
                 if (currentUser == null) return;
                 try {
-                    String f = (String) foodCombo.getSelectedItem();
-                    if (f == null) return;
+                    int foodId = resultModel.getSelectedId();
+                    if (foodId < 0) return;
                     double g = Double.parseDouble(gramsField.getText());
-                    FoodItem item = foodData.get(f);
+                    String f = catalog.name(foodId);
+                    FoodItem item = catalog.item(foodId);
 
                     double p = (item.protein / 100.0) * g;
+                    double carbs = (item.carbs / 100.0) * g;
+                    double fat = (item.fat / 100.0) * g;
                     double cals = (item.calories / 100.0) * g;
 
-                    dbHelper.logMeal(currentUser.id, f, p, cals);
+                    int uid = currentUser.id;
                     gramsField.setText("");
-                    refreshData();
-                    JOptionPane.showMessageDialog(this, "Logged: " + f);
+                    // The MealLogged event adds the row and moves the totals
+                    asyncData.submit(() -> dbHelper.logMeal(uid, f, p, carbs, fat, cals), () -> JOptionPane.showMessageDialog(this, "Logged: " + f));
                 } catch(Exception ex) { JOptionPane.showMessageDialog(this, "Enter valid grams!"); }
             });
 
             delBtn.addActionListener(e -> {
                 int row = historyTable.getSelectedRow();
                 if(row != -1) {
-                    int id = Integer.parseInt((String)tableModel.getValueAt(row, 0));
-                    dbHelper.deleteMeal(id);
-                    refreshData();
+                    int id = tableModel.idAt(historyTable.convertRowIndexToModel(row)), uid = currentUser.id;
+                    asyncData.submit(() -> dbHelper.deleteMeal(uid, id), () -> {}); // MealDeleted removes the row
                 }
             });
 
-            updateInfoLabels();
+            onEvent(MealLogged.class, this::mealLogged);
+            onEvent(MealDeleted.class, this::mealDeleted);
+            onEvent(ProfileUpdated.class, e -> { if (today != null) renderTotals(); });
+            loadCatalog();
         }
 
-        // [CO3] String manipulation: Filtering list based on search query
-        private void filterFoodList(String query) {
-            foodCombo.removeAllItems();
-            String q = query.toLowerCase();
-            for (String food : foodData.keySet()) {
-                if (food.toLowerCase().contains(q)) {
-                    foodCombo.addItem(food);
-                }
-            }
-            if (foodCombo.getItemCount() > 0) foodCombo.setSelectedIndex(0);
+        // One row and the totals change; a meal for another day leaves today's view alone
+        private void mealLogged(MealLogged e) {
+            if (!canApplyDelta(currentUser)) return;
+            if (e.mealId() < 0) { refreshData(); return; }
+            if (!e.day().toString().equals(today.day)) return;
+            tableModel.add(e.mealId(), e.food(), e.protein(), e.calories());
+            today.protein += e.protein(); today.carbs += e.carbs(); today.fat += e.fat(); today.calories += e.calories();
+            renderTotals();
+        }
+
+        private void mealDeleted(MealDeleted e) {
+            if (!canApplyDelta(currentUser)) return;
+            if (e.day() == null) { refreshData(); return; }
+            if (!e.day().toString().equals(today.day)) return;
+            tableModel.remove(e.mealId());
+            today.protein -= e.protein(); today.carbs -= e.carbs(); today.fat -= e.fat(); today.calories -= e.calories();
+            renderTotals();
+        }
+
+        private void renderTotals() {
+            double g = currentUser.getProteinGoal(), c = today.protein;
+            goalL.setText("Goal: " + (int)g + "g Protein");
+            currL.setText("Today: " + (int)c + "g");
+            currL.setToolTipText(String.format("Carbs %.0fg, Fat %.0fg, %.0f kcal", today.carbs, today.fat, today.calories));
+
+            // Calculate progress percentage carefully
+            int percent = (g > 0) ? (int)((c/g)*100) : 0;
+            progressBar.setTargetValue(Math.min(percent, 100)); // Cap at 100 for bar
+        }
+
+        // The warm-up after login has usually loaded the catalog already
+        private void loadCatalog() {
+            foods().thenAccept(foods -> SwingUtilities.invokeLater(() -> {
+                catalog = foods.catalog();
+                searchIndex = foods.index();
+                runSearch();
+            }));
+        }
+
+        // [CO3] String manipulation: ranked search off the EDT, then one bulk swap of the combo model
+        private void runSearch() {
+            if (searchIndex == null) return; // loadCatalog() searches once the index is ready
+            String query = searchField.getText();
+            int generation = ++searchGeneration;
+            asyncData.submit(() -> searchIndex.search(query, FoodSearchIndex.MAX_RESULTS), ids -> {
+                if (generation == searchGeneration) resultModel.setResults(ids);
+            });
         }
 
         private void updateInfoLabels() {
-            String f = (String) foodCombo.getSelectedItem();
-            if(f != null) {
-                FoodItem i = foodData.get(f);
+            int id = resultModel.getSelectedId();
+            if(id >= 0) {
+                FoodItem i = catalog.item(id);
                 infoProtein.setText(String.format("P: %.1fg", i.protein));
                 infoCarbs.setText(String.format("C: %.1fg", i.carbs));
                 infoFats.setText(String.format("F: %.1fg", i.fat));
@@ -889,121 +7070,18 @@ public class FitnessTrackerApp extends JFrame {
         @Override
         public void refreshData() {
             if(currentUser==null) return;
-            double g = currentUser.getProteinGoal();
-            double c = dbHelper.getTodayProtein(currentUser.id);
-
+            User user = currentUser;
+            int uid = user.id;
+            double g = user.getProteinGoal();
             goalL.setText("Goal: " + (int)g + "g Protein");
-            currL.setText("Today: " + (int)c + "g");
-
-            // Calculate progress percentage carefully
-            int percent = (g > 0) ? (int)((c/g)*100) : 0;
-            progressBar.setTargetValue(Math.min(percent, 100)); // Cap at 100 for bar
-
-            ArrayList<Object[]> rawList = dbHelper.getTodayMealsRaw(currentUser.id);
-            tableModel.setRowCount(0);
-            for (Object[] row : rawList) {
-                tableModel.addRow(new String[]{
-                        String.valueOf(row[0]),
-                        (String)row[1],
-                        String.format("%.1f", row[2]),
-                        String.format("%.0f", row[3])
-                });
-            }
-        }
+            currL.setText("Today: ...");
 
-        // --- MASSIVE DATABASE ---
-        private void initFoodDatabase() {
-            // Proteins
-            addFood("Chicken Breast (Raw)", 23, 0, 1.2, 110);
-            addFood("Chicken Breast (Cooked)", 31, 0, 3.6, 165);
-            addFood("Chicken Thigh", 16, 0, 15, 209);
-            addFood("Egg (Whole, Large)", 13, 1.1, 11, 155);
-            addFood("Egg White", 11, 0.7, 0.2, 52);
-            addFood("Salmon", 20, 0, 13, 208);
-            addFood("Tuna (Canned in Water)", 25, 0, 1, 116);
-            addFood("Beef (Ground, 85%)", 26, 0, 15, 250);
-            addFood("Steak (Sirloin)", 27, 0, 10, 244);
-            addFood("Pork Chop", 24, 0, 14, 231);
-            addFood("Turkey Breast", 29, 0, 1, 135);
-            addFood("Shrimp", 24, 0.2, 0.3, 99);
-            addFood("Tofu (Firm)", 8, 2, 4, 76);
-            addFood("Paneer", 18, 1.2, 20, 265);
-            addFood("Soya Chunks", 52, 33, 0.5, 345);
-            addFood("Whey Protein Powder", 80, 5, 2, 380);
-            addFood("Greek Yogurt (Plain)", 10, 3.6, 0.4, 59);
-            addFood("Cottage Cheese", 11, 3.4, 4.3, 98);
-            addFood("Milk (Whole)", 3.2, 4.8, 3.3, 61);
-            addFood("Milk (Skimmed)", 3.4, 5, 0.1, 35);
-            addFood("Lentils (Cooked)", 9, 20, 0.4, 116);
-            addFood("Chickpeas (Cooked)", 7, 27, 2.6, 164);
-            addFood("Black Beans", 8.9, 23, 0.5, 132);
-            addFood("Kidney Beans", 8.7, 22, 0.5, 127);
-
-            // Carbs / Grains
-            addFood("White Rice (Cooked)", 2.7, 28, 0.3, 130);
-            addFood("Brown Rice (Cooked)", 2.6, 23, 0.9, 111);
-            addFood("Oats (Raw)", 13, 68, 6.5, 389);
-            addFood("Quinoa (Cooked)", 4.4, 21, 1.9, 120);
-            addFood("Potato (Boiled)", 2, 17, 0.1, 77);
-            addFood("Sweet Potato (Boiled)", 1.6, 20, 0.1, 86);
-            addFood("Pasta (White, Cooked)", 5, 25, 1.1, 131);
-            addFood("Whole Wheat Bread (1 slice)", 4, 12, 1, 80); // per slice approx
-            addFood("White Bread (1 slice)", 2.7, 13, 0.8, 75);
-            addFood("Chapati / Roti", 3, 15, 0.5, 85);
-
-            // Fruits
-            addFood("Apple", 0.3, 14, 0.2, 52);
-            addFood("Banana", 1.1, 23, 0.3, 89);
-            addFood("Orange", 0.9, 12, 0.1, 47);
-            addFood("Grapes", 0.6, 17, 0.2, 67);
-            addFood("Blueberries", 0.7, 14, 0.3, 57);
-            addFood("Strawberries", 0.7, 8, 0.3, 32);
-            addFood("Watermelon", 0.6, 8, 0.2, 30);
-            addFood("Pineapple", 0.5, 13, 0.1, 50);
-            addFood("Mango", 0.8, 15, 0.4, 60);
-            addFood("Avocado", 2, 9, 15, 160);
-
-            // Veggies
-            addFood("Broccoli", 2.8, 7, 0.4, 34);
-            addFood("Spinach", 2.9, 3.6, 0.4, 23);
-            addFood("Carrot", 0.9, 10, 0.2, 41);
-            addFood("Cucumber", 0.7, 3.6, 0.1, 15);
-            addFood("Tomato", 0.9, 3.9, 0.2, 18);
-            addFood("Bell Pepper", 1, 6, 0.3, 31);
-            addFood("Onion", 1.1, 9, 0.1, 40);
-            addFood("Green Peas", 5, 14, 0.4, 81);
-            addFood("Corn", 3.2, 19, 1.2, 86);
-            addFood("Mushroom", 3.1, 3.3, 0.3, 22);
-
-            // Nuts & Seeds
-            addFood("Almonds", 21, 22, 49, 575);
-            addFood("Walnuts", 15, 14, 65, 654);
-            addFood("Peanuts", 26, 16, 49, 567);
-            addFood("Cashews", 18, 30, 44, 553);
-            addFood("Peanut Butter", 25, 20, 50, 588);
-            addFood("Chia Seeds", 17, 42, 31, 486);
-            addFood("Flax Seeds", 18, 29, 42, 534);
-            addFood("Pumpkin Seeds", 19, 54, 19, 446);
-
-            // Junk / Snacks / Others
-            addFood("Pizza (Slice)", 11, 30, 10, 266);
-            addFood("Burger (Cheeseburger)", 15, 30, 14, 300);
-            addFood("French Fries", 3.4, 41, 15, 312);
-            addFood("Coke / Soda (330ml)", 0, 35, 0, 139);
-            addFood("Chocolate (Milk)", 7.3, 59, 30, 535);
-            addFood("Chocolate (Dark 70%)", 8, 46, 43, 600);
-            addFood("Ice Cream (Vanilla)", 3.5, 24, 11, 207);
-            addFood("Cookie (Choc Chip)", 5, 60, 24, 480);
-            addFood("Popcorn (Plain)", 11, 74, 4, 370);
-            addFood("Olive Oil", 0, 0, 100, 884);
-            addFood("Butter", 0.9, 0.1, 81, 717);
-            addFood("Mayonnaise", 1, 1, 75, 680);
-            addFood("Honey", 0.3, 82, 0, 304);
-            addFood("Sugar", 0, 100, 0, 387);
-        }
-
-        private void addFood(String n, double p, double c, double f, double cal) {
-            foodData.put(n, new FoodItem(p, c, f, cal));
+            refreshAsync(asyncData, () -> new Today(dbHelper.getTodayRollup(uid), dbHelper.getTodayMeals(uid)), result -> {
+                today = result.totals();
+                renderTotals();
+                tableModel.replace(result.meals());
+                markLoaded(user);
+            });
         }
     }
 
@@ -1168,13 +7246,17 @@ public class FitnessTrackerApp extends JFrame {
             timerLbl.setText("Set Complete!");
 
             if (currentUser != null) {
-                String selectedExercise = (String) exerciseCombo.getSelectedItem();
+                int uid = currentUser.id;
+                String type = currentCategory + ": " + exerciseCombo.getSelectedItem();
                 int sets = (int) setsSpinner.getValue();
                 int reps = (int) repsSpinner.getValue();
                 String details = "Timer Session - Sets: " + sets + ", Reps: " + reps;
-                dbHelper.logWorkout(currentUser.id, currentCategory + ": " + selectedExercise, timeSpent, details);
+                int seconds = timeSpent;
+                asyncData.submit(() -> dbHelper.logWorkout(uid, type, seconds, details),
+                        () -> JOptionPane.showMessageDialog(this, "Set Completed! Saved to History."));
+            } else {
+                JOptionPane.showMessageDialog(this, "Set Completed! Saved to History.");
             }
-            JOptionPane.showMessageDialog(this, "Set Completed! Saved to History.");
         }
     }
 
@@ -1205,7 +7287,12 @@ public class FitnessTrackerApp extends JFrame {
             c.setPreferredSize(new Dimension(250, 100));
             c.setFont(new Font("Segoe UI", Font.BOLD, 20));
 
-            sel.add(g); sel.add(c);
+            ModernButton imp = new ModernButton("Import History", SUCCESS_COLOR, new Color(46, 204, 113));
+            imp.setPreferredSize(new Dimension(250, 100));
+            imp.setFont(new Font("Segoe UI", Font.BOLD, 20));
+            imp.setToolTipText("Workouts from watch and app exports (CSV, GPX, TCX)");
+
+            sel.add(g); sel.add(c); sel.add(imp);
 
             // -- FORM SCREEN --
             JPanel formWrapper = new JPanel(new GridBagLayout());
@@ -1256,6 +7343,7 @@ public class FitnessTrackerApp extends JFrame {
             });
 
             back.addActionListener(e -> cl.show(cont, "SEL"));
+            imp.addActionListener(e -> importFiles());
 
             save.addActionListener(e -> {
                 try {
@@ -1268,9 +7356,12 @@ public class FitnessTrackerApp extends JFrame {
                     } else {
                         details = "Steps: " + stepsF.getText();
                     }
-                    dbHelper.logWorkout(currentUser.id, ex, dur, details);
-                    JOptionPane.showMessageDialog(this, "Logged successfully!");
-                    resetView();
+                    int uid = currentUser.id;
+                    String savedDetails = details;
+                    asyncData.submit(() -> dbHelper.logWorkout(uid, ex, dur, savedDetails), () -> {
+                        JOptionPane.showMessageDialog(this, "Logged successfully!");
+                        resetView();
+                    });
                 } catch(Exception ex) { JOptionPane.showMessageDialog(this, "Check your inputs."); }
             });
         }
@@ -1301,6 +7392,78 @@ public class FitnessTrackerApp extends JFrame {
             cl.show(cont, "SEL");
             timeF.setText(""); stepsF.setText(""); setsF.setText(""); repsF.setText("");
         }
+
+        // Exports can run to hundreds of MB, so they are read off the EDT behind a modal progress dialog.
+        // Cancel keeps the batches already saved; importing the same file again skips them.
+        private void importFiles() {
+            if (currentUser == null) return;
+            JFileChooser chooser = new JFileChooser();
+            chooser.setMultiSelectionEnabled(true);
+            chooser.setFileFilter(new FileNameExtensionFilter("Workout exports (CSV, GPX, TCX, .gz)", "csv", "gpx", "tcx", "gz"));
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            List<Path> files = Arrays.stream(chooser.getSelectedFiles()).map(f -> f.toPath()).toList();
+            WorkoutImporter importer = new WorkoutImporter(dbHelper, currentUser.id);
+
+            JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(this), "Importing workouts", Dialog.ModalityType.APPLICATION_MODAL);
+            dialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+            JLabel status = new JLabel("Checking what is already logged...");
+            status.setFont(FONT_NORMAL);
+            SmoothProgressBar bar = new SmoothProgressBar(0, 1000);
+            bar.setPreferredSize(new Dimension(460, 14));
+            ModernButton cancel = new ModernButton("Cancel", Color.GRAY, Color.DARK_GRAY);
+            cancel.addActionListener(e -> {
+                importer.cancel();
+                cancel.setEnabled(false);
+                status.setText("Cancelling...");
+            });
+            JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+            buttons.setOpaque(false);
+            buttons.add(cancel);
+            JPanel body = new JPanel(new BorderLayout(0, 15));
+            body.setBackground(CARD_BG);
+            body.setBorder(new EmptyBorder(20, 20, 20, 20));
+            body.add(status, BorderLayout.NORTH);
+            body.add(bar, BorderLayout.CENTER);
+            body.add(buttons, BorderLayout.SOUTH);
+            dialog.setContentPane(body);
+            dialog.pack();
+            dialog.setLocationRelativeTo(this);
+
+            asyncData.supply(() -> {
+                for (int i = 0; i < files.size(); i++) {
+                    String prefix = files.size() > 1 ? "File " + (i + 1) + " of " + files.size() + ": " : "";
+                    try {
+                        importer.importFile(files.get(i), p -> SwingUtilities.invokeLater(() -> {
+                            if (!cancel.isEnabled()) return;
+                            bar.setTargetValue(p.totalBytes() == 0 ? 1000 : (int) (p.bytesRead() * 1000 / p.totalBytes()));
+                            status.setText(String.format("%s%s (%,d imported)", prefix, p.file(), p.imported()));
+                        }));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return null;
+            }).whenComplete((done, error) -> SwingUtilities.invokeLater(() -> {
+                dialog.dispose();
+                JOptionPane.showMessageDialog(this, importSummary(importer.status(), error));
+            }));
+            dialog.setVisible(true);
+        }
+
+        private String importSummary(WorkoutImporter.Status s, Throwable error) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof UncheckedIOException e) cause = e.getCause();
+            StringBuilder msg = new StringBuilder();
+            if (cause instanceof CancellationException) msg.append("Import cancelled.\n");
+            else if (cause != null) msg.append("Import stopped: ").append(cause.getMessage()).append("\n");
+            msg.append(String.format("%,d workouts imported, %,d already logged, %,d skipped.", s.imported(), s.duplicates(), s.skipped()));
+            if (!s.unrecognised().isEmpty()) {
+                msg.append("\nNot recognised: ");
+                s.unrecognised().forEach((type, n) -> msg.append(type).append(" (").append(n).append("), "));
+                msg.setLength(msg.length() - 2);
+            }
+            return msg.toString();
+        }
     }
 
     class MyDataPanel extends BasePanel {
@@ -1351,6 +7514,10 @@ public class FitnessTrackerApp extends JFrame {
             card.add(footerMsg, BorderLayout.SOUTH);
 
             add(card);
+
+            onEvent(WorkoutLogged.class, this::workoutLogged);
+            onEvent(WorkoutsImported.class, e -> markStale());
+            onEvent(ProfileUpdated.class, e -> showProfile(currentUser));
         }
 
         private JLabel createValueLabel(String text) {
@@ -1374,23 +7541,41 @@ public class FitnessTrackerApp extends JFrame {
         @Override
         public void refreshData() {
             if(currentUser!=null) {
-                nameLbl.setText(currentUser.name);
-                ageLbl.setText(currentUser.age + " Years");
-                heightLbl.setText(currentUser.height + " cm");
-                weightLbl.setText(currentUser.weight + " kg");
-                goalLbl.setText(currentUser.goalWeight + " kg");
-                streakLbl.setText(dbHelper.getStreakDays(currentUser.id) + " Days");
-                proteinLbl.setText(currentUser.getProteinGoal() + "g / day");
-                double hM = currentUser.height / 100.0;
-                double bmi = currentUser.weight / (hM * hM);
-                String bmiText = String.format("%.1f", bmi);
-                if (bmi < 18.5) {
-                    bmiLbl.setText(bmiText + " (Underweight)"); bmiLbl.setForeground(ACCENT_COLOR);
-                } else if (bmi < 24.9) {
-                    bmiLbl.setText(bmiText + " (Healthy)"); bmiLbl.setForeground(SUCCESS_COLOR);
-                } else {
-                    bmiLbl.setText(bmiText + " (Overweight)"); bmiLbl.setForeground(DANGER_COLOR);
-                }
+                showProfile(currentUser);
+                streakLbl.setText("...");
+                refreshStreak(currentUser);
+            }
+        }
+
+        // Only a workout can move the streak; a profile edit is already in currentUser
+        private void workoutLogged(WorkoutLogged e) {
+            if (shows(currentUser)) refreshStreak(currentUser);
+        }
+
+        private void refreshStreak(User user) {
+            refreshAsync(asyncData, () -> dbHelper.getStreakSummary(user.id), streak -> {
+                streakLbl.setText(streak.current + " Days (best " + streak.longest + ")");
+                streakLbl.setToolTipText(streak.last30Days + " active days in the last 30, " + streak.totalActiveDays + " in total");
+                markLoaded(user);
+            });
+        }
+
+        private void showProfile(User user) {
+            nameLbl.setText(user.name);
+            ageLbl.setText(user.age + " Years");
+            heightLbl.setText(user.height + " cm");
+            weightLbl.setText(user.weight + " kg");
+            goalLbl.setText(user.goalWeight + " kg");
+            proteinLbl.setText(user.getProteinGoal() + "g / day");
+            double hM = user.height / 100.0;
+            double bmi = user.weight / (hM * hM);
+            String bmiText = String.format("%.1f", bmi);
+            if (bmi < 18.5) {
+                bmiLbl.setText(bmiText + " (Underweight)"); bmiLbl.setForeground(ACCENT_COLOR);
+            } else if (bmi < 24.9) {
+                bmiLbl.setText(bmiText + " (Healthy)"); bmiLbl.setForeground(SUCCESS_COLOR);
+            } else {
+                bmiLbl.setText(bmiText + " (Overweight)"); bmiLbl.setForeground(DANGER_COLOR);
             }
         }
     }
@@ -1408,6 +7593,7 @@ public class FitnessTrackerApp extends JFrame {
                 b.setPreferredSize(new Dimension(200, 100));
                 b.setFont(new Font("Segoe UI", Font.BOLD, 22));
                 b.addActionListener(e->{
+                    ensurePanel(WORKOUT_PANEL);
                     workoutSessionPanel.setExerciseType(s);
                     navigateTo(WORKOUT_PANEL);
                 });
@@ -1426,7 +7612,11 @@ public class FitnessTrackerApp extends JFrame {
             card.add(new JLabel("Weight (kg):")); w=new JTextField(); card.add(w);
             card.add(new JLabel("Goal Weight:")); g=new JTextField(); card.add(g);
             ModernButton s=new ModernButton("Update Profile", SUCCESS_COLOR, new Color(46, 204, 113));
-            s.addActionListener(e->{currentUser.name=n.getText(); currentUser.weight=Double.parseDouble(w.getText()); currentUser.goalWeight=Double.parseDouble(g.getText()); dbHelper.updateUser(currentUser); JOptionPane.showMessageDialog(this,"Profile Updated");});
+            s.addActionListener(e->{
+                currentUser.name=n.getText(); currentUser.weight=Double.parseDouble(w.getText()); currentUser.goalWeight=Double.parseDouble(g.getText());
+                User u = currentUser;
+                asyncData.submit(() -> dbHelper.updateUser(u), () -> JOptionPane.showMessageDialog(this,"Profile Updated"));
+            });
             card.add(s);
             ModernButton logout = new ModernButton("Logout", Color.GRAY, Color.DARK_GRAY);
             logout.addActionListener(e -> {
@@ -1442,7 +7632,9 @@ public class FitnessTrackerApp extends JFrame {
     class StatisticsPanel extends BasePanel {
         JLabel streakLbl, scoreLbl, proteinLbl, longestWorkoutLbl;
         JTable historyTable;
-        DefaultTableModel tableModel;
+        WorkoutHistoryModel tableModel;
+
+        private record Summary(StreakSummary streak, int score, double todayProtein, WorkoutStats workouts) {}
 
         public StatisticsPanel(){
             setLayout(new BorderLayout());
@@ -1460,7 +7652,7 @@ public class FitnessTrackerApp extends JFrame {
             longestWorkoutLbl = createStatLabel("Max: 0s");
 
             summaryCard.add(createStatBox("Current Streak", streakLbl));
-            summaryCard.add(createStatBox("Recursive Score", scoreLbl));
+            summaryCard.add(createStatBox("Score", scoreLbl));
             summaryCard.add(createStatBox("Today's Protein", proteinLbl));
             summaryCard.add(createStatBox("Longest Workout", longestWorkoutLbl));
 
@@ -1471,13 +7663,15 @@ public class FitnessTrackerApp extends JFrame {
             tablePanel.setBackground(CARD_BG);
             tablePanel.setBorder(new EmptyBorder(20, 0, 0, 0));
 
-            JLabel tableTitle = new JLabel("Recent Workout History");
+            JLabel tableTitle = new JLabel("Workout History");
             tableTitle.setFont(FONT_HEADER);
             tableTitle.setBorder(new EmptyBorder(0,0,10,0));
             tablePanel.add(tableTitle, BorderLayout.NORTH);
 
-            tableModel = new DefaultTableModel(new String[]{"Date", "Exercise", "Time", "Details"}, 0);
+            tableModel = new WorkoutHistoryModel(asyncData, dbHelper);
             historyTable = new JTable(tableModel);
+            // No row sorter here: sorting would need every page of the history loaded
+            FormattedCellRenderer.install(historyTable);
             historyTable.setRowHeight(30);
             historyTable.setFont(FONT_NORMAL);
             historyTable.getTableHeader().setFont(FONT_BOLD);
@@ -1488,6 +7682,24 @@ public class FitnessTrackerApp extends JFrame {
             tablePanel.add(scrollPane, BorderLayout.CENTER);
 
             add(tablePanel, BorderLayout.CENTER);
+
+            // The summary is four single-row lookups, so a change just re-reads it; the history keeps its pages
+            onEvent(WorkoutLogged.class, this::workoutLogged);
+            onEvent(WorkoutsImported.class, e -> markStale());
+            onEvent(MealLogged.class, e -> summaryChanged());
+            onEvent(MealDeleted.class, e -> summaryChanged());
+            onEvent(ProfileUpdated.class, e -> summaryChanged());
+        }
+
+        private void workoutLogged(WorkoutLogged e) {
+            if (!shows(currentUser)) return;
+            if (e.workoutId() < 0) tableModel.reset(currentUser.id);
+            else tableModel.prepend(e);
+            refreshSummary(currentUser);
+        }
+
+        private void summaryChanged() {
+            if (shows(currentUser)) refreshSummary(currentUser);
         }
 
         private JPanel createStatBox(String title, JLabel valLbl) {
@@ -1511,27 +7723,35 @@ public class FitnessTrackerApp extends JFrame {
         @Override
         public void refreshData(){
             if(currentUser!=null) {
-                // [CO3] Advanced Logic: Recursive calculation called here
-                int days = dbHelper.getStreakDays(currentUser.id);
-                int score = DataUtils.recursiveStreakScore(days);
-
-                // [CO2] Algorithms: Retrieving data into Arrays and Sorting manually
-                ArrayList<Integer> rawDurations = dbHelper.getWorkoutDurations(currentUser.id);
-                int maxDuration = DataUtils.getLongestWorkoutDuration(rawDurations);
-
-                streakLbl.setText(days + " Days");
-                scoreLbl.setText(score + " pts");
-                proteinLbl.setText(dbHelper.getTodayProtein(currentUser.id) + "g");
-                longestWorkoutLbl.setText(maxDuration + "s");
-
-                // Populate Table (Clear and Reload)
-                ArrayList<Object[]> history = dbHelper.getWorkoutHistory(currentUser.id);
-                tableModel.setRowCount(0);
-                for(Object[] row : history) {
-                    tableModel.addRow(row);
-                }
-                tableModel.fireTableDataChanged();
+                streakLbl.setText("..."); scoreLbl.setText("..."); proteinLbl.setText("..."); longestWorkoutLbl.setText("...");
+                // History rows page in on their own as the table paints them
+                tableModel.reset(currentUser.id);
+                refreshSummary(currentUser);
             }
         }
+
+        private void refreshSummary(User user) {
+            int uid = user.id;
+            refreshAsync(asyncData, () -> {
+                StreakSummary streak = dbHelper.getStreakSummary(uid);
+                int score = dbHelper.getScore(uid);
+
+                // Aggregates are maintained on every logWorkout, so this is a single-row lookup
+                WorkoutStats stats = dbHelper.getWorkoutStats(uid);
+
+                return new Summary(streak, score, dbHelper.getTodayProtein(uid), stats);
+            }, result -> {
+                StreakSummary streak = result.streak();
+                WorkoutStats stats = result.workouts();
+                streakLbl.setText(streak.current + " Days");
+                streakLbl.setToolTipText("Longest: " + streak.longest + " days, last 30 days: " + streak.last30Days + " active");
+                scoreLbl.setText(result.score() + " pts");
+                proteinLbl.setText(result.todayProtein() + "g");
+                longestWorkoutLbl.setText(stats.maxSeconds + "s");
+                longestWorkoutLbl.setToolTipText(String.format("%d sessions, avg %.0fs, total %dm",
+                        stats.sessions, stats.getMeanSeconds(), stats.totalSeconds / 60));
+                markLoaded(user);
+            });
+        }
     }
 }